@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.benchmark;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The two core binarizers over the framing rect: the whole matrix, as 2D readers need it, and
+ * the rows a 1D reader samples when not trying harder.
+ */
+@State(Scope.Thread)
+public class BinarizerBenchmark {
+
+  // Rows MultiFormatOneDReader looks at by default: up to 15, around the middle
+  private static final int ROWS = 15;
+
+  public enum Kind {
+    HYBRID,
+    GLOBAL_HISTOGRAM,
+  }
+
+  @Param
+  public Kind binarizer;
+
+  private BitArray row;
+
+  @Benchmark
+  public BitMatrix blackMatrix(FrameState state) {
+    try {
+      return create(state.next()).getBlackMatrix();
+    } catch (NotFoundException nfe) {
+      // Flat frame; still a frame's worth of work
+      return null;
+    }
+  }
+
+  @Benchmark
+  public void blackRows(FrameState state, Blackhole blackhole) {
+    Binarizer binarizer = create(state.next());
+    int height = binarizer.getHeight();
+    int step = Math.max(1, height / (ROWS * 2));
+    for (int i = 0; i < ROWS; i++) {
+      int y = height / 2 + ((i & 1) == 0 ? 1 : -1) * step * ((i + 1) / 2);
+      try {
+        row = binarizer.getBlackRow(y, row);
+        blackhole.consume(row);
+      } catch (NotFoundException nfe) {
+        // continue
+      }
+    }
+  }
+
+  private Binarizer create(FrameCorpus.Frame frame) {
+    LuminanceSource source = new PlanarYUVLuminanceSource(frame.data, frame.width, frame.height,
+        frame.cropLeft, frame.cropTop, frame.cropWidth, frame.cropHeight, false);
+    return binarizer == Kind.HYBRID ? new HybridBinarizer(source) : new GlobalHistogramBinarizer(source);
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.benchmark;
+
+import com.google.zxing.client.android.LuminanceConversion;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Turning a decoded gallery image into luminance: the {@code rgb2YUV} conversion the album path
+ * used to run, kept here as the baseline, against the strip conversion which replaced it.
+ */
+@State(Scope.Thread)
+public class ConversionBenchmark {
+
+  // Rows per strip, as GalleryImageDecoder converts them
+  private static final int STRIP_HEIGHT = 64;
+
+  private int[][] images;
+  private int[] widths;
+  private int[] heights;
+  private byte[] luminances;
+  private int[] strip;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void renderImages(FrameState state) {
+    List<FrameCorpus.Frame> frames = state.all();
+    images = new int[frames.size()][];
+    widths = new int[frames.size()];
+    heights = new int[frames.size()];
+    int largest = 0;
+    for (int i = 0; i < images.length; i++) {
+      FrameCorpus.Frame frame = frames.get(i);
+      images[i] = frame.toArgb();
+      widths[i] = frame.width;
+      heights[i] = frame.height;
+      largest = Math.max(largest, frame.width * frame.height);
+    }
+    luminances = new byte[largest];
+  }
+
+  @Benchmark
+  public byte[] legacyRgb2Yuv() {
+    int i = nextImage();
+    int width = widths[i];
+    int height = heights[i];
+    // Stands in for Bitmap.getPixels() into a new array covering the whole image
+    int[] pixels = new int[width * height];
+    System.arraycopy(images[i], 0, pixels, 0, pixels.length);
+    return rgb2YUV(pixels, width, height);
+  }
+
+  @Benchmark
+  public byte[] argbToLuminance() {
+    int i = nextImage();
+    int width = widths[i];
+    int height = heights[i];
+    if (strip == null || strip.length < width * STRIP_HEIGHT) {
+      strip = new int[width * STRIP_HEIGHT];
+    }
+    for (int y = 0; y < height; y += STRIP_HEIGHT) {
+      int count = Math.min(STRIP_HEIGHT, height - y) * width;
+      // Stands in for Bitmap.getPixels() of one strip into the reused array
+      System.arraycopy(images[i], y * width, strip, 0, count);
+      LuminanceConversion.argbToLuminance(strip, count, luminances, y * width);
+    }
+    return luminances;
+  }
+
+  private int nextImage() {
+    int i = next;
+    next = (next + 1) % images.length;
+    return i;
+  }
+
+  /**
+   * The album path's conversion as it was, less the {@code Bitmap.getPixels()} call.
+   */
+  private static byte[] rgb2YUV(int[] pixels, int width, int height) {
+    int len = width * height;
+    byte[] yuv = new byte[len * 3 / 2];
+    int y, u, v;
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        int rgb = pixels[i * width + j] & 0x00FFFFFF;
+
+        int r = rgb & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = (rgb >> 16) & 0xFF;
+
+        y = ((66 * r + 129 * g + 25 * b + 128) >> 8) + 16;
+        u = ((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128;
+        v = ((112 * r - 94 * g - 18 * b + 128) >> 8) + 128;
+
+        y = y < 16 ? 16 : (y > 255 ? 255 : y);
+        u = u < 0 ? 0 : (u > 255 ? 255 : u);
+        v = v < 0 ? 0 : (v > 255 ? 255 : v);
+
+        yuv[i * width + j] = (byte) y;
+      }
+    }
+    return yuv;
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.client.android.DecodeProfile;
+import com.google.zxing.client.android.ScanEngine;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Whole-frame decoding for each set of formats the scanner can be asked for: the original path,
+ * one {@link MultiFormatReader} over a {@link HybridBinarizer}, against the {@link ScanEngine}.
+ */
+@State(Scope.Thread)
+public class DecodeBenchmark {
+
+  /**
+   * The format sets of the scanner's preferences and scan modes.
+   */
+  public enum FormatSet {
+    PRODUCT(EnumSet.of(BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8,
+        BarcodeFormat.RSS_14, BarcodeFormat.RSS_EXPANDED)),
+    INDUSTRIAL(EnumSet.of(BarcodeFormat.CODE_39, BarcodeFormat.CODE_93, BarcodeFormat.CODE_128,
+        BarcodeFormat.ITF, BarcodeFormat.CODABAR)),
+    QR_CODE(EnumSet.of(BarcodeFormat.QR_CODE)),
+    DATA_MATRIX(EnumSet.of(BarcodeFormat.DATA_MATRIX)),
+    AZTEC(EnumSet.of(BarcodeFormat.AZTEC)),
+    PDF417(EnumSet.of(BarcodeFormat.PDF_417)),
+    // What the scanner decodes with its default preferences
+    DEFAULT(EnumSet.of(BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8,
+        BarcodeFormat.RSS_14, BarcodeFormat.RSS_EXPANDED, BarcodeFormat.CODE_39, BarcodeFormat.CODE_93,
+        BarcodeFormat.CODE_128, BarcodeFormat.ITF, BarcodeFormat.CODABAR, BarcodeFormat.QR_CODE,
+        BarcodeFormat.DATA_MATRIX)),
+    ALL(EnumSet.allOf(BarcodeFormat.class));
+
+    final Set<BarcodeFormat> formats;
+
+    FormatSet(Set<BarcodeFormat> formats) {
+      this.formats = formats;
+    }
+  }
+
+  @Param
+  public FormatSet formatSet;
+
+  private MultiFormatReader reader;
+  private ScanEngine engine;
+
+  @Setup(Level.Trial)
+  public void createReaders() {
+    Map<DecodeHintType,Object> hints = new EnumMap<>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, formatSet.formats);
+    reader = new MultiFormatReader();
+    reader.setHints(hints);
+    engine = new ScanEngine(new DecodeProfile.Builder().setFormats(formatSet.formats).build());
+  }
+
+  @TearDown(Level.Trial)
+  public void shutdown() {
+    engine.shutdown();
+  }
+
+  @Benchmark
+  public Result multiFormatReader(FrameState state) {
+    FrameCorpus.Frame frame = state.next();
+    PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(frame.data, frame.width, frame.height,
+        frame.cropLeft, frame.cropTop, frame.cropWidth, frame.cropHeight, false);
+    try {
+      return reader.decodeWithState(new BinaryBitmap(new HybridBinarizer(source)));
+    } catch (ReaderException re) {
+      return null;
+    } finally {
+      reader.reset();
+    }
+  }
+
+  @Benchmark
+  public Result scanEngine(FrameState state) {
+    FrameCorpus.Frame frame = state.next();
+    return engine.decode(frame.data, frame.width, frame.height,
+        frame.cropLeft, frame.cropTop, frame.cropWidth, frame.cropHeight).getResult();
+  }
+
+}
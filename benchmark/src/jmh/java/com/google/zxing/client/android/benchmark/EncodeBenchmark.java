@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * What {@code QRCodeEncoder.encodeAsBitmap()} does up to handing the pixels to a {@code Bitmap}:
+ * encode, then render the matrix into ARGB pixels at the share screen's size.
+ */
+@State(Scope.Thread)
+public class EncodeBenchmark {
+
+  private static final int WHITE = 0xFFFFFFFF;
+  private static final int BLACK = 0xFF000000;
+  // Roughly 7/8 of the shorter side of a 1080p screen, as the share screen sizes it
+  private static final int DIMENSION = 945;
+
+  public enum Content {
+    QR_CODE(BarcodeFormat.QR_CODE, "MECARD:N:Doe,John;TEL:13800138000;EMAIL:john@example.com;;"),
+    DATA_MATRIX(BarcodeFormat.DATA_MATRIX, "Lot 20180630-0042 Exp 2020-06"),
+    CODE_128(BarcodeFormat.CODE_128, "PKG-00042-SHIP-7"),
+    EAN_13(BarcodeFormat.EAN_13, "9780201379624");
+
+    final BarcodeFormat format;
+    final String contents;
+
+    Content(BarcodeFormat format, String contents) {
+      this.format = format;
+      this.contents = contents;
+    }
+  }
+
+  @Param
+  public Content content;
+
+  private final MultiFormatWriter writer = new MultiFormatWriter();
+
+  @Benchmark
+  public int[] encodeAsPixels() throws WriterException {
+    BitMatrix result = writer.encode(content.contents, content.format, DIMENSION, DIMENSION, null);
+    int width = result.getWidth();
+    int height = result.getHeight();
+    int[] pixels = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        pixels[offset + x] = result.get(x, y) ? BLACK : WHITE;
+      }
+    }
+    return pixels;
+  }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.client.android.camera.FrameRecording;
+import com.google.zxing.common.BitMatrix;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Preview frames the benchmarks run over. Frames are NV21, named {@code <name>_<width>x<height>.nv21}.
+ * They come from the directory in the {@code benchmark.frames} system property if set, or from the
+ * {@link FrameRecording} it names, otherwise from those listed in {@code frames/index.txt} on the
+ * classpath. With neither, frames are
+ * synthesized: barcodes rendered into a noisy, unevenly lit and slightly blurred camera-sized
+ * image, plus one with no barcode, since most preview frames have none.
+ */
+final class FrameCorpus {
+
+  private static final Pattern FRAME_NAME = Pattern.compile("(.+)_(\\d+)x(\\d+)\\.nv21");
+  private static final String INDEX = "/frames/index.txt";
+
+  private static final int SYNTHETIC_WIDTH = 1280;
+  private static final int SYNTHETIC_HEIGHT = 720;
+
+  private static List<Frame> frames;
+
+  private FrameCorpus() {}
+
+  static synchronized List<Frame> get() throws IOException {
+    if (frames == null) {
+      frames = Collections.unmodifiableList(load());
+      System.out.println("# Frames: " + frames);
+    }
+    return frames;
+  }
+
+  private static List<Frame> load() throws IOException {
+    List<Frame> loaded = new ArrayList<>();
+    String dir = System.getProperty("benchmark.frames");
+    if (dir != null && new File(dir).isFile()) {
+      for (FrameRecording.Frame recorded : FrameRecording.read(new File(dir))) {
+        loaded.add(new Frame("recorded-" + recorded.getSequence(), recorded.getWidth(), recorded.getHeight(),
+            recorded.getData(), recorded.getLeft(), recorded.getTop(),
+            recorded.getRight() - recorded.getLeft(), recorded.getBottom() - recorded.getTop()));
+      }
+    } else if (dir != null) {
+      File[] files = new File(dir).listFiles();
+      if (files == null) {
+        throw new IOException("Not a directory: " + dir);
+      }
+      Arrays.sort(files);
+      for (File file : files) {
+        Matcher matcher = FRAME_NAME.matcher(file.getName());
+        if (matcher.matches()) {
+          try (InputStream in = new FileInputStream(file)) {
+            loaded.add(toFrame(matcher, readFully(in)));
+          }
+        }
+      }
+    } else {
+      InputStream index = FrameCorpus.class.getResourceAsStream(INDEX);
+      if (index != null) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(index, StandardCharsets.UTF_8))) {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            Matcher matcher = FRAME_NAME.matcher(line);
+            if (line.isEmpty() || line.startsWith("#") || !matcher.matches()) {
+              continue;
+            }
+            try (InputStream in = FrameCorpus.class.getResourceAsStream("/frames/" + line)) {
+              if (in == null) {
+                throw new IOException("Listed but missing: " + line);
+              }
+              loaded.add(toFrame(matcher, readFully(in)));
+            }
+          }
+        }
+      }
+    }
+    if (loaded.isEmpty()) {
+      loaded = synthesize();
+    }
+    return loaded;
+  }
+
+  private static Frame toFrame(Matcher matcher, byte[] data) throws IOException {
+    int width = Integer.parseInt(matcher.group(2));
+    int height = Integer.parseInt(matcher.group(3));
+    if (data.length < width * height * 3 / 2) {
+      throw new IOException("Too short for " + width + 'x' + height + ": " + matcher.group());
+    }
+    return new Frame(matcher.group(1), width, height, data);
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) > 0) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  private static List<Frame> synthesize() {
+    Object[][] codes = {
+        {BarcodeFormat.QR_CODE, "https://github.com/zxing/zxing/wiki/Getting-Started-Developing", 360, 360},
+        {BarcodeFormat.DATA_MATRIX, "Lot 20180630-0042 Exp 2020-06", 240, 240},
+        {BarcodeFormat.AZTEC, "M1DOE/JOHN            EABC123 SFOLAXUA 0123 181Y012A0001 100", 320, 320},
+        {BarcodeFormat.PDF_417, "DAQ D1234567 DCS DOE DAC JOHN DBB 19800101", 520, 200},
+        {BarcodeFormat.CODE_128, "PKG-00042-SHIP-7", 520, 160},
+        {BarcodeFormat.EAN_13, "9780201379624", 420, 200},
+    };
+    Random random = new Random(42L);
+    List<Frame> synthesized = new ArrayList<>(codes.length + 1);
+    for (Object[] code : codes) {
+      BarcodeFormat format = (BarcodeFormat) code[0];
+      BitMatrix matrix = encode(format, (String) code[1], (Integer) code[2], (Integer) code[3]);
+      synthesized.add(new Frame("synthetic-" + format, SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT,
+          render(matrix, random)));
+    }
+    synthesized.add(new Frame("synthetic-empty", SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT, render(null, random)));
+    return synthesized;
+  }
+
+  private static BitMatrix encode(BarcodeFormat format, String contents, int width, int height) {
+    Map<EncodeHintType,Object> hints = new EnumMap<>(EncodeHintType.class);
+    hints.put(EncodeHintType.MARGIN, 4);
+    try {
+      return new MultiFormatWriter().encode(contents, format, width, height, hints);
+    } catch (WriterException we) {
+      throw new IllegalStateException(we);
+    }
+  }
+
+  /**
+   * Draws the code in the middle of a frame lit brighter on one side, then blurs and adds noise.
+   */
+  private static byte[] render(BitMatrix matrix, Random random) {
+    int width = SYNTHETIC_WIDTH;
+    int height = SYNTHETIC_HEIGHT;
+    int[] luminance = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        luminance[y * width + x] = 110 + 90 * x / width;
+      }
+    }
+    if (matrix != null) {
+      int left = (width - matrix.getWidth()) / 2;
+      int top = (height - matrix.getHeight()) / 2;
+      for (int y = 0; y < matrix.getHeight(); y++) {
+        for (int x = 0; x < matrix.getWidth(); x++) {
+          int offset = (top + y) * width + left + x;
+          // Paper is brighter than the background, ink a little lighter where the light is
+          luminance[offset] = matrix.get(x, y) ? 30 + 30 * (left + x) / width : 200 + 40 * (left + x) / width;
+        }
+      }
+    }
+    byte[] nv21 = new byte[width * height * 3 / 2];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        // 3x3 box blur for a lens that is nearly in focus
+        int sum = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+          int row = Math.min(height - 1, Math.max(0, y + dy)) * width;
+          for (int dx = -1; dx <= 1; dx++) {
+            sum += luminance[row + Math.min(width - 1, Math.max(0, x + dx))];
+          }
+        }
+        int value = sum / 9 + (int) (random.nextGaussian() * 6.0);
+        nv21[y * width + x] = (byte) Math.min(255, Math.max(0, value));
+      }
+    }
+    // Grey chroma
+    Arrays.fill(nv21, width * height, nv21.length, (byte) 128);
+    return nv21;
+  }
+
+  /**
+   * One frame, with the framing rect the scanner would decode: as recorded, or the middle 5/8
+   * each way.
+   */
+  static final class Frame {
+
+    final String name;
+    final int width;
+    final int height;
+    final byte[] data;
+    final int cropLeft;
+    final int cropTop;
+    final int cropWidth;
+    final int cropHeight;
+
+    Frame(String name, int width, int height, byte[] data) {
+      this(name, width, height, data, (width - width * 5 / 8) / 2, (height - height * 5 / 8) / 2,
+          width * 5 / 8, height * 5 / 8);
+    }
+
+    Frame(String name, int width, int height, byte[] data,
+          int cropLeft, int cropTop, int cropWidth, int cropHeight) {
+      this.name = name;
+      this.width = width;
+      this.height = height;
+      this.data = data;
+      this.cropLeft = cropLeft;
+      this.cropTop = cropTop;
+      this.cropWidth = cropWidth;
+      this.cropHeight = cropHeight;
+    }
+
+    /**
+     * @return the luminance plane as ARGB pixels, as a decoded gallery image would arrive
+     */
+    int[] toArgb() {
+      int[] argb = new int[width * height];
+      for (int i = 0; i < argb.length; i++) {
+        int grey = data[i] & 0xFF;
+        argb[i] = 0xFF000000 | (grey * 0x00010101);
+      }
+      return argb;
+    }
+
+    @Override
+    public String toString() {
+      return name + ' ' + width + 'x' + height;
+    }
+  }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Hands out the corpus frames in turn, so one operation is one frame and a score is in frames
+ * per second averaged over the whole corpus.
+ */
+@State(Scope.Thread)
+public class FrameState {
+
+  private List<FrameCorpus.Frame> frames;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void loadFrames() throws IOException {
+    frames = FrameCorpus.get();
+  }
+
+  FrameCorpus.Frame next() {
+    FrameCorpus.Frame frame = frames.get(next);
+    next = (next + 1) % frames.size();
+    return frame;
+  }
+
+  List<FrameCorpus.Frame> all() {
+    return frames;
+  }
+
+}
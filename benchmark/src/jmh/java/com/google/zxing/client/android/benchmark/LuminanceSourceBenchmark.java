@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.benchmark;
+
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.client.android.camera.ReusableYUVLuminanceSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of wrapping a preview frame for the readers and copying out the framing rect, once with a
+ * new source per frame and once with one source pointed at each frame in turn.
+ */
+@State(Scope.Thread)
+public class LuminanceSourceBenchmark {
+
+  private ReusableYUVLuminanceSource reusable;
+
+  @Benchmark
+  public byte[] planarSource(FrameState state) {
+    FrameCorpus.Frame frame = state.next();
+    PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(frame.data, frame.width, frame.height,
+        frame.cropLeft, frame.cropTop, frame.cropWidth, frame.cropHeight, false);
+    return source.getMatrix();
+  }
+
+  @Benchmark
+  public byte[] reusableSource(FrameState state) {
+    FrameCorpus.Frame frame = state.next();
+    if (reusable == null ||
+        reusable.getWidth() != frame.cropWidth || reusable.getHeight() != frame.cropHeight) {
+      reusable = new ReusableYUVLuminanceSource(frame.cropWidth, frame.cropHeight);
+    }
+    reusable.reset(frame.data, frame.width, frame.height, frame.cropLeft, frame.cropTop);
+    return reusable.getMatrix();
+  }
+
+}
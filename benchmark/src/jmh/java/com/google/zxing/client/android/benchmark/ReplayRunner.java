@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.benchmark;
+
+import com.google.zxing.client.android.DecodeProfile;
+import com.google.zxing.client.android.FrameReplayer;
+import com.google.zxing.client.android.ScanEngine;
+import com.google.zxing.client.android.camera.FrameRecording;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays a recording of preview frames pulled off a device through the scan engine and prints
+ * frames and time to the first result, and per-frame latency. Run with
+ * {@code ./gradlew :benchmark:replay -Precording=preview-frames.nv21ring}, optionally with
+ * {@code -Ppacing=recorded} to let frames arrive as they did on the device and
+ * {@code -PformatSet=QR_CODE} (any {@link DecodeBenchmark.FormatSet}) to change what is decoded.
+ */
+public final class ReplayRunner {
+
+  private ReplayRunner() {}
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 1 || args[0].isEmpty()) {
+      System.err.println("Usage: ReplayRunner <recording> [recorded|maximum] [format set]");
+      System.exit(1);
+    }
+    FrameReplayer.Pacing pacing = args.length > 1 ?
+        FrameReplayer.Pacing.valueOf(args[1].toUpperCase(Locale.ENGLISH)) : FrameReplayer.Pacing.MAXIMUM;
+    DecodeBenchmark.FormatSet formatSet = args.length > 2 ?
+        DecodeBenchmark.FormatSet.valueOf(args[2].toUpperCase(Locale.ENGLISH)) : DecodeBenchmark.FormatSet.DEFAULT;
+
+    List<FrameRecording.Frame> frames = FrameRecording.read(new File(args[0]));
+    System.out.println(frames.size() + " frames" +
+        (frames.isEmpty() ? "" : " from " + frames.get(0) + " to " + frames.get(frames.size() - 1)) +
+        ", " + pacing + " pacing, " + formatSet + " formats");
+
+    ScanEngine engine = new ScanEngine(new DecodeProfile.Builder().setFormats(formatSet.formats).build());
+    try {
+      FrameReplayer.Report report = new FrameReplayer(engine, pacing).replay(frames);
+      System.out.println(report);
+    } finally {
+      engine.shutdown();
+    }
+  }
+
+}
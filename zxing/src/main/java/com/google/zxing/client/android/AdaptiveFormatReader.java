@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces the fixed reader order of {@link MultiFormatReader} with one driven by a
+ * {@link FormatHitHistogram}. Formats are grouped the way the underlying readers work (all 1D
+ * formats share one row scan, each 2D format has its own reader); on every frame the groups are
+ * sorted so the most frequently scanned come first, and groups which are rarely seen are only
+ * tried on every {@link #RARE_FORMAT_INTERVAL}th frame.
+ */
+final class AdaptiveFormatReader {
+
+  private static final int RARE_FORMAT_INTERVAL = 4;
+  private static final float RARE_FORMAT_SHARE = 0.02f;
+
+  private final FormatHitHistogram histogram;
+  private final ReaderGroup[] groups;
+  private long frameCount;
+
+  AdaptiveFormatReader(Map<DecodeHintType,Object> hints,
+                       Collection<BarcodeFormat> formats,
+                       FormatHitHistogram histogram) {
+    this.histogram = histogram;
+    List<Set<BarcodeFormat>> formatGroups = FormatGroups.splitByReader(formats);
+    groups = new ReaderGroup[formatGroups.size()];
+    for (int i = 0; i < groups.length; i++) {
+      Map<DecodeHintType,Object> groupHints = new EnumMap<>(DecodeHintType.class);
+      groupHints.putAll(hints);
+      groupHints.put(DecodeHintType.POSSIBLE_FORMATS, formatGroups.get(i));
+      groups[i] = new ReaderGroup(formatGroups.get(i), groupHints);
+    }
+  }
+
+  /**
+   * Starts on a new frame; the reader order is fixed until the next call.
+   */
+  void nextFrame() {
+    frameCount++;
+    sortByLikelihood();
+  }
+
+  /**
+   * @param bitmap one binarization of the current frame
+   * @param skipRowReaders true if the 1D readers have already seen the same rows on this frame,
+   *  as happens when only the 2D matrix differs between two binarizations
+   */
+  Result decode(BinaryBitmap bitmap, boolean skipRowReaders) throws NotFoundException {
+    boolean tryRare = frameCount % RARE_FORMAT_INTERVAL == 0;
+    for (ReaderGroup group : groups) {
+      if (skipRowReaders && group.oneD) {
+        continue;
+      }
+      if (!tryRare && histogram.isRare(group.weight, RARE_FORMAT_SHARE)) {
+        continue;
+      }
+      try {
+        return group.reader.decodeWithState(bitmap);
+      } catch (ReaderException re) {
+        // try the next group
+      } finally {
+        group.reader.reset();
+      }
+    }
+    throw NotFoundException.getNotFoundInstance();
+  }
+
+  private void sortByLikelihood() {
+    for (ReaderGroup group : groups) {
+      float weight = 0.0f;
+      for (BarcodeFormat format : group.formats) {
+        weight += histogram.getWeight(format);
+      }
+      group.weight = weight;
+    }
+    // Insertion sort: there are at most a handful of groups and they are usually in order already
+    for (int i = 1; i < groups.length; i++) {
+      ReaderGroup group = groups[i];
+      int j = i - 1;
+      while (j >= 0 && groups[j].weight < group.weight) {
+        groups[j + 1] = groups[j];
+        j--;
+      }
+      groups[j + 1] = group;
+    }
+  }
+
+  private static final class ReaderGroup {
+
+    private final Set<BarcodeFormat> formats;
+    private final MultiFormatReader reader;
+    private final boolean oneD;
+    private float weight;
+
+    ReaderGroup(Set<BarcodeFormat> formats, Map<DecodeHintType,Object> hints) {
+      this.formats = formats;
+      oneD = FormatGroups.isOneD(formats.iterator().next());
+      reader = new MultiFormatReader();
+      reader.setHints(hints);
+    }
+  }
+
+}
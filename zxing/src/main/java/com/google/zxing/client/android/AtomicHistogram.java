@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of non-negative values, recorded from any thread without locking. Values below
+ * {@value #LINEAR_LIMIT} get a bucket each; above that every power of two is split into
+ * {@value #SUB_BUCKETS} buckets, so percentiles are within 1/{@value #SUB_BUCKETS} of the true
+ * value however large it is, in a fixed few kilobytes. Recording is a couple of atomic adds.
+ */
+public final class AtomicHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+  private static final int LINEAR_BITS = 4; // log2(LINEAR_LIMIT)
+  // Values are clamped below 2^MAX_BITS, about 12 days in microseconds
+  private static final int MAX_BITS = 40;
+  private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_BITS - LINEAR_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long value) {
+    if (value < 0L) {
+      value = 0L;
+    }
+    buckets.incrementAndGet(bucketFor(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long currentMax;
+    while (value > (currentMax = max.get())) {
+      if (max.compareAndSet(currentMax, value)) {
+        break;
+      }
+    }
+  }
+
+  private static int bucketFor(long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    int bits = Math.min(64 - Long.numberOfLeadingZeros(value), MAX_BITS);
+    if (bits == MAX_BITS && value >= 1L << MAX_BITS) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (int) (value >>> (bits - 1 - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_LIMIT + (bits - 1 - LINEAR_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @return the largest value which falls in {@code bucket}
+   */
+  private static long highestValueIn(int bucket) {
+    if (bucket < LINEAR_LIMIT) {
+      return bucket;
+    }
+    int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_BITS;
+    int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+    long lowest = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1L;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return mean of the recorded values, or 0 if there are none
+   */
+  public double getMean() {
+    long n = count.get();
+    return n == 0L ? 0.0 : (double) sum.get() / n;
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Reads the buckets one by one while others may still be recording, so the result can be off by
+   * the values recorded meanwhile.
+   *
+   * @param percentile between 0 and 100
+   * @return a value at least as large as that share of the recorded values, or 0 if there are none
+   */
+  public long getPercentile(double percentile) {
+    long total = 0L;
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = buckets.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0L) {
+      return 0L;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+    long seen = 0L;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(highestValueIn(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Forgets everything recorded. Values recorded at the same time may or may not survive.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets.set(i, 0L);
+    }
+    count.set(0L);
+    sum.set(0L);
+    max.set(0L);
+  }
+
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.zxing.Result;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes images picked from the gallery on a small pool of worker threads, one image per thread
+ * at a time. Each worker keeps its own {@link GalleryImageDecoder}, so memory in use is bounded by
+ * the pool size no matter how many images are queued. Outcomes are delivered to a
+ * {@link Listener} on the main thread as each image finishes, not at the end of the batch.
+ *
+ * <p>One instance lives as long as its activity; call {@link #shutdown()} when done with it.</p>
+ */
+final class BatchImageImporter {
+
+  private static final String TAG = BatchImageImporter.class.getSimpleName();
+
+  // Decoding is memory-bound as much as CPU-bound; more threads than this only add working sets
+  private static final int MAX_THREADS = 4;
+
+  /**
+   * Receives the outcome of each image. All methods are called on the main thread.
+   */
+  interface Listener {
+
+    /**
+     * @param result barcode found in the image, or null if it had none
+     */
+    void onImageDecoded(Uri uri, Result result, Progress progress);
+
+    /**
+     * The image could not be read at all.
+     */
+    void onImageFailed(Uri uri, Progress progress);
+
+    void onBatchFinished(Progress progress);
+  }
+
+  private final ExecutorService executor;
+  private final Handler mainHandler;
+  private final ThreadLocal<GalleryImageDecoder> decoders;
+  private volatile boolean shutdown;
+
+  BatchImageImporter() {
+    int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+    executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        return new Thread(new Runnable() {
+          @Override
+          public void run() {
+            // Keep the preview and UI responsive while a batch runs
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+          }
+        }, "ImageImport-" + count.incrementAndGet());
+      }
+    });
+    mainHandler = new Handler(Looper.getMainLooper());
+    decoders = new ThreadLocal<GalleryImageDecoder>() {
+      @Override
+      protected GalleryImageDecoder initialValue() {
+        return new GalleryImageDecoder();
+      }
+    };
+    Log.i(TAG, "Importing on " + threads + " threads");
+  }
+
+  /**
+   * Queues every image for decoding. Images are decoded in no particular order.
+   */
+  void importAll(ContentResolver resolver, List<Uri> uris, Listener listener) {
+    Batch batch = new Batch(uris.size(), listener);
+    if (uris.isEmpty()) {
+      batch.deliverFinished();
+      return;
+    }
+    for (Uri uri : uris) {
+      executor.execute(new ImportTask(resolver, uri, batch));
+    }
+  }
+
+  /**
+   * Abandons queued images and stops delivering outcomes. Images already being decoded finish
+   * in the background, but their outcomes are dropped.
+   */
+  void shutdown() {
+    shutdown = true;
+    executor.shutdownNow();
+  }
+
+  private final class ImportTask implements Runnable {
+
+    private final ContentResolver resolver;
+    private final Uri uri;
+    private final Batch batch;
+
+    ImportTask(ContentResolver resolver, Uri uri, Batch batch) {
+      this.resolver = resolver;
+      this.uri = uri;
+      this.batch = batch;
+    }
+
+    @Override
+    public void run() {
+      if (shutdown) {
+        return;
+      }
+      try {
+        Result result = decoders.get().decode(resolver, uri).getResult();
+        batch.deliverDecoded(uri, result);
+      } catch (IOException | RuntimeException e) {
+        // A bad image must not take the rest of the batch down with it
+        Log.w(TAG, "Could not import " + uri, e);
+        batch.deliverFailed(uri);
+      }
+    }
+  }
+
+  /**
+   * Counts outcomes for one call to {@link #importAll(ContentResolver, List, Listener)}.
+   */
+  private final class Batch {
+
+    private final int total;
+    private final Listener listener;
+    private final long startMs;
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger found = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    Batch(int total, Listener listener) {
+      this.total = total;
+      this.listener = listener;
+      startMs = SystemClock.elapsedRealtime();
+    }
+
+    void deliverDecoded(final Uri uri, final Result result) {
+      if (result != null) {
+        found.incrementAndGet();
+      }
+      final boolean last = done.incrementAndGet() == total;
+      final Progress progress = snapshot();
+      post(new Runnable() {
+        @Override
+        public void run() {
+          listener.onImageDecoded(uri, result, progress);
+          if (last) {
+            listener.onBatchFinished(progress);
+          }
+        }
+      });
+    }
+
+    void deliverFailed(final Uri uri) {
+      failed.incrementAndGet();
+      final boolean last = done.incrementAndGet() == total;
+      final Progress progress = snapshot();
+      post(new Runnable() {
+        @Override
+        public void run() {
+          listener.onImageFailed(uri, progress);
+          if (last) {
+            listener.onBatchFinished(progress);
+          }
+        }
+      });
+    }
+
+    void deliverFinished() {
+      final Progress progress = snapshot();
+      post(new Runnable() {
+        @Override
+        public void run() {
+          listener.onBatchFinished(progress);
+        }
+      });
+    }
+
+    private Progress snapshot() {
+      return new Progress(total, done.get(), found.get(), failed.get(),
+          SystemClock.elapsedRealtime() - startMs);
+    }
+
+    private void post(final Runnable delivery) {
+      mainHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          if (!shutdown) {
+            delivery.run();
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Where a batch stood when an image finished.
+   */
+  static final class Progress {
+
+    private final int total;
+    private final int done;
+    private final int found;
+    private final int failed;
+    private final long elapsedMs;
+
+    Progress(int total, int done, int found, int failed, long elapsedMs) {
+      this.total = total;
+      this.done = done;
+      this.found = found;
+      this.failed = failed;
+      this.elapsedMs = elapsedMs;
+    }
+
+    int getTotal() {
+      return total;
+    }
+
+    int getDone() {
+      return done;
+    }
+
+    int getFound() {
+      return found;
+    }
+
+    int getFailed() {
+      return failed;
+    }
+
+    float getImagesPerSecond() {
+      return elapsedMs <= 0L ? 0.0f : 1000.0f * done / elapsedMs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ENGLISH, "%d/%d images, %d found, %d failed, %.1f images/s",
+          done, total, found, failed, getImagesPerSecond());
+    }
+  }
+
+}
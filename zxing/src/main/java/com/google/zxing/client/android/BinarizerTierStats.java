@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import java.util.regex.Pattern;
+
+/**
+ * Decaying count of which binarization tier produced each successful scan, persisted by the
+ * scanner so a device remembers what its usual lighting needs. It decides which tiers are worth
+ * trying on a frame: the cheap global histogram tier is dropped once it has stopped winning, and
+ * the inverted tier is only tried now and then unless inverted codes are common.
+ */
+final class BinarizerTierStats {
+
+  private static final Pattern ENTRY_SEPARATOR = Pattern.compile(";");
+  private static final Pattern VALUE_SEPARATOR = Pattern.compile("=");
+
+  private static final float DECAY = 0.98f;
+  private static final float MIN_EVIDENCE = 10.0f;
+  private static final float MIN_WEIGHT = 0.001f;
+
+  // Below this share of wins the global tier only gets every GLOBAL_RETRY_INTERVALth frame
+  private static final float GLOBAL_RARE_SHARE = 0.05f;
+  private static final int GLOBAL_RETRY_INTERVAL = 8;
+  // Above this share of wins the inverted tier is tried on every frame
+  private static final float INVERTED_COMMON_SHARE = 0.1f;
+  private static final int INVERTED_INTERVAL = 4;
+
+  /**
+   * Binarizations tried on a frame, cheapest first.
+   */
+  enum Tier {
+    /** One threshold for the whole crop; enough for clean, evenly lit labels. */
+    GLOBAL_HISTOGRAM,
+    /** Local thresholds per block; copes with shadows and glare. */
+    HYBRID,
+    /** Local thresholds on the inverted image, for light-on-dark codes. */
+    INVERTED,
+  }
+
+  private static final Tier[] TIERS = Tier.values();
+
+  private final float[] weights = new float[TIERS.length];
+  private float total;
+
+  /**
+   * @param saved weights in the form written by {@link #toString()}, or null
+   */
+  static BinarizerTierStats parse(String saved) {
+    BinarizerTierStats stats = new BinarizerTierStats();
+    if (saved != null && !saved.isEmpty()) {
+      for (String entry : ENTRY_SEPARATOR.split(saved)) {
+        String[] tierAndWeight = VALUE_SEPARATOR.split(entry);
+        if (tierAndWeight.length != 2) {
+          continue;
+        }
+        try {
+          float weight = Float.parseFloat(tierAndWeight[1]);
+          stats.weights[Tier.valueOf(tierAndWeight[0]).ordinal()] = weight;
+          stats.total += weight;
+        } catch (IllegalArgumentException iae) {
+          // Written by a version with other tiers; forget it
+        }
+      }
+    }
+    return stats;
+  }
+
+  synchronized void recordWin(Tier tier) {
+    total = 0.0f;
+    for (int i = 0; i < weights.length; i++) {
+      float weight = weights[i] * DECAY;
+      weights[i] = weight < MIN_WEIGHT ? 0.0f : weight;
+      total += weights[i];
+    }
+    weights[tier.ordinal()] += 1.0f;
+    total += 1.0f;
+  }
+
+  /**
+   * @param tier tier about to be tried
+   * @param frameNumber sequence number of the frame, used to try skipped tiers once in a while
+   * @return true if the tier is worth its cost on this frame
+   */
+  synchronized boolean shouldTry(Tier tier, long frameNumber) {
+    switch (tier) {
+      case GLOBAL_HISTOGRAM:
+        return total < MIN_EVIDENCE ||
+            weights[tier.ordinal()] >= GLOBAL_RARE_SHARE * total ||
+            frameNumber % GLOBAL_RETRY_INTERVAL == 0;
+      case INVERTED:
+        return (total >= MIN_EVIDENCE && weights[tier.ordinal()] >= INVERTED_COMMON_SHARE * total) ||
+            frameNumber % INVERTED_INTERVAL == 0;
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * @return the tier's fraction of all recent wins, between 0 and 1
+   */
+  synchronized float getShare(Tier tier) {
+    return total == 0.0f ? 0.0f : weights[tier.ordinal()] / total;
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder result = new StringBuilder();
+    for (Tier tier : TIERS) {
+      float weight = weights[tier.ordinal()];
+      if (weight > 0.0f) {
+        if (result.length() > 0) {
+          result.append(';');
+        }
+        result.append(tier.name()).append('=').append(weight);
+      }
+    }
+    return result.toString();
+  }
+
+}
@@ -17,16 +17,7 @@
 package com.google.zxing.client.android;
 
 import com.google.zxing.BarcodeFormat;
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.ChecksumException;
 import com.google.zxing.DecodeHintType;
-import com.google.zxing.FormatException;
-import com.google.zxing.LuminanceSource;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.NotFoundException;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.RGBLuminanceSource;
-import com.google.zxing.Reader;
 import com.google.zxing.Result;
 import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
@@ -40,12 +31,12 @@ import com.google.zxing.client.android.result.ResultHandler;
 import com.google.zxing.client.android.result.ResultHandlerFactory;
 import com.google.zxing.client.android.result.supplement.SupplementalInfoRetriever;
 import com.google.zxing.client.android.share.ShareActivity;
-import com.google.zxing.common.HybridBinarizer;
 
 import android.Manifest;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.content.ClipData;
 import android.content.ContentUris;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -54,10 +45,9 @@ import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -88,14 +78,13 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * This activity opens the camera and does the actual scanning on a background thread. It draws a
@@ -105,12 +94,15 @@ import java.util.concurrent.Executors;
  * @author dswitkin@google.com (Daniel Switkin)
  * @author Sean Owen
  */
-public final class CaptureActivity extends AppCompatActivity implements SurfaceHolder.Callback {
+public final class CaptureActivity extends AppCompatActivity
+        implements SurfaceHolder.Callback, CameraManager.OpenCallback {
 
     private static final String TAG = CaptureActivity.class.getSimpleName();
 
     private static final long DEFAULT_INTENT_RESULT_DURATION_MS = 1500L;
-    private static final long BULK_MODE_SCAN_DELAY_MS = 1000L;
+
+    // Barcodes further than this share of the framing rect from its middle count as off-center
+    private static final float OFF_CENTER_FRACTION = 0.2f;
 
     private static final String[] ZXING_URLS = {"http://zxing.appspot.com/scan", "zxing://scan/"};
 
@@ -128,7 +120,10 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
     private ViewfinderView viewfinderView;
     private Result lastResult;
     private boolean hasSurface;
+    private SurfaceHolder surfaceHolder;
+    private boolean cameraReady;
     private boolean copyToClipboard;
+    private boolean decodeMultiple;
     private IntentSource source;
     private String sourceUrl;
     private ScanFromWebPageManager scanFromWebPageManager;
@@ -146,8 +141,8 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
     // dialog
     private ScaningDialog scaningDialog;
     private FragmentTransaction ft;
-    // 线程池
-    private ExecutorService singleThresd;
+    // 相册图片识别，单张和批量共用
+    private BatchImageImporter imageImporter;
 
     private static final int SHOWSCANINGDIALOG = 1000;
     private static final int HIDESCANINGDIALOG = 1001;
@@ -212,6 +207,10 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
                 // 跳转相册
                 Intent intent = new Intent("android.intent.action.GET_CONTENT");
                 intent.setType("image/*");
+                if (source == IntentSource.NONE) {
+                    // 独立使用时可一次选多张图片批量导入，结果存入历史记录
+                    intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+                }
                 startActivityForResult(intent, Constants.REQUEST_OPEN_ALBUM);//打开相册
             }
         });
@@ -233,10 +232,6 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
     protected void onResume() {
         super.onResume();
         Log.d("123", "onResume");
-        // historyManager must be initialized here to update the history preference
-        historyManager = new HistoryManager(this);
-        historyManager.trimHistory();
-
         // CameraManager must be initialized here, not in onCreate(). This is necessary because we don't
         // want to open the camera driver and measure the screen size if we're going to show the help on
         // first launch. That led to bugs where the scanning rectangle was the wrong size and partially
@@ -261,12 +256,15 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
         ambientLightManager.start(cameraManager);
 
         inactivityTimer.onResume();
+        ScanMetrics.get().startSession();
 
         Intent intent = getIntent();
 
         copyToClipboard = prefs.getBoolean(PreferencesActivity.KEY_COPY_TO_CLIPBOARD, true)
                 && (intent == null || intent.getBooleanExtra(Intents.Scan.SAVE_HISTORY, true));
 
+        decodeMultiple = intent != null && intent.getBooleanExtra(Intents.Scan.MULTIPLE, false);
+
         source = IntentSource.NONE;
         sourceUrl = null;
         scanFromWebPageManager = null;
@@ -326,6 +324,15 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
             characterSet = intent.getStringExtra(Intents.Scan.CHARACTER_SET);
         }
 
+        // The camera opens on its own thread while the rest happens here and the surface is laid out;
+        // scanning starts once both are ready. The camera ID from the intent has to be known first.
+        cameraReady = false;
+        cameraManager.openDriverAsync(this);
+
+        // historyManager must be initialized here to update the history preference
+        historyManager = new HistoryManager(this);
+        historyManager.trimHistory();
+
         SurfaceView surfaceView = (SurfaceView) findViewById(R.id.preview_view);
         SurfaceHolder surfaceHolder = surfaceView.getHolder();
         if (hasSurface) {
@@ -389,6 +396,8 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
         ambientLightManager.stop();
         beepManager.close();
         cameraManager.closeDriver();
+        cameraReady = false;
+        surfaceHolder = null;
         //historyManager = null; // Keep for onActivityResult
         if (!hasSurface) {
             SurfaceView surfaceView = (SurfaceView) findViewById(R.id.preview_view);
@@ -403,8 +412,8 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
     @Override
     protected void onDestroy() {
         inactivityTimer.shutdown();
-        if (singleThresd != null) {
-            singleThresd.shutdown();
+        if (imageImporter != null) {
+            imageImporter.shutdown();
         }
         super.onDestroy();
     }
@@ -484,51 +493,121 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
         }
 
         if (resultCode == RESULT_OK && requestCode == Constants.REQUEST_OPEN_ALBUM && intent != null) {
-            final Uri uri = intent.getData();
-            final Bitmap bitmap = getSmallerBitmap(decodeUriAsBitmap(uri));
-//            final Bitmap bitmap = decodeUriAsBitmap(uri);
+            List<Uri> uris = getPickedImages(intent);
+            if (uris.isEmpty()) {
+                return;
+            }
             // 识别二维码作
 
             mhandler.sendEmptyMessage(SHOWSCANINGDIALOG);
             mhandler.sendEmptyMessageDelayed(STOPSCAN, 500);
 
-            singleThresd = Executors.newSingleThreadExecutor();
-            singleThresd.execute(new Runnable() {
-                @Override
-                public void run() {
-                    LuminanceSource source1 = new PlanarYUVLuminanceSource(rgb2YUV(bitmap), bitmap.getWidth(),
-                            bitmap.getHeight(), 0, 0, bitmap.getWidth(),
-                            bitmap.getHeight(), false);
-                    BinaryBitmap binaryBitmap = new BinaryBitmap(new HybridBinarizer(source1));
-                    Reader reader1 = new MultiFormatReader();
-                    Result result1;
-                    try {
-                        result1 = reader1.decode(binaryBitmap);
-                        String content = result1.getText();
-                        mhandler.sendEmptyMessageDelayed(HIDESCANINGDIALOG, 500);
-                        Intent intent1 = new Intent();
-                        intent1.putExtra("scanResult", content);
-                        setResult(Constants.RESULT_SCAN, intent1);
-                        finish();
-                        Log.d("123", content);
-                    } catch (NotFoundException e) {
-                        mhandler.sendEmptyMessageDelayed(HIDESCANINGDIALOG, 500);
-                        mhandler.sendEmptyMessageDelayed(STARTSCAN, 500);
-                        Log.d("123", "NotFoundException: " + e.getMessage());
-                        e.printStackTrace();
-                    } catch (ChecksumException e) {
-                        mhandler.sendEmptyMessageDelayed(HIDESCANINGDIALOG, 500);
-                        mhandler.sendEmptyMessageDelayed(STARTSCAN, 500);
-                        Log.d("123", "ChecksumException: " + e.getMessage());
-                        e.printStackTrace();
-                    } catch (FormatException e) {
-                        mhandler.sendEmptyMessageDelayed(HIDESCANINGDIALOG, 500);
-                        mhandler.sendEmptyMessageDelayed(STARTSCAN, 500);
-                        Log.d("123", "FormatException: " + e.getMessage());
-                        e.printStackTrace();
-                    }
+            if (imageImporter == null) {
+                imageImporter = new BatchImageImporter();
+            }
+            if (uris.size() == 1) {
+                imageImporter.importAll(getContentResolver(), uris, new SingleImageListener());
+            } else {
+                imageImporter.importAll(getContentResolver(), uris, new BatchImageListener());
+            }
+        }
+    }
+
+    /**
+     * 取出相册返回的图片，多选时在ClipData中
+     */
+    private static List<Uri> getPickedImages(Intent intent) {
+        List<Uri> uris = new ArrayList<>();
+        ClipData clipData = intent.getClipData();
+        if (clipData != null) {
+            for (int i = 0; i < clipData.getItemCount(); i++) {
+                Uri uri = clipData.getItemAt(i).getUri();
+                if (uri != null) {
+                    uris.add(uri);
                 }
-            });
+            }
+        }
+        if (uris.isEmpty() && intent.getData() != null) {
+            uris.add(intent.getData());
+        }
+        return uris;
+    }
+
+    /**
+     * 单张图片：识别成功后把结果返回给调用方
+     */
+    private final class SingleImageListener implements BatchImageImporter.Listener {
+
+        @Override
+        public void onImageDecoded(Uri uri, Result result, BatchImageImporter.Progress progress) {
+            mhandler.sendEmptyMessageDelayed(HIDESCANINGDIALOG, 500);
+            if (result == null) {
+                mhandler.sendEmptyMessageDelayed(STARTSCAN, 500);
+                return;
+            }
+            String content = result.getText();
+            Intent intent = new Intent();
+            intent.putExtra("scanResult", content);
+            setResult(Constants.RESULT_SCAN, intent);
+            finish();
+            Log.d("123", content);
+        }
+
+        @Override
+        public void onImageFailed(Uri uri, BatchImageImporter.Progress progress) {
+            mhandler.sendEmptyMessageDelayed(HIDESCANINGDIALOG, 500);
+            mhandler.sendEmptyMessageDelayed(STARTSCAN, 500);
+        }
+
+        @Override
+        public void onBatchFinished(BatchImageImporter.Progress progress) {
+            // Handled with the image itself
+        }
+    }
+
+    /**
+     * 多张图片：每识别完一张就存入历史记录并更新进度
+     */
+    private final class BatchImageListener implements BatchImageImporter.Listener {
+
+        @Override
+        public void onImageDecoded(Uri uri, Result result, BatchImageImporter.Progress progress) {
+            if (result != null && historyManager != null) {
+                historyManager.addHistoryItem(result, ResultHandlerFactory.makeResultHandler(CaptureActivity.this, result));
+            }
+            showImportProgress(progress);
+        }
+
+        @Override
+        public void onImageFailed(Uri uri, BatchImageImporter.Progress progress) {
+            showImportProgress(progress);
+        }
+
+        @Override
+        public void onBatchFinished(BatchImageImporter.Progress progress) {
+            Log.i(TAG, "Batch import finished: " + progress);
+            if (scaningDialog != null) {
+                scaningDialog.setMessage(null);
+            }
+            Toast.makeText(getApplicationContext(), formatImportProgress(R.string.msg_batch_import_finished, progress),
+                    Toast.LENGTH_LONG).show();
+            mhandler.sendEmptyMessageDelayed(HIDESCANINGDIALOG, 500);
+            mhandler.sendEmptyMessageDelayed(STARTSCAN, 500);
+        }
+
+        private void showImportProgress(BatchImageImporter.Progress progress) {
+            if (scaningDialog != null) {
+                scaningDialog.setMessage(formatImportProgress(R.string.msg_batch_import_progress, progress));
+            }
+        }
+
+        private String formatImportProgress(int messageId, BatchImageImporter.Progress progress) {
+            return getString(messageId,
+                    progress.getDone(),
+                    progress.getTotal(),
+                    progress.getFound(),
+                    progress.getFailed(),
+                    progress.getImagesPerSecond());
         }
     }
 
@@ -555,82 +634,6 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
         }
     }
 
-    /**
-     * rgb转yuv方法
-     *
-     * @param bitmap
-     * @return
-     */
-    public byte[] rgb2YUV(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        int[] pixels = new int[width * height];
-        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
-
-        int len = width * height;
-        byte[] yuv = new byte[len * 3 / 2];
-        int y, u, v;
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                int rgb = pixels[i * width + j] & 0x00FFFFFF;
-
-                int r = rgb & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = (rgb >> 16) & 0xFF;
-
-                y = ((66 * r + 129 * g + 25 * b + 128) >> 8) + 16;
-                u = ((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128;
-                v = ((112 * r - 94 * g - 18 * b + 128) >> 8) + 128;
-
-                y = y < 16 ? 16 : (y > 255 ? 255 : y);
-                u = u < 0 ? 0 : (u > 255 ? 255 : u);
-                v = v < 0 ? 0 : (v > 255 ? 255 : v);
-
-                yuv[i * width + j] = (byte) y;
-//                yuv[len + (i >> 1) * width + (j & ~1) + 0] = (byte) u;
-//                yuv[len + (i >> 1) * width + (j & ~1) + 1] = (byte) v;
-            }
-        }
-        return yuv;
-    }
-
-    /**
-     * 减小bitmap体积
-     *
-     * @param bitmap
-     * @return
-     */
-    public static Bitmap getSmallerBitmap(Bitmap bitmap) {
-        int size = bitmap.getWidth() * bitmap.getHeight() / 160000;
-        if (size <= 1) return bitmap; // 如果小于
-        else {
-            Matrix matrix = new Matrix();
-            matrix.postScale((float) (1 / Math.sqrt(size)), (float) (1 / Math.sqrt(size)));
-            Bitmap resizeBitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-            return resizeBitmap;
-        }
-    }
-
-    /**
-     * 将uri转换成bitmap
-     *
-     * @param uri
-     * @return
-     */
-    private Bitmap decodeUriAsBitmap(Uri uri) {
-        Bitmap bitmap = null;
-        try {
-            // 先通过getContentResolver方法获得一个ContentResolver实例，
-            // 调用openInputStream(Uri)方法获得uri关联的数据流stream
-            // 把上一步获得的数据流解析成为bitmap
-            bitmap = BitmapFactory.decodeStream(getContentResolver().openInputStream(uri));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return null;
-        }
-        return bitmap;
-    }
-
     private void decodeOrStoreSavedBitmap(Bitmap bitmap, Result result) {
         // Bitmap isn't used yet -- will be used soon
         if (handler == null) {
@@ -662,6 +665,7 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
     public void surfaceDestroyed(SurfaceHolder holder) {
         Log.d("123", "surfaceDestroyed");
         hasSurface = false;
+        surfaceHolder = null;
     }
 
     @Override
@@ -677,46 +681,97 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
      * @param barcode     A greyscale bitmap of the camera data which was decoded.
      */
     public void handleDecode(Result rawResult, Bitmap barcode, float scaleFactor) {
+        handleDecode(rawResult, null, barcode, scaleFactor);
+    }
+
+    /**
+     * Several barcodes have been found in one frame. Handled like a single result, except that
+     * every code is recorded and all of them are handed back together.
+     *
+     * @param rawResults  The barcodes found, at least one.
+     * @param scaleFactor amount by which thumbnail was scaled
+     * @param barcode     A greyscale bitmap of the camera data which was decoded.
+     */
+    public void handleDecodeBatch(Result[] rawResults, Bitmap barcode, float scaleFactor) {
+        handleDecode(rawResults[0], rawResults, barcode, scaleFactor);
+    }
+
+    private void handleDecode(Result rawResult, Result[] batch, Bitmap barcode, float scaleFactor) {
         inactivityTimer.onActivity();
         lastResult = rawResult;
         ResultHandler resultHandler = ResultHandlerFactory.makeResultHandler(this, rawResult);
 
         boolean fromLiveScan = barcode != null;
         if (fromLiveScan) {
-            historyManager.addHistoryItem(rawResult, resultHandler);
+            if (batch == null) {
+                historyManager.addHistoryItem(rawResult, resultHandler);
+                drawResultPoints(barcode, scaleFactor, rawResult);
+            } else {
+                for (Result result : batch) {
+                    historyManager.addHistoryItem(result, ResultHandlerFactory.makeResultHandler(this, result));
+                    drawResultPoints(barcode, scaleFactor, result);
+                }
+            }
             // Then not from history, so beep/vibrate and we have an image to draw on
             beepManager.playBeepSoundAndVibrate();
-            drawResultPoints(barcode, scaleFactor, rawResult);
+            ScanMetrics.get().recordResultShown(isOffCenter(rawResult));
         }
 
         switch (source) {
             case NATIVE_APP_INTENT:
             case PRODUCT_SEARCH_LINK:
-                handleDecodeExternally(rawResult, resultHandler, barcode);
+                handleDecodeExternally(rawResult, batch, resultHandler, barcode);
                 break;
             case ZXING_LINK:
                 if (scanFromWebPageManager == null || !scanFromWebPageManager.isScanFromWebPage()) {
-                    handleDecodeInternally(rawResult, resultHandler, barcode);
+                    handleDecodeInternally(rawResult, batch, resultHandler, barcode);
                 } else {
-                    handleDecodeExternally(rawResult, resultHandler, barcode);
+                    handleDecodeExternally(rawResult, batch, resultHandler, barcode);
                 }
                 break;
             case NONE:
-                SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
-                if (fromLiveScan && prefs.getBoolean(PreferencesActivity.KEY_BULK_MODE, false)) {
+                if (fromLiveScan && isBulkMode()) {
+                    String scanned = batch == null ? rawResult.getText() : String.valueOf(batch.length);
                     Toast.makeText(getApplicationContext(),
-                            getResources().getString(R.string.msg_bulk_mode_scanned) + " (" + rawResult.getText() + ')',
+                            getResources().getString(R.string.msg_bulk_mode_scanned) + " (" + scanned + ')',
                             Toast.LENGTH_SHORT).show();
                     maybeSetClipboard(resultHandler);
-                    // Wait a moment or else it will scan the same barcode continuously about 3 times
-                    restartPreviewAfterDelay(BULK_MODE_SCAN_DELAY_MS);
+                    // No need to wait: the decoders drop codes which were just reported
+                    restartPreviewAfterDelay(0L);
                 } else {
-                    handleDecodeInternally(rawResult, resultHandler, barcode);
+                    handleDecodeInternally(rawResult, batch, resultHandler, barcode);
                 }
                 break;
         }
     }
 
+    /**
+     * @return whether the middle of the barcode's points was away from the middle of the framing rect
+     */
+    private boolean isOffCenter(Result rawResult) {
+        Rect frame = cameraManager.getFramingRectInPreview();
+        ResultPoint[] points = rawResult.getResultPoints();
+        if (frame == null || points == null) {
+            return false;
+        }
+        float x = 0.0f;
+        float y = 0.0f;
+        int count = 0;
+        for (ResultPoint point : points) {
+            if (point != null) {
+                x += point.getX();
+                y += point.getY();
+                count++;
+            }
+        }
+        if (count == 0) {
+            return false;
+        }
+        // Points are relative to the framing rect
+        return Math.abs(x / count - frame.width() / 2.0f) > OFF_CENTER_FRACTION * frame.width() ||
+                Math.abs(y / count - frame.height() / 2.0f) > OFF_CENTER_FRACTION * frame.height();
+    }
+
     /**
      * Superimpose a line for 1D or dots for 2D to highlight the key features of the barcode.
      *
@@ -762,7 +817,7 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
     }
 
     // Put up our own UI for how to handle the decoded contents.
-    private void handleDecodeInternally(Result rawResult, ResultHandler resultHandler, Bitmap
+    private void handleDecodeInternally(Result rawResult, Result[] batch, ResultHandler resultHandler, Bitmap
             barcode) {
 
         maybeSetClipboard(resultHandler);
@@ -783,13 +838,14 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
 
         Intent intent = new Intent();
         intent.putExtra("scanResult", displayContents);
+        putBatchExtras(intent, batch);
         setResult(Constants.RESULT_SCAN, intent);
         finish();
 
     }
 
     // Briefly show the contents of the barcode, then handle the result outside Barcode Scanner.
-    private void handleDecodeExternally(Result rawResult, ResultHandler resultHandler, Bitmap
+    private void handleDecodeExternally(Result rawResult, Result[] batch, ResultHandler resultHandler, Bitmap
             barcode) {
 
         if (barcode != null) {
@@ -842,6 +898,7 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
                         }
                     }
                 }
+                putBatchExtras(intent, batch);
                 sendReplyMessage(R.id.return_scan_result, intent, resultDurationMS);
                 break;
 
@@ -864,6 +921,28 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
         }
     }
 
+    /**
+     * @return true if results are collected continuously rather than ending the scan
+     */
+    private boolean isBulkMode() {
+        return source == IntentSource.NONE &&
+                PreferenceManager.getDefaultSharedPreferences(this).getBoolean(PreferencesActivity.KEY_BULK_MODE, false);
+    }
+
+    private static void putBatchExtras(Intent intent, Result[] batch) {
+        if (batch == null) {
+            return;
+        }
+        String[] contents = new String[batch.length];
+        String[] formats = new String[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            contents[i] = batch[i].getText();
+            formats[i] = batch[i].getBarcodeFormat().toString();
+        }
+        intent.putExtra(Intents.Scan.RESULTS, contents);
+        intent.putExtra(Intents.Scan.RESULT_FORMATS, formats);
+    }
+
     private void maybeSetClipboard(ResultHandler resultHandler) {
         if (copyToClipboard && !resultHandler.areContentsSecure()) {
             ClipboardInterface.setText(resultHandler.getDisplayContents(), this);
@@ -885,23 +964,52 @@ public final class CaptureActivity extends AppCompatActivity implements SurfaceH
         if (surfaceHolder == null) {
             throw new IllegalStateException("No SurfaceHolder provided");
         }
-        if (cameraManager.isOpen()) {
-            Log.w(TAG, "initCamera() while already open -- late SurfaceView callback?");
+        this.surfaceHolder = surfaceHolder;
+        startScanningIfReady();
+    }
+
+    @Override
+    public void onCameraOpened() {
+        cameraReady = true;
+        startScanningIfReady();
+    }
+
+    @Override
+    public void onCameraOpenFailed(Exception e) {
+        // Barcode Scanner has seen crashes in the wild of this variety:
+        // java.?lang.?RuntimeException: Fail to connect to camera service
+        Log.w(TAG, "Unexpected error initializing camera", e);
+        displayFrameworkBugMessageAndExit();
+    }
+
+    @Override
+    public void onCameraLost(Exception e) {
+        Log.w(TAG, "Camera stopped working", e);
+        displayFrameworkBugMessageAndExit();
+    }
+
+    /**
+     * Starts the preview and decoding once the camera is open and the surface exists, whichever
+     * happens last.
+     */
+    private void startScanningIfReady() {
+        if (!cameraReady || surfaceHolder == null) {
+            return;
+        }
+        if (handler != null) {
+            Log.w(TAG, "initCamera() while already scanning -- late SurfaceView callback?");
             return;
         }
         try {
-            cameraManager.openDriver(surfaceHolder);
+            cameraManager.setPreviewDisplay(surfaceHolder);
             // Creating the handler starts the preview, which can also throw a RuntimeException.
-            if (handler == null) {
-                handler = new CaptureActivityHandler(this, decodeFormats, decodeHints, characterSet, cameraManager);
-            }
+            handler = new CaptureActivityHandler(this, decodeFormats, decodeHints, characterSet, decodeMultiple,
+                    isBulkMode(), cameraManager);
             decodeOrStoreSavedBitmap(null, null);
         } catch (IOException ioe) {
             Log.w(TAG, ioe);
             displayFrameworkBugMessageAndExit();
         } catch (RuntimeException e) {
-            // Barcode Scanner has seen crashes in the wild of this variety:
-            // java.?lang.?RuntimeException: Fail to connect to camera service
             Log.w(TAG, "Unexpected error initializing camera", e);
             displayFrameworkBugMessageAndExit();
         }
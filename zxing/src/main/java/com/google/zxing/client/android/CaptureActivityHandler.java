@@ -48,8 +48,10 @@ public final class CaptureActivityHandler extends Handler {
   private static final String TAG = CaptureActivityHandler.class.getSimpleName();
 
   private final CaptureActivity activity;
-  private final DecodeThread decodeThread;
+  private final DecodeWorkerPool decodeWorkerPool;
   private State state;
+  // Bumped on every restart; workers answer with the round their frame was requested in
+  private int requestRound;
   private final CameraManager cameraManager;
 
   private enum State {
@@ -62,15 +64,19 @@ public final class CaptureActivityHandler extends Handler {
                          Collection<BarcodeFormat> decodeFormats,
                          Map<DecodeHintType,?> baseHints,
                          String characterSet,
+                         boolean decodeMultiple,
+                         boolean bulkMode,
                          CameraManager cameraManager) {
     this.activity = activity;
-    decodeThread = new DecodeThread(activity, decodeFormats, baseHints, characterSet,
-        new ViewfinderResultPointCallback(activity.getViewfinderView()));
-    decodeThread.start();
+    decodeWorkerPool = new DecodeWorkerPool(activity, decodeFormats, baseHints, characterSet, decodeMultiple,
+        bulkMode, new ViewfinderResultPointCallback(activity.getViewfinderView()));
+    decodeWorkerPool.start();
     state = State.SUCCESS;
 
-    // Start ourselves capturing previews and decoding.
+    // Start ourselves capturing previews and decoding. Every worker can hold a frame, one more
+    // waits in the scheduler's mailbox, and the camera needs a couple to keep writing into.
     this.cameraManager = cameraManager;
+    cameraManager.setPreviewBufferCount(decodeWorkerPool.getWorkerCount() + 3);
     cameraManager.startPreview();
     restartPreviewAndDecode();
   }
@@ -80,8 +86,13 @@ public final class CaptureActivityHandler extends Handler {
     if (message.what == R.id.restart_preview) {
       restartPreviewAndDecode();
 
-    } else if (message.what == R.id.decode_succeeded) {
+    } else if (message.what == R.id.decode_succeeded || message.what == R.id.decode_batch_succeeded) {
+      if (state == State.SUCCESS) {
+        // A result from another worker already arrived; this one is stale
+        return;
+      }
       state = State.SUCCESS;
+      cameraManager.cancelPreviewFrameRequests();
       Bundle bundle = message.getData();
       Bitmap barcode = null;
       float scaleFactor = 1.0f;
@@ -93,12 +104,25 @@ public final class CaptureActivityHandler extends Handler {
           barcode = barcode.copy(Bitmap.Config.ARGB_8888, true);
         }
         scaleFactor = bundle.getFloat(DecodeThread.BARCODE_SCALED_FACTOR);
+        long decodeFinished = bundle.getLong(DecodeThread.DECODE_FINISHED_NANOS);
+        if (decodeFinished > 0L) {
+          ScanMetrics.get().recordNanos(ScanMetrics.Timer.DECODE_TO_RESULT, System.nanoTime() - decodeFinished);
+        }
+      }
+      if (message.what == R.id.decode_batch_succeeded) {
+        activity.handleDecodeBatch((Result[]) message.obj, barcode, scaleFactor);
+      } else {
+        activity.handleDecode((Result) message.obj, barcode, scaleFactor);
       }
-      activity.handleDecode((Result) message.obj, barcode, scaleFactor);
 
-    } else if (message.what == R.id.decode_failed) {// We're decoding as fast as possible, so when one decode fails, start another.
-      state = State.PREVIEW;
-      cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
+    } else if (message.what == R.id.decode_failed) {
+      // We're decoding as fast as possible, so when one decode fails, give that worker another frame.
+      // A worker still busy with a frame from before the last restart was given a new request by
+      // the restart itself; answering its old one too would leave it two requests.
+      if (state == State.PREVIEW && message.arg1 == requestRound) {
+        Handler worker = message.obj instanceof Handler ? (Handler) message.obj : decodeWorkerPool.nextHandler();
+        cameraManager.requestPreviewFrame(worker, R.id.decode, requestRound);
+      }
 
     } else if (message.what == R.id.return_scan_result) {
       activity.setResult(Activity.RESULT_OK, (Intent) message.obj);
@@ -143,24 +167,22 @@ public final class CaptureActivityHandler extends Handler {
   public void quitSynchronously() {
     state = State.DONE;
     cameraManager.stopPreview();
-    Message quit = Message.obtain(decodeThread.getHandler(), R.id.quit);
-    quit.sendToTarget();
-    try {
-      // Wait at most half a second; should be enough time, and onPause() will timeout quickly
-      decodeThread.join(500L);
-    } catch (InterruptedException e) {
-      // continue
-    }
+    // Wait at most half a second; should be enough time, and onPause() will timeout quickly
+    decodeWorkerPool.quit(500L);
 
     // Be absolutely sure we don't send any queued up messages
     removeMessages(R.id.decode_succeeded);
+    removeMessages(R.id.decode_batch_succeeded);
     removeMessages(R.id.decode_failed);
   }
 
   private void restartPreviewAndDecode() {
     if (state == State.SUCCESS) {
       state = State.PREVIEW;
-      cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
+      requestRound++;
+      for (int i = 0; i < decodeWorkerPool.getWorkerCount(); i++) {
+        cameraManager.requestPreviewFrame(decodeWorkerPool.nextHandler(), R.id.decode, requestRound);
+      }
       activity.drawViewfinder();
     }
   }
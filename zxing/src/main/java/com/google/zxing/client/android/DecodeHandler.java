@@ -18,16 +18,15 @@ package com.google.zxing.client.android;
 
 import android.graphics.Bitmap;
 
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.DecodeHintType;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.LuminanceSource;
 import com.google.zxing.RGBLuminanceSource;
-import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.client.android.camera.CameraManager;
+import com.google.zxing.client.android.camera.PreviewFrame;
+import com.google.zxing.client.android.camera.ReusableYUVLuminanceSource;
 
 import android.graphics.BitmapFactory;
+import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -35,20 +34,27 @@ import android.os.Message;
 import android.util.Log;
 
 import java.io.ByteArrayOutputStream;
-import java.util.Map;
 
 final class DecodeHandler extends Handler {
 
     private static final String TAG = DecodeHandler.class.getSimpleName();
 
+    // Region sizes kept while aiming; the engine keeps binarizers for each of them too
+    private static final int REGION_SOURCE_SLOTS = 4;
+
     private final CaptureActivity activity;
-    private final MultiFormatReader multiFormatReader;
+    private final DecodeWorkerPool pool;
+    private final ScanEngine engine;
+    private ReusableYUVLuminanceSource source;
+    private final ReusableYUVLuminanceSource[] regionSources = new ReusableYUVLuminanceSource[REGION_SOURCE_SLOTS];
+    private final Rect focusTarget = new Rect();
     private boolean running = true;
 
-    DecodeHandler(CaptureActivity activity, Map<DecodeHintType, Object> hints) {
-        multiFormatReader = new MultiFormatReader();
-        multiFormatReader.setHints(hints);
+    DecodeHandler(CaptureActivity activity, DecodeWorkerPool pool, DecodeProfile profile) {
+        engine = new ScanEngine(profile, pool.getTierStats(), pool.getFormatHistogram(), pool.getPyramidStats(),
+                pool.getRoiTracker());
         this.activity = activity;
+        this.pool = pool;
     }
 
     @Override
@@ -57,10 +63,15 @@ final class DecodeHandler extends Handler {
             return;
         }
         if (message.what == R.id.decode) {
-            decode((byte[]) message.obj, message.arg1, message.arg2);
+            decode((PreviewFrame) message.obj, message.arg1);
 
         } else if (message.what == R.id.quit) {
             running = false;
+            Throwable groupFailure = engine.getLastGroupFailure();
+            if (groupFailure != null) {
+                Log.w(TAG, engine.getGroupFailures() + " format group decode(s) failed", groupFailure);
+            }
+            engine.shutdown();
             Looper.myLooper().quit();
 
         }
@@ -68,48 +79,176 @@ final class DecodeHandler extends Handler {
 
     /**
      * Decode the data within the viewfinder rectangle, and time how long it took. For efficiency,
-     * reuse the same reader objects from one decode to the next.
+     * reuse the same reader, luminance source and binarizer objects from one decode to the next.
+     * Binarizations are tried from cheapest to most expensive, and the one which worked is counted.
+     * Frames which are too dark or blurry to be worth it are not decoded at all. In pyramid mode a
+     * downscaled copy is decoded first, and full resolution only tried if that found finder patterns.
+     * While recent frames showed something barcode-like, only the region around it is decoded.
+     * When every barcode in the frame is wanted, the whole framing rect is searched instead.
+     * The frame buffer goes back to the camera's pool as soon as nothing here reads from it any more.
      *
-     * @param data   The YUV preview frame.
-     * @param width  The width of the preview frame.
-     * @param height The height of the preview frame.
+     * @param frame The YUV preview frame.
+     * @param round Which round of frame requests this frame was asked for in; passed back when it
+     *              fails, so the capture handler can tell answers to requests from before a restart.
      */
-    private void decode(byte[] data, int width, int height) {
+    private void decode(PreviewFrame frame, int round) {
+        CameraManager cameraManager = activity.getCameraManager();
+        try {
+            decode(cameraManager, frame, round);
+        } finally {
+            // Slower format groups may still be reading the frame
+            engine.awaitIdle();
+            cameraManager.releasePreviewFrame(frame);
+        }
+    }
+
+    private void decode(CameraManager cameraManager, PreviewFrame frame, int round) {
         long start = System.currentTimeMillis();
-        Result rawResult = null;
-        PlanarYUVLuminanceSource source = activity.getCameraManager().buildLuminanceSource(data, width, height);
+        long startNanos = System.nanoTime();
+        long sequence = pool.nextSequence();
+        ScanMetrics metrics = ScanMetrics.get();
+        metrics.recordNanos(ScanMetrics.Timer.CAPTURE_TO_ENQUEUE, frame.getEnqueuedNanos() - frame.getCapturedNanos());
+        metrics.recordNanos(ScanMetrics.Timer.ENQUEUE_TO_DECODE, startNanos - frame.getEnqueuedNanos());
+
+        Rect framingRect = cameraManager.getFramingRectInPreview();
+        FrameQualityFilter.Verdict verdict = framingRect == null ? FrameQualityFilter.Verdict.DECODE :
+                pool.getQualityFilter().check(frame.getLuminance(), frame.getRowStride(), framingRect);
+        if (verdict != FrameQualityFilter.Verdict.DECODE) {
+            if (verdict == FrameQualityFilter.Verdict.TOO_BLURRY) {
+                cameraManager.reportFrame(CameraManager.FrameOutcome.BLURRY, null, 0.0f);
+            }
+            metrics.increment(ScanMetrics.Counter.FRAMES_REJECTED);
+            metrics.recordFrameWithoutResult();
+            // Not worth a decode; free this worker for the next frame straight away
+            Handler handler = activity.getHandler();
+            if (handler != null) {
+                Message.obtain(handler, R.id.decode_failed, round, 0, this).sendToTarget();
+            }
+            return;
+        }
+
+        ReusableYUVLuminanceSource source = cameraManager.buildLuminanceSource(frame, this.source);
+        this.source = source;
+        ScanResult scan = null;
+        Rect target = null;
+        float spread = 0.0f;
         if (source != null) {
-            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-            try {
-                rawResult = multiFormatReader.decodeWithState(bitmap);
-            } catch (ReaderException re) {
-                // continue
-            } finally {
-                multiFormatReader.reset();
+            RoiTracker roiTracker = pool.getRoiTracker();
+            // Every barcode in the frame is wanted, so the whole framing rect has to be searched
+            Rect region = pool.isDecodeMultiple() ? null : roiTracker.getRegion(source.getWidth(), source.getHeight());
+            LuminanceSource decodeSource = source;
+            int left = 0;
+            int top = 0;
+            if (region != null) {
+                decodeSource = buildRegionSource(frame, framingRect, region);
+                left = region.left;
+                top = region.top;
+            }
+            // Points are reported relative to the framing rect, like the thumbnail
+            scan = engine.decode(decodeSource, left, top, sequence);
+            // Focus and meter on what's being decoded, or the middle once nothing is being followed
+            if (region != null) {
+                roiTracker.recordRegionOutcome(scan.getResult() != null);
+                focusTarget.set(region);
+                focusTarget.offset(framingRect.left, framingRect.top);
+                target = focusTarget;
+            }
+            // Includes any points this frame turned up
+            spread = roiTracker.getSpread(source.getWidth(), source.getHeight());
+        }
+        Result rawResult = scan == null ? null : scan.getResult();
+        Result[] results = rawResult != null && pool.isDecodeMultiple() ? scan.getResults() : null;
+
+        long endNanos = System.nanoTime();
+        metrics.increment(ScanMetrics.Counter.FRAMES_DECODED);
+        metrics.recordDecode(rawResult == null ? null : rawResult.getBarcodeFormat(), endNanos - startNanos);
+        if (rawResult != null) {
+            metrics.increment(ScanMetrics.Counter.FRAMES_WITH_RESULT);
+        } else {
+            metrics.recordFrameWithoutResult();
+        }
+        cameraManager.reportFrame(rawResult != null ?
+                CameraManager.FrameOutcome.RESULT : CameraManager.FrameOutcome.NO_RESULT, target, spread);
+
+        if (pool.isStale(sequence)) {
+            // Another worker already reported a result for a frame at least this recent
+            return;
+        }
+        if (rawResult != null) {
+            Result[] fresh = pool.claimFresh(sequence, results != null ? results : new Result[] {rawResult});
+            if (fresh == null) {
+                // Nothing new since bulk scanning last reported, or another worker got in first
+                rawResult = null;
+                results = null;
+            } else if (results != null) {
+                results = fresh;
+                rawResult = fresh[0];
             }
         }
 
         Handler handler = activity.getHandler();
         if (rawResult != null) {
+            FormatHitHistogram formatHistogram = pool.getFormatHistogram();
+            if (results == null) {
+                formatHistogram.recordHit(rawResult.getBarcodeFormat());
+            } else {
+                for (Result result : results) {
+                    formatHistogram.recordHit(result.getBarcodeFormat());
+                }
+            }
             // Don't log the barcode contents for security.
             long end = System.currentTimeMillis();
-            Log.d(TAG, "Found barcode in " + (end - start) + " ms");
+            Log.d(TAG, "Found " + (results == null ? 1 : results.length) + " barcode(s) in " + (end - start) + " ms" +
+                    (scan.getTier() == null ? "" : " (" + scan.getTier() + " binarizer)"));
             if (handler != null) {
-                Message message = Message.obtain(handler, R.id.decode_succeeded, rawResult);
+                Message message = results == null ?
+                        Message.obtain(handler, R.id.decode_succeeded, rawResult) :
+                        Message.obtain(handler, R.id.decode_batch_succeeded, results);
                 Bundle bundle = new Bundle();
                 bundleThumbnail(source, bundle);
+                bundle.putLong(DecodeThread.DECODE_FINISHED_NANOS, endNanos);
                 message.setData(bundle);
                 message.sendToTarget();
             }
         } else {
             if (handler != null) {
-                Message message = Message.obtain(handler, R.id.decode_failed);
+                // Tell the capture handler which worker is free again
+                Message message = Message.obtain(handler, R.id.decode_failed, round, 0, this);
                 message.sendToTarget();
             }
         }
     }
 
-    private static void bundleThumbnail(PlanarYUVLuminanceSource source, Bundle bundle) {
+    /**
+     * Points a region source of the right size at the part of the framing rect the tracker picked.
+     * Sources are kept per size, most recently used first, so the engine's binarizers for each
+     * size stay bound to the same object while the region grows and shrinks.
+     */
+    private LuminanceSource buildRegionSource(PreviewFrame frame, Rect framingRect, Rect region) {
+        int found = regionSources.length - 1;
+        for (int i = 0; i < regionSources.length; i++) {
+            ReusableYUVLuminanceSource candidate = regionSources[i];
+            if (candidate == null ||
+                    (candidate.getWidth() == region.width() && candidate.getHeight() == region.height())) {
+                found = i;
+                break;
+            }
+        }
+        ReusableYUVLuminanceSource regionSource = regionSources[found];
+        if (regionSource == null ||
+                regionSource.getWidth() != region.width() || regionSource.getHeight() != region.height()) {
+            // Replaces the least recently used size
+            regionSource = new ReusableYUVLuminanceSource(region.width(), region.height());
+        }
+        System.arraycopy(regionSources, 0, regionSources, 1, found);
+        regionSources[0] = regionSource;
+        regionSource.reset(frame.getLuminance(), frame.getRowStride(), frame.getWidth(), frame.getHeight(),
+                framingRect.left + region.left, framingRect.top + region.top);
+        return regionSource;
+    }
+
+    private static void bundleThumbnail(ReusableYUVLuminanceSource source, Bundle bundle) {
+        long start = System.nanoTime();
         int[] pixels = source.renderThumbnail();
         int width = source.getThumbnailWidth();
         int height = source.getThumbnailHeight();
@@ -118,6 +257,7 @@ final class DecodeHandler extends Handler {
         bitmap.compress(Bitmap.CompressFormat.JPEG, 50, out);
         bundle.putByteArray(DecodeThread.BARCODE_BITMAP, out.toByteArray());
         bundle.putFloat(DecodeThread.BARCODE_SCALED_FACTOR, (float) width / source.getWidth());
+        ScanMetrics.get().recordNanos(ScanMetrics.Timer.THUMBNAIL_ENCODE, System.nanoTime() - start);
     }
 
 }
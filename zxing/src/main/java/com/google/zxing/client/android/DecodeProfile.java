@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.ResultPointCallback;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What a {@link ScanEngine} looks for and how hard it tries. Immutable; use a {@link Builder}.
+ */
+public final class DecodeProfile {
+
+  private final Set<BarcodeFormat> formats;
+  private final Map<DecodeHintType,Object> hints;
+  private final ResultPointCallback resultPointCallback;
+  private final boolean tryHarder;
+  private final boolean pyramid;
+  private final boolean multiple;
+  private final boolean partitioned;
+
+  private DecodeProfile(Builder builder) {
+    formats = builder.formats == null || builder.formats.isEmpty() ?
+        EnumSet.allOf(BarcodeFormat.class) : EnumSet.copyOf(builder.formats);
+    hints = new EnumMap<>(builder.hints);
+    resultPointCallback = builder.resultPointCallback;
+    tryHarder = builder.tryHarder;
+    pyramid = builder.pyramid;
+    multiple = builder.multiple;
+    partitioned = builder.partitioned;
+  }
+
+  /**
+   * @return formats to look for; every format unless some were chosen
+   */
+  public Set<BarcodeFormat> getFormats() {
+    return Collections.unmodifiableSet(formats);
+  }
+
+  /**
+   * @return receives possible result points as the readers find them, or null
+   */
+  public ResultPointCallback getResultPointCallback() {
+    return resultPointCallback;
+  }
+
+  /**
+   * @return true to spend more time on each image: the readers' own extra effort, and every
+   *  binarization tried on every image rather than only those that usually work
+   */
+  public boolean isTryHarder() {
+    return tryHarder;
+  }
+
+  /**
+   * @return true to decode a downscaled copy of each image first
+   */
+  public boolean isPyramid() {
+    return pyramid;
+  }
+
+  /**
+   * @return true to return every barcode in an image rather than the first one found
+   */
+  public boolean isMultiple() {
+    return multiple;
+  }
+
+  /**
+   * @return format groups to decode in parallel, or null to decode all formats with one reader
+   */
+  List<Set<BarcodeFormat>> getFormatGroups() {
+    if (!partitioned) {
+      return null;
+    }
+    List<Set<BarcodeFormat>> groups = FormatGroups.partition(formats);
+    return groups.size() > 1 ? groups : null;
+  }
+
+  /**
+   * @return a new copy of the hints for the readers, without the result point callback, which
+   *  the engine wraps before passing it on
+   */
+  Map<DecodeHintType,Object> buildHints() {
+    Map<DecodeHintType,Object> readerHints = new EnumMap<>(DecodeHintType.class);
+    readerHints.putAll(hints);
+    readerHints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+    if (tryHarder) {
+      readerHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+    }
+    return readerHints;
+  }
+
+  @Override
+  public String toString() {
+    return "formats=" + formats + " hints=" + hints + " tryHarder=" + tryHarder + " pyramid=" + pyramid +
+        " multiple=" + multiple + " partitioned=" + partitioned;
+  }
+
+  public static final class Builder {
+
+    private Collection<BarcodeFormat> formats;
+    private final Map<DecodeHintType,Object> hints = new EnumMap<>(DecodeHintType.class);
+    private ResultPointCallback resultPointCallback;
+    private boolean tryHarder;
+    private boolean pyramid;
+    private boolean multiple;
+    private boolean partitioned;
+
+    /**
+     * @param formats formats to look for; null or empty for all of them
+     */
+    public Builder setFormats(Collection<BarcodeFormat> formats) {
+      this.formats = formats;
+      return this;
+    }
+
+    /**
+     * @param characterSet character set to assume where a format doesn't say, or null to guess
+     */
+    public Builder setCharacterSet(String characterSet) {
+      if (characterSet == null) {
+        hints.remove(DecodeHintType.CHARACTER_SET);
+      } else {
+        hints.put(DecodeHintType.CHARACTER_SET, characterSet);
+      }
+      return this;
+    }
+
+    /**
+     * Adds reader hints, such as those from a scan intent. Formats and the result point callback
+     * are set separately and are ignored here.
+     */
+    public Builder addHints(Map<DecodeHintType,?> hints) {
+      if (hints != null) {
+        this.hints.putAll(hints);
+        this.hints.remove(DecodeHintType.POSSIBLE_FORMATS);
+        this.hints.remove(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+      }
+      return this;
+    }
+
+    public Builder setResultPointCallback(ResultPointCallback resultPointCallback) {
+      this.resultPointCallback = resultPointCallback;
+      return this;
+    }
+
+    public Builder setTryHarder(boolean tryHarder) {
+      this.tryHarder = tryHarder;
+      return this;
+    }
+
+    public Builder setPyramid(boolean pyramid) {
+      this.pyramid = pyramid;
+      return this;
+    }
+
+    public Builder setMultiple(boolean multiple) {
+      this.multiple = multiple;
+      return this;
+    }
+
+    /**
+     * @param partitioned true to decode 1D and 2D formats on separate threads at once
+     */
+    public Builder setPartitioned(boolean partitioned) {
+      this.partitioned = partitioned;
+      return this;
+    }
+
+    public DecodeProfile build() {
+      return new DecodeProfile(this);
+    }
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * Keeps the statistics the decoders learn from in the default preferences, so they carry over
+ * from one scan to the next. The statistics themselves know nothing of Android.
+ */
+public final class DecodeStatsStore {
+
+  private DecodeStatsStore() {}
+
+  /**
+   * @param context any context of the app
+   * @return the format histogram as last saved by the scanner
+   */
+  public static FormatHitHistogram loadFormatHistogram(Context context) {
+    return loadFormatHistogram(PreferenceManager.getDefaultSharedPreferences(context));
+  }
+
+  static FormatHitHistogram loadFormatHistogram(SharedPreferences prefs) {
+    return FormatHitHistogram.parse(prefs.getString(PreferencesActivity.KEY_DECODE_FORMAT_HISTOGRAM, null));
+  }
+
+  static void saveFormatHistogram(SharedPreferences prefs, FormatHitHistogram histogram) {
+    prefs.edit().putString(PreferencesActivity.KEY_DECODE_FORMAT_HISTOGRAM, histogram.toString()).apply();
+  }
+
+  static BinarizerTierStats loadTierStats(SharedPreferences prefs) {
+    return BinarizerTierStats.parse(prefs.getString(PreferencesActivity.KEY_DECODE_BINARIZER_TIERS, null));
+  }
+
+  static void saveTierStats(SharedPreferences prefs, BinarizerTierStats tierStats) {
+    prefs.edit().putString(PreferencesActivity.KEY_DECODE_BINARIZER_TIERS, tierStats.toString()).apply();
+  }
+
+}
@@ -16,24 +16,14 @@
 
 package com.google.zxing.client.android;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.DecodeHintType;
-import com.google.zxing.ResultPointCallback;
-
-import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
-import android.preference.PreferenceManager;
-import android.util.Log;
 
-import java.util.Collection;
-import java.util.EnumMap;
-import java.util.EnumSet;
-import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
 /**
- * This thread does all the heavy lifting of decoding the images.
+ * This thread does all the heavy lifting of decoding the images. Several of these may run side by
+ * side as workers of a {@link DecodeWorkerPool}.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
@@ -41,56 +31,23 @@ final class DecodeThread extends Thread {
 
   public static final String BARCODE_BITMAP = "barcode_bitmap";
   public static final String BARCODE_SCALED_FACTOR = "barcode_scaled_factor";
+  public static final String DECODE_FINISHED_NANOS = "decode_finished_nanos";
 
   private final CaptureActivity activity;
-  private final Map<DecodeHintType,Object> hints;
+  private final DecodeWorkerPool pool;
+  private final DecodeProfile profile;
   private Handler handler;
   private final CountDownLatch handlerInitLatch;
 
   DecodeThread(CaptureActivity activity,
-               Collection<BarcodeFormat> decodeFormats,
-               Map<DecodeHintType,?> baseHints,
-               String characterSet,
-               ResultPointCallback resultPointCallback) {
-
+               DecodeWorkerPool pool,
+               DecodeProfile profile,
+               int index) {
+    super("DecodeThread-" + index);
     this.activity = activity;
+    this.pool = pool;
+    this.profile = profile;
     handlerInitLatch = new CountDownLatch(1);
-
-    hints = new EnumMap<>(DecodeHintType.class);
-    if (baseHints != null) {
-      hints.putAll(baseHints);
-    }
-
-    // The prefs can't change while the thread is running, so pick them up once here.
-    if (decodeFormats == null || decodeFormats.isEmpty()) {
-      SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(activity);
-      decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
-      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_1D_PRODUCT, true)) {
-        decodeFormats.addAll(DecodeFormatManager.PRODUCT_FORMATS);
-      }
-      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_1D_INDUSTRIAL, true)) {
-        decodeFormats.addAll(DecodeFormatManager.INDUSTRIAL_FORMATS);
-      }
-      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_QR, true)) {
-        decodeFormats.addAll(DecodeFormatManager.QR_CODE_FORMATS);
-      }
-      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_DATA_MATRIX, true)) {
-        decodeFormats.addAll(DecodeFormatManager.DATA_MATRIX_FORMATS);
-      }
-      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_AZTEC, false)) {
-        decodeFormats.addAll(DecodeFormatManager.AZTEC_FORMATS);
-      }
-      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_PDF417, false)) {
-        decodeFormats.addAll(DecodeFormatManager.PDF417_FORMATS);
-      }
-    }
-    hints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
-
-    if (characterSet != null) {
-      hints.put(DecodeHintType.CHARACTER_SET, characterSet);
-    }
-    hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
-    Log.i("DecodeThread", "Hints: " + hints);
   }
 
   Handler getHandler() {
@@ -105,7 +62,7 @@ final class DecodeThread extends Thread {
   @Override
   public void run() {
     Looper.prepare();
-    handler = new DecodeHandler(activity, hints);
+    handler = new DecodeHandler(activity, pool, profile);
     handlerInitLatch.countDown();
     Looper.loop();
   }
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPointCallback;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Message;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed set of {@link DecodeThread}s which decode preview frames in parallel. Each worker owns
+ * its own reader, so they never share state. Every frame a worker picks up gets a sequence number;
+ * once one worker succeeds, every frame numbered at or below that point is stale and its result is
+ * dropped, which is as close to cancelling in-flight work as the readers allow.
+ */
+final class DecodeWorkerPool {
+
+  private static final String TAG = DecodeWorkerPool.class.getSimpleName();
+
+  private static final int MAX_AUTO_WORKERS = 4;
+
+  private final DecodeThread[] workers;
+  private final AtomicLong frameSequence;
+  private final AtomicLong cancelledThrough;
+  private final FormatHitHistogram formatHistogram;
+  private final BinarizerTierStats tierStats;
+  private final FrameQualityFilter qualityFilter;
+  private final boolean pyramidEnabled;
+  private final PyramidLevelStats pyramidStats;
+  private final RoiTracker roiTracker;
+  private final boolean decodeMultiple;
+  private final RecentResultCache recentResults;
+  private final SharedPreferences prefs;
+  private int nextWorker;
+
+  DecodeWorkerPool(CaptureActivity activity,
+                   Collection<BarcodeFormat> decodeFormats,
+                   Map<DecodeHintType,?> baseHints,
+                   String characterSet,
+                   boolean decodeMultiple,
+                   boolean bulkMode,
+                   ResultPointCallback resultPointCallback) {
+
+    // The prefs can't change while the threads are running, so pick them up once here.
+    prefs = PreferenceManager.getDefaultSharedPreferences(activity);
+    if (decodeFormats == null || decodeFormats.isEmpty()) {
+      decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
+      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_1D_PRODUCT, true)) {
+        decodeFormats.addAll(DecodeFormatManager.PRODUCT_FORMATS);
+      }
+      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_1D_INDUSTRIAL, true)) {
+        decodeFormats.addAll(DecodeFormatManager.INDUSTRIAL_FORMATS);
+      }
+      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_QR, true)) {
+        decodeFormats.addAll(DecodeFormatManager.QR_CODE_FORMATS);
+      }
+      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_DATA_MATRIX, true)) {
+        decodeFormats.addAll(DecodeFormatManager.DATA_MATRIX_FORMATS);
+      }
+      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_AZTEC, false)) {
+        decodeFormats.addAll(DecodeFormatManager.AZTEC_FORMATS);
+      }
+      if (prefs.getBoolean(PreferencesActivity.KEY_DECODE_PDF417, false)) {
+        decodeFormats.addAll(DecodeFormatManager.PDF417_FORMATS);
+      }
+    }
+    pyramidEnabled = prefs.getBoolean(PreferencesActivity.KEY_DECODE_PYRAMID, false);
+    DecodeProfile profile = new DecodeProfile.Builder()
+        .setFormats(decodeFormats)
+        .addHints(baseHints)
+        .setCharacterSet(characterSet)
+        .setResultPointCallback(resultPointCallback)
+        .setPyramid(pyramidEnabled)
+        .setMultiple(decodeMultiple)
+        .setPartitioned(prefs.getBoolean(PreferencesActivity.KEY_DECODE_PARTITIONED, false))
+        .build();
+    Log.i(TAG, "Decode profile: " + profile);
+
+    frameSequence = new AtomicLong();
+    cancelledThrough = new AtomicLong();
+    formatHistogram = DecodeStatsStore.loadFormatHistogram(prefs);
+    tierStats = DecodeStatsStore.loadTierStats(prefs);
+    qualityFilter = new FrameQualityFilter();
+    pyramidStats = new PyramidLevelStats();
+    roiTracker = new RoiTracker();
+    this.decodeMultiple = decodeMultiple;
+    recentResults = bulkMode ? new RecentResultCache() : null;
+
+    List<Set<BarcodeFormat>> formatGroups = profile.getFormatGroups();
+    if (formatGroups != null) {
+      Log.i(TAG, "Decoding format groups in parallel: " + formatGroups);
+    }
+
+    int workerCount = readWorkerCount(prefs);
+    workers = new DecodeThread[workerCount];
+    for (int i = 0; i < workerCount; i++) {
+      workers[i] = new DecodeThread(activity, this, profile, i);
+    }
+    Log.i(TAG, "Decoding with " + workerCount + " worker(s)");
+  }
+
+  private static int readWorkerCount(SharedPreferences prefs) {
+    String value = prefs.getString(PreferencesActivity.KEY_DECODE_WORKERS, "0");
+    int workerCount;
+    try {
+      workerCount = Integer.parseInt(value);
+    } catch (NumberFormatException nfe) {
+      workerCount = 0;
+    }
+    if (workerCount <= 0) {
+      // Leave one core for the UI and camera callbacks
+      int cores = Runtime.getRuntime().availableProcessors();
+      workerCount = Math.max(1, Math.min(cores - 1, MAX_AUTO_WORKERS));
+    }
+    return workerCount;
+  }
+
+  void start() {
+    for (DecodeThread worker : workers) {
+      worker.start();
+    }
+  }
+
+  int getWorkerCount() {
+    return workers.length;
+  }
+
+  /**
+   * @return recent hits per format, shared by all workers
+   */
+  FormatHitHistogram getFormatHistogram() {
+    return formatHistogram;
+  }
+
+  /**
+   * @return recent wins per binarization tier, shared by all workers
+   */
+  BinarizerTierStats getTierStats() {
+    return tierStats;
+  }
+
+  /**
+   * @return the pre-decode check every frame goes through, with its counters
+   */
+  FrameQualityFilter getQualityFilter() {
+    return qualityFilter;
+  }
+
+  /**
+   * @return attempts and successes per pyramid level
+   */
+  PyramidLevelStats getPyramidStats() {
+    return pyramidStats;
+  }
+
+  /**
+   * @return where recent result points were seen, shared so every worker can crop to it
+   */
+  RoiTracker getRoiTracker() {
+    return roiTracker;
+  }
+
+  /**
+   * @return true if workers should report every barcode in a frame rather than the first one
+   */
+  boolean isDecodeMultiple() {
+    return decodeMultiple;
+  }
+
+  /**
+   * @return the handler of the next worker in round-robin order
+   */
+  synchronized Handler nextHandler() {
+    Handler handler = workers[nextWorker].getHandler();
+    nextWorker = (nextWorker + 1) % workers.length;
+    return handler;
+  }
+
+  /**
+   * Numbers a frame as a worker starts on it.
+   */
+  long nextSequence() {
+    return frameSequence.incrementAndGet();
+  }
+
+  /**
+   * @return true if a success was already reported for a frame picked up at or after this one
+   */
+  boolean isStale(long sequence) {
+    return sequence <= cancelledThrough.get();
+  }
+
+  /**
+   * Called by a worker which decoded the frame numbered {@code sequence}. Only the first caller
+   * among the frames in flight wins; everything already picked up becomes stale.
+   *
+   * @return true if this result should be reported
+   */
+  boolean claimSuccess(long sequence) {
+    while (true) {
+      long cancelled = cancelledThrough.get();
+      if (sequence <= cancelled) {
+        return false;
+      }
+      if (cancelledThrough.compareAndSet(cancelled, frameSequence.get())) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Like {@link #claimSuccess(long)}, but when bulk scanning first drops codes reported recently.
+   * The check, the claim and recording the codes as reported happen under the cache's lock, so
+   * two workers which decoded the same code can't both report it, and codes which lose the claim
+   * aren't remembered as reported.
+   *
+   * @return the results to report, or null if none are new or another worker won the claim
+   */
+  Result[] claimFresh(long sequence, Result[] results) {
+    if (recentResults == null) {
+      return claimSuccess(sequence) ? results : null;
+    }
+    synchronized (recentResults) {
+      long now = System.currentTimeMillis();
+      Result[] fresh = recentResults.dropRecent(results, now);
+      if (fresh == null || !claimSuccess(sequence)) {
+        return null;
+      }
+      recentResults.remember(fresh, now);
+      return fresh;
+    }
+  }
+
+  /**
+   * Asks every worker to quit and waits, in total, no longer than {@code timeoutMs} for them.
+   */
+  void quit(long timeoutMs) {
+    for (DecodeThread worker : workers) {
+      Message quit = Message.obtain(worker.getHandler(), R.id.quit);
+      quit.sendToTarget();
+    }
+    long deadline = SystemClock.uptimeMillis() + timeoutMs;
+    for (DecodeThread worker : workers) {
+      long remaining = deadline - SystemClock.uptimeMillis();
+      if (remaining <= 0L) {
+        break;
+      }
+      try {
+        worker.join(remaining);
+      } catch (InterruptedException e) {
+        // continue
+      }
+    }
+    Log.i(TAG, "Scan metrics:\n" + ScanMetrics.get().dump());
+    Log.i(TAG, "Frame quality: " + qualityFilter);
+    Log.i(TAG, "Region of interest: " + roiTracker);
+    if (recentResults != null) {
+      Log.i(TAG, "Bulk repeats: " + recentResults);
+    }
+    if (pyramidEnabled) {
+      Log.i(TAG, "Pyramid levels: " + pyramidStats);
+    }
+    Log.i(TAG, "Format hits: " + formatHistogram);
+    DecodeStatsStore.saveFormatHistogram(prefs, formatHistogram);
+    Log.i(TAG, "Binarizer tier wins: " + tierStats);
+    DecodeStatsStore.saveTierStats(prefs, tierStats);
+  }
+
+}
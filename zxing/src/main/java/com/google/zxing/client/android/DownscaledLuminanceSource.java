@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A box-filtered, smaller copy of another luminance source: every pixel is the mean of a
+ * {@code scale} x {@code scale} block of the parent. The copy is made on first use and kept until
+ * {@link #reset()}, so one instance can follow a reusable parent from frame to frame.
+ */
+final class DownscaledLuminanceSource extends LuminanceSource {
+
+  private final LuminanceSource parent;
+  private final int scale;
+  private final byte[] matrix;
+  private final int[] sums;
+  private byte[] parentRow;
+  private boolean matrixValid;
+
+  DownscaledLuminanceSource(LuminanceSource parent, int scale) {
+    super(parent.getWidth() / scale, parent.getHeight() / scale);
+    this.parent = parent;
+    this.scale = scale;
+    matrix = new byte[getWidth() * getHeight()];
+    sums = new int[getWidth()];
+  }
+
+  LuminanceSource getParent() {
+    return parent;
+  }
+
+  int getScale() {
+    return scale;
+  }
+
+  /**
+   * Forgets the copy made from the parent's previous frame.
+   */
+  synchronized void reset() {
+    matrixValid = false;
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      row = new byte[width];
+    }
+    System.arraycopy(getMatrix(), y * width, row, 0, width);
+    return row;
+  }
+
+  @Override
+  public synchronized byte[] getMatrix() {
+    if (matrixValid) {
+      return matrix;
+    }
+    int width = getWidth();
+    int height = getHeight();
+    int area = scale * scale;
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        sums[x] = 0;
+      }
+      for (int yy = 0; yy < scale; yy++) {
+        parentRow = parent.getRow(y * scale + yy, parentRow);
+        for (int x = 0, offset = 0; x < width; x++) {
+          int sum = 0;
+          for (int xx = 0; xx < scale; xx++, offset++) {
+            sum += parentRow[offset] & 0xFF;
+          }
+          sums[x] += sum;
+        }
+      }
+      int outputOffset = y * width;
+      for (int x = 0; x < width; x++) {
+        matrix[outputOffset + x] = (byte) (sums[x] / area);
+      }
+    }
+    matrixValid = true;
+    return matrix;
+  }
+
+}
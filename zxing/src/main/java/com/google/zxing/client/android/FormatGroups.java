@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Groups barcode formats by how the readers decode them. Kept free of Android types so the decode
+ * path can use it off the device as well.
+ */
+final class FormatGroups {
+
+  // Each of these has a reader of its own which needs the whole binarized image; everything
+  // else is read row by row by the 1D reader
+  private static final Set<BarcodeFormat> TWO_D_FORMATS = EnumSet.of(BarcodeFormat.AZTEC,
+                                                                      BarcodeFormat.DATA_MATRIX,
+                                                                      BarcodeFormat.MAXICODE,
+                                                                      BarcodeFormat.PDF_417,
+                                                                      BarcodeFormat.QR_CODE);
+
+  private FormatGroups() {}
+
+  /**
+   * @return true if the format is read row by row rather than from the whole binarized image
+   */
+  static boolean isOneD(BarcodeFormat format) {
+    return !TWO_D_FORMATS.contains(format);
+  }
+
+  /**
+   * Splits formats into groups which can be decoded independently of each other: the 1D formats,
+   * which are read row by row, and the 2D formats, which need the whole binarized image.
+   *
+   * @return the non-empty groups
+   */
+  static List<Set<BarcodeFormat>> partition(Collection<BarcodeFormat> formats) {
+    Set<BarcodeFormat> oneD = EnumSet.noneOf(BarcodeFormat.class);
+    Set<BarcodeFormat> twoD = EnumSet.noneOf(BarcodeFormat.class);
+    for (BarcodeFormat format : formats) {
+      if (isOneD(format)) {
+        oneD.add(format);
+      } else {
+        twoD.add(format);
+      }
+    }
+    List<Set<BarcodeFormat>> groups = new ArrayList<>(2);
+    if (!oneD.isEmpty()) {
+      groups.add(oneD);
+    }
+    if (!twoD.isEmpty()) {
+      groups.add(twoD);
+    }
+    return groups;
+  }
+
+  /**
+   * Splits formats the way the readers handle them: all 1D formats are read together in one pass
+   * over the rows, while every 2D format has a reader of its own.
+   *
+   * @return the non-empty groups
+   */
+  static List<Set<BarcodeFormat>> splitByReader(Collection<BarcodeFormat> formats) {
+    Set<BarcodeFormat> oneD = EnumSet.noneOf(BarcodeFormat.class);
+    List<Set<BarcodeFormat>> groups = new ArrayList<>();
+    for (BarcodeFormat format : formats) {
+      if (isOneD(format)) {
+        oneD.add(format);
+      } else {
+        groups.add(EnumSet.of(format));
+      }
+    }
+    if (!oneD.isEmpty()) {
+      groups.add(0, oneD);
+    }
+    return groups;
+  }
+
+}
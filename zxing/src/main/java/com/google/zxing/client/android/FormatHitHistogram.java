@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Decaying count of successful scans per {@link BarcodeFormat}. Every hit first scales all counts
+ * down a little, so old history fades and the histogram follows what the device scans now. The
+ * scanner persists it through {@link DecodeStatsStore}, where the host app can read it back.
+ */
+public final class FormatHitHistogram {
+
+  private static final Pattern ENTRY_SEPARATOR = Pattern.compile(";");
+  private static final Pattern VALUE_SEPARATOR = Pattern.compile("=");
+
+  // Steady-state total is 1 / (1 - DECAY), so roughly the last 50 scans count
+  private static final float DECAY = 0.98f;
+  // Don't call anything rare until there's been a reasonable number of scans
+  private static final float MIN_EVIDENCE = 10.0f;
+  // Below this a format is considered forgotten, which keeps the saved string short
+  private static final float MIN_WEIGHT = 0.001f;
+
+  private static final BarcodeFormat[] FORMATS = BarcodeFormat.values();
+
+  private final float[] weights = new float[FORMATS.length];
+  private float total;
+
+  /**
+   * @param saved histogram in the form written by {@link #toString()}, or null
+   * @return the histogram it describes; entries which can't be parsed are left out
+   */
+  public static FormatHitHistogram parse(String saved) {
+    FormatHitHistogram histogram = new FormatHitHistogram();
+    if (saved != null && !saved.isEmpty()) {
+      for (String entry : ENTRY_SEPARATOR.split(saved)) {
+        String[] formatAndWeight = VALUE_SEPARATOR.split(entry);
+        if (formatAndWeight.length != 2) {
+          continue;
+        }
+        try {
+          float weight = Float.parseFloat(formatAndWeight[1]);
+          histogram.weights[BarcodeFormat.valueOf(formatAndWeight[0]).ordinal()] = weight;
+          histogram.total += weight;
+        } catch (IllegalArgumentException iae) {
+          // Written by a version which knew other formats; forget it
+        }
+      }
+    }
+    return histogram;
+  }
+
+  synchronized void recordHit(BarcodeFormat format) {
+    total = 0.0f;
+    for (int i = 0; i < weights.length; i++) {
+      float weight = weights[i] * DECAY;
+      weights[i] = weight < MIN_WEIGHT ? 0.0f : weight;
+      total += weights[i];
+    }
+    weights[format.ordinal()] += 1.0f;
+    total += 1.0f;
+  }
+
+  /**
+   * @return decayed hit count of the format
+   */
+  public synchronized float getWeight(BarcodeFormat format) {
+    return weights[format.ordinal()];
+  }
+
+  /**
+   * @return the format's fraction of all recent hits, between 0 and 1
+   */
+  public synchronized float getShare(BarcodeFormat format) {
+    return total == 0.0f ? 0.0f : weights[format.ordinal()] / total;
+  }
+
+  /**
+   * @return true if there is enough history to say formats with this combined weight are
+   *  seldom scanned
+   */
+  synchronized boolean isRare(float weight, float rareShare) {
+    return total >= MIN_EVIDENCE && weight < rareShare * total;
+  }
+
+  /**
+   * @return decayed hit count of every format that has been seen
+   */
+  public synchronized Map<BarcodeFormat,Float> getWeights() {
+    Map<BarcodeFormat,Float> result = new EnumMap<>(BarcodeFormat.class);
+    for (BarcodeFormat format : FORMATS) {
+      float weight = weights[format.ordinal()];
+      if (weight > 0.0f) {
+        result.put(format, weight);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder result = new StringBuilder();
+    for (BarcodeFormat format : FORMATS) {
+      float weight = weights[format.ordinal()];
+      if (weight > 0.0f) {
+        if (result.length() > 0) {
+          result.append(';');
+        }
+        result.append(format.name()).append('=').append(weight);
+      }
+    }
+    return result.toString();
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cheap look at a preview frame before it is decoded. A sparse grid of pixels inside the framing
+ * rect gives the mean luminance and the variance of the Laplacian, a standard measure of focus.
+ * Frames that are too dark, or much blurrier than the frames seen recently (as happens while the
+ * lens sweeps during autofocus), are rejected without a decode attempt.
+ *
+ * <p>Sharpness depends on the scene, so it is judged against a running average rather than a
+ * fixed threshold. A run of rejections is capped so a dim or featureless scene still gets an
+ * occasional decode. Shared by all decode workers.</p>
+ */
+final class FrameQualityFilter {
+
+  enum Verdict {
+    DECODE,
+    TOO_DARK,
+    TOO_BLURRY,
+  }
+
+  // Look at every SAMPLE_STEPth pixel of every SAMPLE_STEPth row
+  private static final int SAMPLE_STEP = 4;
+  private static final int MIN_MEAN_LUMINANCE = 24;
+  // Frames below this fraction of the average sharpness are blurry
+  private static final float BLUR_RATIO = 0.5f;
+  private static final float SHARPNESS_SMOOTHING = 0.2f;
+  // The average needs a few frames before it means anything
+  private static final int WARM_UP_FRAMES = 5;
+  private static final int MAX_CONSECUTIVE_REJECTS = 4;
+
+  private float averageSharpness;
+  private int framesMeasured;
+  private int consecutiveRejects;
+  private long framesDecoded;
+  private long framesTooDark;
+  private long framesTooBlurry;
+
+  /**
+   * @param luminance luminance plane of the preview frame, read with absolute gets only
+   * @param rowStride distance in bytes between the starts of two rows of the plane
+   * @param rect framing rect in preview coordinates
+   * @return whether the frame is worth decoding
+   */
+  Verdict check(ByteBuffer luminance, int rowStride, Rect rect) {
+    // Interior sample points only, so the Laplacian never reaches outside the rect
+    int left = rect.left + SAMPLE_STEP;
+    int top = rect.top + SAMPLE_STEP;
+    int right = rect.right - SAMPLE_STEP;
+    int bottom = rect.bottom - SAMPLE_STEP;
+    int sampleRowStride = rowStride * SAMPLE_STEP;
+
+    long count = 0;
+    long luminanceSum = 0;
+    long laplacianSum = 0;
+    long laplacianSquareSum = 0;
+    for (int y = top; y < bottom; y += SAMPLE_STEP) {
+      int offset = y * rowStride + left;
+      for (int x = left; x < right; x += SAMPLE_STEP, offset += SAMPLE_STEP) {
+        int center = luminance.get(offset) & 0xFF;
+        int laplacian = 4 * center -
+            (luminance.get(offset - SAMPLE_STEP) & 0xFF) -
+            (luminance.get(offset + SAMPLE_STEP) & 0xFF) -
+            (luminance.get(offset - sampleRowStride) & 0xFF) -
+            (luminance.get(offset + sampleRowStride) & 0xFF);
+        luminanceSum += center;
+        laplacianSum += laplacian;
+        laplacianSquareSum += laplacian * laplacian;
+        count++;
+      }
+    }
+    if (count == 0) {
+      // Rect too small to judge
+      return Verdict.DECODE;
+    }
+
+    float meanLuminance = (float) luminanceSum / count;
+    float meanLaplacian = (float) laplacianSum / count;
+    float sharpness = (float) laplacianSquareSum / count - meanLaplacian * meanLaplacian;
+    return judge(meanLuminance < MIN_MEAN_LUMINANCE, sharpness);
+  }
+
+  private synchronized Verdict judge(boolean dark, float sharpness) {
+    Verdict verdict;
+    if (dark) {
+      verdict = Verdict.TOO_DARK;
+    } else if (framesMeasured >= WARM_UP_FRAMES && sharpness < BLUR_RATIO * averageSharpness) {
+      verdict = Verdict.TOO_BLURRY;
+    } else {
+      verdict = Verdict.DECODE;
+    }
+    if (!dark) {
+      // Darkness flattens everything; it says nothing about focus
+      averageSharpness = framesMeasured == 0 ? sharpness :
+          averageSharpness + SHARPNESS_SMOOTHING * (sharpness - averageSharpness);
+      framesMeasured++;
+    }
+
+    if (verdict != Verdict.DECODE && consecutiveRejects >= MAX_CONSECUTIVE_REJECTS) {
+      verdict = Verdict.DECODE;
+    }
+    switch (verdict) {
+      case TOO_DARK:
+        framesTooDark++;
+        consecutiveRejects++;
+        break;
+      case TOO_BLURRY:
+        framesTooBlurry++;
+        consecutiveRejects++;
+        break;
+      default:
+        framesDecoded++;
+        consecutiveRejects = 0;
+        break;
+    }
+    return verdict;
+  }
+
+  synchronized long getFramesDecoded() {
+    return framesDecoded;
+  }
+
+  synchronized long getFramesRejected() {
+    return framesTooDark + framesTooBlurry;
+  }
+
+  synchronized long getFramesTooDark() {
+    return framesTooDark;
+  }
+
+  synchronized long getFramesTooBlurry() {
+    return framesTooBlurry;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "decoded=" + framesDecoded + " tooDark=" + framesTooDark + " tooBlurry=" + framesTooBlurry +
+        " averageSharpness=" + averageSharpness;
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.client.android.camera.FrameRecording;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Feeds a {@link FrameRecording} back through a {@link ScanEngine}, one frame after another on the
+ * calling thread, and reports how long the first result took and how long each frame took.
+ *
+ * <p>{@link Pacing#MAXIMUM} decodes every frame as fast as possible, so the same recording and
+ * profile always see the same frames. {@link Pacing#RECORDED} lets frames arrive as they did on the
+ * device and, like the live frame scheduler, always moves on to the newest frame which has arrived,
+ * skipping any that came in while the previous one was decoding. Latency then includes the time a
+ * frame waited.</p>
+ */
+public final class FrameReplayer {
+
+  public enum Pacing {
+    RECORDED,
+    MAXIMUM,
+  }
+
+  // A longer pause between frames means recording stopped for a while; don't sit through it again
+  private static final long MAX_FRAME_GAP_NANOS = 200000000L;
+
+  private final ScanEngine engine;
+  private final Pacing pacing;
+
+  public FrameReplayer(ScanEngine engine, Pacing pacing) {
+    this.engine = engine;
+    this.pacing = pacing;
+  }
+
+  public Report replay(List<FrameRecording.Frame> frames) throws InterruptedException {
+    int count = frames.size();
+    long[] arrival = new long[count];
+    for (int i = 1; i < count; i++) {
+      long gap = frames.get(i).getCapturedNanos() - frames.get(i - 1).getCapturedNanos();
+      arrival[i] = arrival[i - 1] + Math.max(0L, Math.min(gap, MAX_FRAME_GAP_NANOS));
+    }
+
+    long[] latencies = new long[count];
+    int decoded = 0;
+    int skipped = 0;
+    int found = 0;
+    int framesToFirstResult = -1;
+    long nanosToFirstResult = -1L;
+    long start = System.nanoTime();
+    int i = 0;
+    while (i < count) {
+      long now = System.nanoTime() - start;
+      if (pacing == Pacing.RECORDED) {
+        if (arrival[i] > now) {
+          sleepNanos(arrival[i] - now);
+        } else {
+          // Only the newest frame which has arrived is decoded, as on the device
+          int newest = i;
+          while (newest + 1 < count && arrival[newest + 1] <= now) {
+            newest++;
+          }
+          skipped += newest - i;
+          i = newest;
+        }
+      }
+      FrameRecording.Frame frame = frames.get(i);
+      long arrived = pacing == Pacing.RECORDED ? start + arrival[i] : System.nanoTime();
+      ScanResult result = engine.decode(frame.getData(), frame.getWidth(), frame.getHeight(),
+          frame.getLeft(), frame.getTop(),
+          frame.getRight() - frame.getLeft(), frame.getBottom() - frame.getTop());
+      long end = System.nanoTime();
+      latencies[decoded++] = end - arrived;
+      if (result.getResult() != null) {
+        found++;
+        if (framesToFirstResult < 0) {
+          framesToFirstResult = decoded;
+          nanosToFirstResult = end - start;
+        }
+      }
+      i++;
+    }
+    return new Report(Arrays.copyOf(latencies, decoded), skipped, found, framesToFirstResult, nanosToFirstResult);
+  }
+
+  private static void sleepNanos(long nanos) throws InterruptedException {
+    Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+  }
+
+  /**
+   * What one replay saw.
+   */
+  public static final class Report {
+
+    private final long[] sortedLatencies;
+    private final int framesSkipped;
+    private final int framesWithResult;
+    private final int framesToFirstResult;
+    private final long nanosToFirstResult;
+
+    Report(long[] latencies, int framesSkipped, int framesWithResult,
+           int framesToFirstResult, long nanosToFirstResult) {
+      Arrays.sort(latencies);
+      this.sortedLatencies = latencies;
+      this.framesSkipped = framesSkipped;
+      this.framesWithResult = framesWithResult;
+      this.framesToFirstResult = framesToFirstResult;
+      this.nanosToFirstResult = nanosToFirstResult;
+    }
+
+    /**
+     * @return frames handed to the engine
+     */
+    public int getFramesDecoded() {
+      return sortedLatencies.length;
+    }
+
+    /**
+     * @return frames passed over because a newer one had arrived; always 0 at maximum speed
+     */
+    public int getFramesSkipped() {
+      return framesSkipped;
+    }
+
+    public int getFramesWithResult() {
+      return framesWithResult;
+    }
+
+    /**
+     * @return frames decoded up to and including the first with a result, or -1 if none had one
+     */
+    public int getFramesToFirstResult() {
+      return framesToFirstResult;
+    }
+
+    /**
+     * @return milliseconds from the start of the replay to the first result, or -1 if there was none
+     */
+    public float getMillisToFirstResult() {
+      return nanosToFirstResult < 0L ? -1.0f : nanosToFirstResult / 1000000.0f;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return per-frame latency in milliseconds at that percentile, or 0 if no frame was decoded
+     */
+    public float getLatencyMillis(float percentile) {
+      if (sortedLatencies.length == 0) {
+        return 0.0f;
+      }
+      int index = (int) Math.ceil(percentile / 100.0f * sortedLatencies.length) - 1;
+      index = Math.max(0, Math.min(sortedLatencies.length - 1, index));
+      return sortedLatencies[index] / 1000000.0f;
+    }
+
+    @Override
+    public String toString() {
+      return "decoded=" + getFramesDecoded() + " skipped=" + framesSkipped + " withResult=" + framesWithResult +
+          " firstResult=" + (framesToFirstResult < 0 ? "none" :
+              "frame " + framesToFirstResult + " after " + getMillisToFirstResult() + "ms") +
+          " latency p50=" + getLatencyMillis(50.0f) + "ms p90=" + getLatencyMillis(90.0f) +
+          "ms p99=" + getLatencyMillis(99.0f) + "ms max=" + getLatencyMillis(100.0f) + "ms";
+    }
+  }
+
+}
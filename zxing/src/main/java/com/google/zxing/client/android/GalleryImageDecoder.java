@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.zxing.Result;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a barcode from an image picked from the gallery without ever holding the full-size
+ * image in memory. The image's bounds are read first to pick an {@code inSampleSize} which brings
+ * it under {@link #MAX_PIXELS}; it is then decoded a strip of rows at a time into one reused
+ * bitmap, and each strip is converted straight into a reused luminance buffer. Images which
+ * {@link BitmapRegionDecoder} can't handle are decoded whole, but still subsampled.
+ *
+ * <p>Not thread-safe: the buffers are kept from one image to the next.</p>
+ */
+final class GalleryImageDecoder {
+
+  private static final String TAG = GalleryImageDecoder.class.getSimpleName();
+
+  // Decoding more pixels than this rarely finds more barcodes, it only needs more memory
+  private static final int MAX_PIXELS = 1 << 20;
+  // Rows of the subsampled image decoded at a time
+  private static final int STRIP_HEIGHT = 64;
+
+  private final ScanEngine engine;
+  private byte[] luminances;
+  private int[] stripPixels;
+  private Bitmap strip;
+
+  GalleryImageDecoder() {
+    // A still image is decoded once, so it can afford the extra effort
+    engine = new ScanEngine(new DecodeProfile.Builder().setTryHarder(true).build());
+  }
+
+  /**
+   * @return the barcode found, if any, and what the import cost
+   * @throws IOException if the image can't be read
+   */
+  Outcome decode(ContentResolver resolver, Uri uri) throws IOException {
+    long start = SystemClock.elapsedRealtime();
+    MemoryProbe memory = new MemoryProbe();
+
+    BitmapFactory.Options bounds = new BitmapFactory.Options();
+    bounds.inJustDecodeBounds = true;
+    InputStream in = resolver.openInputStream(uri);
+    try {
+      BitmapFactory.decodeStream(in, null, bounds);
+    } finally {
+      close(in);
+    }
+    if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+      throw new IOException("Not a readable image: " + uri);
+    }
+
+    int sampleSize = 1;
+    while ((long) (bounds.outWidth / sampleSize) * (bounds.outHeight / sampleSize) > MAX_PIXELS) {
+      sampleSize <<= 1;
+    }
+    int width = bounds.outWidth / sampleSize;
+    int height = bounds.outHeight / sampleSize;
+    if (luminances == null || luminances.length < width * height) {
+      luminances = new byte[width * height];
+    }
+    memory.sample();
+
+    if (!decodeByStrips(resolver, uri, bounds.outWidth, bounds.outHeight, sampleSize, width, height, memory)) {
+      decodeWhole(resolver, uri, sampleSize, width, height, memory);
+    }
+
+    Result result = engine.decode(luminances, width, height, 0, 0, width, height).getResult();
+    memory.sample();
+
+    long workingSet = luminances.length +
+        (stripPixels == null ? 0L : 4L * stripPixels.length) +
+        (strip == null ? 0L : strip.getAllocationByteCount());
+    Outcome outcome = new Outcome(result, bounds.outWidth, bounds.outHeight, sampleSize, workingSet,
+        memory.getPeakGrowth(), SystemClock.elapsedRealtime() - start);
+    Log.i(TAG, "Imported " + outcome);
+    return outcome;
+  }
+
+  /**
+   * @return false if the image format doesn't support region decoding
+   */
+  private boolean decodeByStrips(ContentResolver resolver,
+                                 Uri uri,
+                                 int fullWidth,
+                                 int fullHeight,
+                                 int sampleSize,
+                                 int width,
+                                 int height,
+                                 MemoryProbe memory) throws IOException {
+    BitmapRegionDecoder regionDecoder;
+    InputStream in = resolver.openInputStream(uri);
+    try {
+      regionDecoder = BitmapRegionDecoder.newInstance(in, false);
+    } catch (IOException ioe) {
+      return false;
+    } finally {
+      close(in);
+    }
+    if (regionDecoder == null) {
+      return false;
+    }
+    try {
+      if (strip == null || strip.getWidth() != width) {
+        if (strip != null) {
+          strip.recycle();
+        }
+        strip = Bitmap.createBitmap(width, STRIP_HEIGHT, Bitmap.Config.ARGB_8888);
+        stripPixels = new int[width * STRIP_HEIGHT];
+      }
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inSampleSize = sampleSize;
+      options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+      // The decoder draws into the strip bitmap, clipping anything beyond its size
+      options.inBitmap = strip;
+      Rect region = new Rect();
+      for (int y = 0; y < height; y += STRIP_HEIGHT) {
+        int rows = Math.min(STRIP_HEIGHT, height - y);
+        region.set(0, y * sampleSize, fullWidth, Math.min(fullHeight, (y + rows) * sampleSize));
+        regionDecoder.decodeRegion(region, options);
+        strip.getPixels(stripPixels, 0, width, 0, 0, width, rows);
+        LuminanceConversion.argbToLuminance(stripPixels, rows * width, luminances, y * width);
+        memory.sample();
+      }
+    } finally {
+      regionDecoder.recycle();
+    }
+    return true;
+  }
+
+  private void decodeWhole(ContentResolver resolver,
+                           Uri uri,
+                           int sampleSize,
+                           int width,
+                           int height,
+                           MemoryProbe memory) throws IOException {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = sampleSize;
+    options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+    Bitmap bitmap;
+    InputStream in = resolver.openInputStream(uri);
+    try {
+      bitmap = BitmapFactory.decodeStream(in, null, options);
+    } finally {
+      close(in);
+    }
+    if (bitmap == null) {
+      throw new IOException("Could not decode image: " + uri);
+    }
+    memory.sample();
+    try {
+      if (stripPixels == null || stripPixels.length < width * STRIP_HEIGHT) {
+        stripPixels = new int[width * STRIP_HEIGHT];
+      }
+      // The sampled size can differ from the computed one by a pixel
+      int usableWidth = Math.min(width, bitmap.getWidth());
+      int usableHeight = Math.min(height, bitmap.getHeight());
+      for (int y = 0; y < usableHeight; y += STRIP_HEIGHT) {
+        int rows = Math.min(STRIP_HEIGHT, usableHeight - y);
+        bitmap.getPixels(stripPixels, 0, width, 0, y, usableWidth, rows);
+        LuminanceConversion.argbToLuminance(stripPixels, rows * width, luminances, y * width);
+      }
+    } finally {
+      bitmap.recycle();
+    }
+  }
+
+  private static void close(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException ioe) {
+        // continue
+      }
+    }
+  }
+
+  /**
+   * Tracks how far Java and native heap use rose above where it was when the import started.
+   * Sampled, so a short spike between samples can be missed.
+   */
+  private static final class MemoryProbe {
+
+    private final long baseline;
+    private long peak;
+
+    MemoryProbe() {
+      baseline = used();
+      peak = baseline;
+    }
+
+    void sample() {
+      peak = Math.max(peak, used());
+    }
+
+    long getPeakGrowth() {
+      return Math.max(0L, peak - baseline);
+    }
+
+    private static long used() {
+      Runtime runtime = Runtime.getRuntime();
+      return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+  }
+
+  /**
+   * What a single import found and what it cost.
+   */
+  static final class Outcome {
+
+    private final Result result;
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int sampleSize;
+    private final long workingSetBytes;
+    private final long peakHeapGrowthBytes;
+    private final long elapsedMs;
+
+    Outcome(Result result,
+            int imageWidth,
+            int imageHeight,
+            int sampleSize,
+            long workingSetBytes,
+            long peakHeapGrowthBytes,
+            long elapsedMs) {
+      this.result = result;
+      this.imageWidth = imageWidth;
+      this.imageHeight = imageHeight;
+      this.sampleSize = sampleSize;
+      this.workingSetBytes = workingSetBytes;
+      this.peakHeapGrowthBytes = peakHeapGrowthBytes;
+      this.elapsedMs = elapsedMs;
+    }
+
+    /**
+     * @return the barcode found, or null
+     */
+    Result getResult() {
+      return result;
+    }
+
+    /**
+     * @return bytes of the buffers the decoder holds: luminance, strip bitmap and pixel rows
+     */
+    long getWorkingSetBytes() {
+      return workingSetBytes;
+    }
+
+    /**
+     * @return highest observed rise in Java plus native heap use during the import
+     */
+    long getPeakHeapGrowthBytes() {
+      return peakHeapGrowthBytes;
+    }
+
+    long getElapsedMs() {
+      return elapsedMs;
+    }
+
+    @Override
+    public String toString() {
+      return imageWidth + "x" + imageHeight + " at 1/" + sampleSize +
+          (result == null ? ", no barcode" : ", found " + result.getBarcodeFormat()) +
+          ", working set " + (workingSetBytes >> 10) + "KB" +
+          ", peak heap growth " + (peakHeapGrowthBytes >> 10) + "KB" +
+          ", " + elapsedMs + "ms";
+    }
+  }
+
+}
@@ -118,6 +118,13 @@ public final class Intents {
      */
     public static final String PROMPT_MESSAGE = "PROMPT_MESSAGE";
 
+    /**
+     * Set to true to find every barcode in view at once, for labels which carry several codes.
+     * Specified as a {@code boolean}. The first code is still returned under {@link #RESULT};
+     * all of them are returned under {@link #RESULTS}.
+     */
+    public static final String MULTIPLE = "SCAN_MULTIPLE";
+
     /**
      * If a barcode is found, Barcodes returns {@link android.app.Activity#RESULT_OK} to
      * {@link android.app.Activity#onActivityResult(int, int, android.content.Intent)}
@@ -136,6 +143,18 @@ public final class Intents {
      */
     public static final String RESULT_FORMAT = "SCAN_RESULT_FORMAT";
 
+    /**
+     * Call {@link android.content.Intent#getStringArrayExtra(String)} with {@code RESULTS}
+     * to get the contents of every barcode found when scanning with {@link #MULTIPLE}.
+     */
+    public static final String RESULTS = "SCAN_RESULTS";
+
+    /**
+     * Call {@link android.content.Intent#getStringArrayExtra(String)} with {@code RESULT_FORMATS}
+     * to get the format of each barcode in {@link #RESULTS}, in the same order.
+     */
+    public static final String RESULT_FORMATS = "SCAN_RESULT_FORMATS";
+
     /**
      * Call {@link android.content.Intent#getStringExtra(String)} with {@code RESULT_UPC_EAN_EXTENSION}
      * to return the content of any UPC extension barcode that was also found. Only applicable
@@ -190,6 +209,26 @@ public final class Intents {
     }
   }
 
+  /**
+   * Constants related to the {@link Metrics#ACTION} broadcast.
+   */
+  public static final class Metrics {
+    /**
+     * Broadcast this to log the scan pipeline metrics. From a shell, with
+     * {@code adb shell am broadcast -a com.google.zxing.client.android.DUMP_METRICS}, they are
+     * also printed as the broadcast's result data. Needs the DUMP permission, which the shell has.
+     */
+    public static final String ACTION = "com.google.zxing.client.android.DUMP_METRICS";
+
+    /**
+     * If true, the metrics start over from zero after being dumped. Specified as a {@code boolean}.
+     */
+    public static final String RESET = "METRICS_RESET";
+
+    private Metrics() {
+    }
+  }
+
   /**
    * Constants related to the {@link Encode#ACTION} Intent.
    */
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+/**
+ * Converts decoded image pixels to the luminance the readers work on, without Android types.
+ */
+public final class LuminanceConversion {
+
+  private LuminanceConversion() {}
+
+  /**
+   * Converts ARGB pixels the same way {@link com.google.zxing.RGBLuminanceSource} does.
+   *
+   * @param argb pixels as returned by {@code Bitmap.getPixels()}
+   * @param count number of pixels to convert
+   * @param luminances receives one byte per pixel
+   * @param offset where in {@code luminances} the first pixel goes
+   */
+  public static void argbToLuminance(int[] argb, int count, byte[] luminances, int offset) {
+    for (int i = 0; i < count; i++) {
+      int pixel = argb[i];
+      int r = (pixel >> 16) & 0xff;
+      int g2 = (pixel >> 7) & 0x1fe;
+      int b = pixel & 0xff;
+      // Calculate green-favouring average cheaply
+      luminances[offset + i] = (byte) ((r + g2 + b) / 4);
+    }
+  }
+
+}
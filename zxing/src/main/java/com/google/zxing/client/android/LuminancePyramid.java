@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.LuminanceSource;
+
+import java.util.Arrays;
+
+/**
+ * Full, half and quarter resolution views of one luminance source, built on demand. Level 0 is
+ * the source itself. Follows a reusable source from frame to frame, and keeps the levels of the
+ * last few sources, so switching between the whole framing rect and a region allocates nothing
+ * once both have been seen. Not thread-safe.
+ */
+final class LuminancePyramid {
+
+  // Downscale factor of each level, finest first
+  private static final int[] SCALES = {1, 2, 4};
+  // Shrinking further than this on the short side loses too many modules of a dense 2D code
+  private static final int MIN_LEVEL_DIMENSION = 200;
+  // The whole framing rect plus the region sources DecodeHandler keeps
+  private static final int SLOTS = 5;
+
+  private final LuminanceSource[] bases = new LuminanceSource[SLOTS];
+  private final DownscaledLuminanceSource[][] slotLevels = new DownscaledLuminanceSource[SLOTS][SCALES.length];
+  private final long[] lastBound = new long[SLOTS];
+  private long binds;
+  private LuminanceSource base;
+  private DownscaledLuminanceSource[] levels;
+
+  static int getLevelCount() {
+    return SCALES.length;
+  }
+
+  static int getScale(int level) {
+    return SCALES[level];
+  }
+
+  /**
+   * Prepares the pyramid for the next frame in {@code base}.
+   */
+  void bind(LuminanceSource base) {
+    binds++;
+    int slot = -1;
+    int leastRecent = 0;
+    for (int i = 0; i < SLOTS; i++) {
+      if (bases[i] == base) {
+        slot = i;
+        break;
+      }
+      if (lastBound[i] < lastBound[leastRecent]) {
+        leastRecent = i;
+      }
+    }
+    if (slot >= 0) {
+      for (DownscaledLuminanceSource level : slotLevels[slot]) {
+        if (level != null) {
+          level.reset();
+        }
+      }
+    } else {
+      // Unused slots were last bound at 0, so they go first
+      slot = leastRecent;
+      bases[slot] = base;
+      Arrays.fill(slotLevels[slot], null);
+    }
+    lastBound[slot] = binds;
+    this.base = base;
+    levels = slotLevels[slot];
+  }
+
+  /**
+   * @return the smallest level which still has enough pixels to decode from
+   */
+  int getCoarsestLevel() {
+    int shortSide = Math.min(base.getWidth(), base.getHeight());
+    for (int level = SCALES.length - 1; level > 0; level--) {
+      if (shortSide / SCALES[level] >= MIN_LEVEL_DIMENSION) {
+        return level;
+      }
+    }
+    return 0;
+  }
+
+  LuminanceSource get(int level) {
+    if (level == 0) {
+      return base;
+    }
+    if (levels[level] == null) {
+      levels[level] = new DownscaledLuminanceSource(base, SCALES[level]);
+    }
+    return levels[level];
+  }
+
+}
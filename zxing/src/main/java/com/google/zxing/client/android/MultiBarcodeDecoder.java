@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.Result;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds every barcode in a frame rather than stopping at the first, for labels which carry
+ * several codes at once. QR codes are found together by {@link QRCodeMultiReader}; all other
+ * formats are found by {@link GenericMultipleBarcodeReader}, which keeps decoding the parts of the
+ * image around each code it finds.
+ */
+final class MultiBarcodeDecoder {
+
+  private final QRCodeMultiReader qrCodeReader;
+  private final Map<DecodeHintType,Object> qrCodeHints;
+  private final MultiFormatReader otherReader;
+  private final GenericMultipleBarcodeReader otherMultiReader;
+
+  MultiBarcodeDecoder(Map<DecodeHintType,Object> hints, Collection<BarcodeFormat> formats) {
+    Set<BarcodeFormat> otherFormats = EnumSet.noneOf(BarcodeFormat.class);
+    otherFormats.addAll(formats);
+    if (otherFormats.remove(BarcodeFormat.QR_CODE)) {
+      qrCodeReader = new QRCodeMultiReader();
+      qrCodeHints = hints;
+    } else {
+      qrCodeReader = null;
+      qrCodeHints = null;
+    }
+    if (otherFormats.isEmpty()) {
+      otherReader = null;
+      otherMultiReader = null;
+    } else {
+      Map<DecodeHintType,Object> otherHints = new EnumMap<>(DecodeHintType.class);
+      otherHints.putAll(hints);
+      otherHints.put(DecodeHintType.POSSIBLE_FORMATS, otherFormats);
+      otherReader = new MultiFormatReader();
+      otherReader.setHints(otherHints);
+      otherMultiReader = new GenericMultipleBarcodeReader(new StatefulReader(otherReader));
+    }
+  }
+
+  /**
+   * @return every barcode found, or null if there are none
+   */
+  Result[] decode(BinaryBitmap bitmap) {
+    List<Result> results = new ArrayList<>();
+    if (qrCodeReader != null) {
+      try {
+        Collections.addAll(results, qrCodeReader.decodeMultiple(bitmap, qrCodeHints));
+      } catch (NotFoundException nfe) {
+        // continue
+      } finally {
+        qrCodeReader.reset();
+      }
+    }
+    if (otherMultiReader != null) {
+      try {
+        Collections.addAll(results, otherMultiReader.decodeMultiple(bitmap));
+      } catch (NotFoundException nfe) {
+        // continue
+      } finally {
+        otherReader.reset();
+      }
+    }
+    return results.isEmpty() ? null : results.toArray(new Result[results.size()]);
+  }
+
+  /**
+   * Lets {@link GenericMultipleBarcodeReader} use a {@link MultiFormatReader} whose hints are
+   * already set, rather than setting them up again for every part of the image it tries.
+   */
+  private static final class StatefulReader implements Reader {
+
+    private final MultiFormatReader reader;
+
+    StatefulReader(MultiFormatReader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image) throws NotFoundException {
+      return reader.decodeWithState(image);
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image, Map<DecodeHintType,?> hints) throws NotFoundException {
+      return reader.decodeWithState(image);
+    }
+
+    @Override
+    public void reset() {
+      reader.reset();
+    }
+  }
+
+}
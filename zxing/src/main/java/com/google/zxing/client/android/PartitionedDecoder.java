@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes one frame with several readers at once, each restricted to one group of formats and
+ * running on its own thread. The first group to find a barcode wins, so a frame costs as much as
+ * its slowest group rather than the sum of all of them.
+ *
+ * <p>The groups share the frame's luminance data but each binarizes it separately:
+ * the binarizers keep scratch arrays and can't be shared between threads. Each group keeps its
+ * binarizers for as long as it is handed the same (reusable) source, and works through the
+ * binarization tiers on its own.</p>
+ *
+ * <p>Within a group the readers are ordered by the shared {@link FormatHitHistogram}, and rare
+ * formats skipped on most frames, just as when decoding without groups.</p>
+ */
+final class PartitionedDecoder {
+
+  private final GroupTask[] tasks;
+  private final ExecutorService executor;
+  private final CompletionService<GroupResult> completionService;
+  private BinarizerTierStats.Tier winningTier;
+  private int outstanding;
+  private int failures;
+  private Throwable lastFailure;
+
+  PartitionedDecoder(Map<DecodeHintType,Object> hints,
+                     List<Set<BarcodeFormat>> formatGroups,
+                     BinarizerTierStats tierStats,
+                     FormatHitHistogram formatHistogram,
+                     boolean tryHarder) {
+    tasks = new GroupTask[formatGroups.size()];
+    for (int i = 0; i < tasks.length; i++) {
+      AdaptiveFormatReader reader = new AdaptiveFormatReader(hints, formatGroups.get(i), formatHistogram);
+      tasks[i] = new GroupTask(reader, tierStats, tryHarder);
+    }
+    executor = Executors.newFixedThreadPool(tasks.length);
+    completionService = new ExecutorCompletionService<>(executor);
+  }
+
+  /**
+   * @param level pyramid level {@code source} belongs to, so each group can keep binarizers per level
+   * @return the first result any group finds, or null if none does. Groups which are still
+   *  running when this returns keep reading {@code source}; call {@link #awaitIdle()} before
+   *  reusing it.
+   */
+  Result decode(LuminanceSource source, int level, long frameNumber) {
+    awaitIdle();
+    winningTier = null;
+    for (GroupTask task : tasks) {
+      task.source = source;
+      task.level = level;
+      task.frameNumber = frameNumber;
+      completionService.submit(task);
+      outstanding++;
+    }
+    GroupResult winner = null;
+    while (winner == null && outstanding > 0) {
+      winner = takeNext();
+    }
+    if (winner == null) {
+      return null;
+    }
+    winningTier = winner.tier;
+    return winner.result;
+  }
+
+  /**
+   * @return the binarization tier of the result the last {@link #decode(LuminanceSource, int, long)}
+   *  returned, or null if it found nothing
+   */
+  BinarizerTierStats.Tier getWinningTier() {
+    return winningTier;
+  }
+
+  /**
+   * Waits for groups still working on the last frame.
+   */
+  void awaitIdle() {
+    while (outstanding > 0) {
+      takeNext();
+    }
+    for (GroupTask task : tasks) {
+      task.source = null;
+    }
+  }
+
+  private GroupResult takeNext() {
+    try {
+      Future<GroupResult> done = completionService.take();
+      outstanding--;
+      return done.get();
+    } catch (InterruptedException ie) {
+      // Shutting down; forget whatever is left
+      outstanding = 0;
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException ee) {
+      // A reader bug in one group shouldn't cost the others their result; the owner reports it
+      failures++;
+      lastFailure = ee.getCause();
+    }
+    return null;
+  }
+
+  /**
+   * @return how many group decodes have thrown instead of returning
+   */
+  int getFailures() {
+    return failures;
+  }
+
+  /**
+   * @return what the most recent failed group decode threw, or null
+   */
+  Throwable getLastFailure() {
+    return lastFailure;
+  }
+
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * What a group found, and with which binarization.
+   */
+  private static final class GroupResult {
+
+    private final Result result;
+    private final BinarizerTierStats.Tier tier;
+
+    GroupResult(Result result, BinarizerTierStats.Tier tier) {
+      this.result = result;
+      this.tier = tier;
+    }
+  }
+
+  private static final class GroupTask implements Callable<GroupResult> {
+
+    private final AdaptiveFormatReader reader;
+    private final BinarizerTierStats tierStats;
+    private final boolean tryHarder;
+    private final TieredBinarizers[] binarizers;
+    private volatile LuminanceSource source;
+    private volatile int level;
+    private volatile long frameNumber;
+    // Only touched by whichever pool thread runs the task, one frame after another
+    private long readerFrameNumber = -1L;
+
+    GroupTask(AdaptiveFormatReader reader, BinarizerTierStats tierStats, boolean tryHarder) {
+      this.reader = reader;
+      this.tierStats = tierStats;
+      this.tryHarder = tryHarder;
+      binarizers = new TieredBinarizers[LuminancePyramid.getLevelCount()];
+      for (int i = 0; i < binarizers.length; i++) {
+        binarizers[i] = new TieredBinarizers();
+      }
+    }
+
+    @Override
+    public GroupResult call() {
+      TieredBinarizers binarizers = this.binarizers[level];
+      binarizers.bind(source);
+      long frameNumber = this.frameNumber;
+      if (frameNumber != readerFrameNumber) {
+        // Pyramid levels of one frame share the reader order
+        reader.nextFrame();
+        readerFrameNumber = frameNumber;
+      }
+      boolean rowsTried = false;
+      for (BinarizerTierStats.Tier tier : BinarizerTierStats.Tier.values()) {
+        if (!tryHarder && !tierStats.shouldTry(tier, frameNumber)) {
+          continue;
+        }
+        // The hybrid tier binarizes rows exactly like the global one; only 2D readers gain
+        boolean skipRowReaders = tier == BinarizerTierStats.Tier.HYBRID && rowsTried;
+        try {
+          Result result = reader.decode(new BinaryBitmap(binarizers.get(tier)), skipRowReaders);
+          tierStats.recordWin(tier);
+          return new GroupResult(result, tier);
+        } catch (ReaderException re) {
+          // try the next tier
+        }
+        rowsTried |= tier == BinarizerTierStats.Tier.GLOBAL_HISTOGRAM;
+      }
+      return null;
+    }
+  }
+
+}
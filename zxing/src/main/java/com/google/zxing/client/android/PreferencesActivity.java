@@ -33,6 +33,12 @@ public final class PreferencesActivity extends Activity {
   public static final String KEY_DECODE_DATA_MATRIX = "preferences_decode_Data_Matrix";
   public static final String KEY_DECODE_AZTEC = "preferences_decode_Aztec";
   public static final String KEY_DECODE_PDF417 = "preferences_decode_PDF417";
+  public static final String KEY_DECODE_WORKERS = "preferences_decode_workers";
+  public static final String KEY_DECODE_PARTITIONED = "preferences_decode_partitioned";
+  public static final String KEY_DECODE_PYRAMID = "preferences_decode_pyramid";
+  public static final String KEY_DECODE_FORMAT_HISTOGRAM = "preferences_decode_format_histogram";
+  public static final String KEY_DECODE_BINARIZER_TIERS = "preferences_decode_binarizer_tiers";
+  public static final String KEY_RECORD_FRAMES = "preferences_record_frames";
 
   public static final String KEY_CUSTOM_PRODUCT_SEARCH = "preferences_custom_product_search";
 
@@ -45,6 +51,7 @@ public final class PreferencesActivity extends Activity {
   public static final String KEY_ENABLE_HISTORY = "preferences_history";
   public static final String KEY_SUPPLEMENTAL = "preferences_supplemental";
   public static final String KEY_AUTO_FOCUS = "preferences_auto_focus";
+  public static final String KEY_AUTO_ZOOM = "preferences_auto_zoom";
   public static final String KEY_INVERT_SCAN = "preferences_invert_scan";  
   public static final String KEY_SEARCH_COUNTRY = "preferences_search_country";
   public static final String KEY_DISABLE_AUTO_ORIENTATION = "preferences_orientation";
@@ -53,6 +60,7 @@ public final class PreferencesActivity extends Activity {
   public static final String KEY_DISABLE_EXPOSURE = "preferences_disable_exposure";
   public static final String KEY_DISABLE_METERING = "preferences_disable_metering";
   public static final String KEY_DISABLE_BARCODE_SCENE_MODE = "preferences_disable_barcode_scene_mode";
+  public static final String KEY_LEGACY_CAMERA = "preferences_legacy_camera";
   public static final String KEY_AUTO_OPEN_WEB = "preferences_auto_open_web";
 
   @Override
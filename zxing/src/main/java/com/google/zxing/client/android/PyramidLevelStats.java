@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+/**
+ * How often each level of the {@link LuminancePyramid} was tried, and how many of all successful
+ * scans each level produced.
+ */
+final class PyramidLevelStats {
+
+  private final long[] attempts = new long[LuminancePyramid.getLevelCount()];
+  private final long[] successes = new long[LuminancePyramid.getLevelCount()];
+  private long totalSuccesses;
+
+  synchronized void recordAttempt(int level) {
+    attempts[level]++;
+  }
+
+  synchronized void recordSuccess(int level) {
+    successes[level]++;
+    totalSuccesses++;
+  }
+
+  synchronized long getAttempts(int level) {
+    return attempts[level];
+  }
+
+  /**
+   * @return fraction of all successful scans which were found at this level, between 0 and 1
+   */
+  synchronized float getSuccessShare(int level) {
+    return totalSuccesses == 0 ? 0.0f : (float) successes[level] / totalSuccesses;
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder result = new StringBuilder();
+    for (int level = 0; level < attempts.length; level++) {
+      if (result.length() > 0) {
+        result.append("; ");
+      }
+      result.append("1/").append(LuminancePyramid.getScale(level))
+          .append(": attempts=").append(attempts[level])
+          .append(" successes=").append(successes[level])
+          .append(" share=").append(Math.round(100.0f * getSuccessShare(level))).append('%');
+    }
+    return result.toString();
+  }
+
+}
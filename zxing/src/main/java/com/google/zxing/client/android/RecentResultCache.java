@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.Result;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers which barcodes were reported recently, keyed by format and text, so that bulk
+ * scanning can run continuously without reporting the same code over and over while it stays in
+ * view. A code counts as new again once it has not been seen for {@link #WINDOW_MS}. Holds at
+ * most {@link #MAX_ENTRIES} codes, dropping the least recently seen. Shared by all decode workers.
+ */
+final class RecentResultCache {
+
+  private static final long WINDOW_MS = 3000L;
+  private static final int MAX_ENTRIES = 64;
+
+  // Access order, so the eldest entry is the one seen least recently
+  private final Map<String,Long> lastSeen = new LinkedHashMap<String,Long>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String,Long> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+  private long duplicatesSuppressed;
+
+  /**
+   * Callers which must check and record in one step, like {@link DecodeWorkerPool}, hold this
+   * object's lock across both calls.
+   *
+   * @return the results which were not reported within the window, or null if there are none.
+   *  Dropped codes now count as just seen, so a code held in view stays suppressed.
+   */
+  synchronized Result[] dropRecent(Result[] results, long nowMs) {
+    List<Result> fresh = new ArrayList<>(results.length);
+    for (Result result : results) {
+      String key = keyOf(result);
+      Long seen = lastSeen.get(key);
+      if (seen != null && nowMs - seen < WINDOW_MS) {
+        lastSeen.put(key, nowMs);
+        duplicatesSuppressed++;
+      } else {
+        fresh.add(result);
+      }
+    }
+    return fresh.isEmpty() ? null : fresh.toArray(new Result[fresh.size()]);
+  }
+
+  /**
+   * Records that the codes have been reported.
+   */
+  synchronized void remember(Result[] results, long nowMs) {
+    for (Result result : results) {
+      lastSeen.put(keyOf(result), nowMs);
+    }
+  }
+
+  synchronized long getDuplicatesSuppressed() {
+    return duplicatesSuppressed;
+  }
+
+  private static String keyOf(Result result) {
+    return result.getBarcodeFormat() + ":" + result.getText();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "entries=" + lastSeen.size() + " duplicatesSuppressed=" + duplicatesSuppressed;
+  }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.InvertedLuminanceSource;
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A light-on-dark view of another luminance source, like {@link InvertedLuminanceSource}, but
+ * meant to follow a reusable source from frame to frame: the inverted matrix is kept in one array
+ * and only recomputed after {@link #reset()}, where the core class allocates a new one per call.
+ */
+final class ReusableInvertedLuminanceSource extends LuminanceSource {
+
+  private final LuminanceSource delegate;
+  private byte[] matrix;
+  private boolean matrixValid;
+
+  ReusableInvertedLuminanceSource(LuminanceSource delegate) {
+    super(delegate.getWidth(), delegate.getHeight());
+    this.delegate = delegate;
+  }
+
+  /**
+   * Forgets the matrix inverted from the delegate's previous frame.
+   */
+  synchronized void reset() {
+    matrixValid = false;
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    row = delegate.getRow(y, row);
+    int width = getWidth();
+    for (int i = 0; i < width; i++) {
+      row[i] = (byte) (255 - (row[i] & 0xFF));
+    }
+    return row;
+  }
+
+  @Override
+  public synchronized byte[] getMatrix() {
+    if (matrixValid) {
+      return matrix;
+    }
+    byte[] source = delegate.getMatrix();
+    int length = getWidth() * getHeight();
+    if (matrix == null) {
+      matrix = new byte[length];
+    }
+    for (int i = 0; i < length; i++) {
+      matrix[i] = (byte) (255 - (source[i] & 0xFF));
+    }
+    matrixValid = true;
+    return matrix;
+  }
+
+  @Override
+  public LuminanceSource invert() {
+    return delegate;
+  }
+
+}
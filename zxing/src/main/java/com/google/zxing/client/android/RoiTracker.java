@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import android.graphics.Rect;
+
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+/**
+ * Remembers where in the framing rect the readers recently found possible result points (finder
+ * patterns, guard patterns), so that while the user is aiming at a barcode only the region around
+ * it has to be decoded. The region is dropped once it has failed to produce a result
+ * {@link #MAX_MISSES} times in a row, or once no new points have been seen for a while; decoding
+ * then goes back to the whole framing rect. Shared by all decode workers.
+ */
+final class RoiTracker implements ResultPointCallback {
+
+  private static final int MAX_POINTS = 16;
+  private static final long POINT_LIFETIME_NANOS = 500L * 1000L * 1000L;
+  private static final int MIN_POINTS = 2;
+  private static final int MAX_MISSES = 4;
+  // Margin around the points on each side, as a fraction of their extent
+  private static final float MARGIN_FRACTION = 0.5f;
+  private static final int MIN_MARGIN = 32;
+  // Region sizes are rounded up to this so the luminance source can usually be reused
+  private static final int SIZE_QUANTUM = 32;
+  // Larger regions than this aren't worth cropping to
+  private static final float MAX_AREA_SHARE = 0.6f;
+
+  private final float[] pointX = new float[MAX_POINTS];
+  private final float[] pointY = new float[MAX_POINTS];
+  private final long[] pointNanos = new long[MAX_POINTS];
+  private int nextPoint;
+  // Bounds of the recent points, as last collected
+  private float minX;
+  private float minY;
+  private float maxX;
+  private float maxY;
+  private int misses;
+  private long regionFrames;
+  private long fullFrames;
+  private long fallbacks;
+
+  /**
+   * @param x x coordinate within the framing rect
+   * @param y y coordinate within the framing rect
+   */
+  synchronized void addPoint(float x, float y) {
+    pointX[nextPoint] = x;
+    pointY[nextPoint] = y;
+    pointNanos[nextPoint] = System.nanoTime();
+    nextPoint = (nextPoint + 1) % MAX_POINTS;
+  }
+
+  @Override
+  public void foundPossibleResultPoint(ResultPoint point) {
+    addPoint(point.getX(), point.getY());
+  }
+
+  /**
+   * @param width width of the framing rect
+   * @param height height of the framing rect
+   * @return the part of the framing rect the next frame should be decoded in, or null for all of it
+   */
+  synchronized Rect getRegion(int width, int height) {
+    Rect region = collectRecentPoints() < MIN_POINTS ? null : expand(minX, minY, maxX, maxY, width, height);
+    if (region == null) {
+      fullFrames++;
+    } else {
+      regionFrames++;
+    }
+    return region;
+  }
+
+  /**
+   * @param width width of the framing rect
+   * @param height height of the framing rect
+   * @return how far apart the recent points are, as a share of the framing rect along whichever
+   *  axis they spread most; 0 if too few were seen lately
+   */
+  synchronized float getSpread(int width, int height) {
+    if (collectRecentPoints() < MIN_POINTS) {
+      return 0.0f;
+    }
+    return Math.max((maxX - minX) / width, (maxY - minY) / height);
+  }
+
+  /**
+   * Sets the bounds fields to those of the points which haven't expired.
+   *
+   * @return how many points that was
+   */
+  private int collectRecentPoints() {
+    long oldest = System.nanoTime() - POINT_LIFETIME_NANOS;
+    int count = 0;
+    minX = Float.MAX_VALUE;
+    minY = Float.MAX_VALUE;
+    maxX = -Float.MAX_VALUE;
+    maxY = -Float.MAX_VALUE;
+    for (int i = 0; i < MAX_POINTS; i++) {
+      if (pointNanos[i] != 0L && pointNanos[i] >= oldest) {
+        minX = Math.min(minX, pointX[i]);
+        minY = Math.min(minY, pointY[i]);
+        maxX = Math.max(maxX, pointX[i]);
+        maxY = Math.max(maxY, pointY[i]);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static Rect expand(float minX, float minY, float maxX, float maxY, int width, int height) {
+    int margin = Math.max(MIN_MARGIN, (int) (MARGIN_FRACTION * Math.max(maxX - minX, maxY - minY)));
+    int regionWidth = roundUp((int) (maxX - minX) + 2 * margin);
+    int regionHeight = roundUp((int) (maxY - minY) + 2 * margin);
+    if (regionWidth >= width || regionHeight >= height ||
+        regionWidth * regionHeight > MAX_AREA_SHARE * width * height) {
+      return null;
+    }
+    // Center on the points, then shift back inside the framing rect
+    int left = (int) ((minX + maxX - regionWidth) / 2.0f);
+    int top = (int) ((minY + maxY - regionHeight) / 2.0f);
+    left = Math.max(0, Math.min(left, width - regionWidth));
+    top = Math.max(0, Math.min(top, height - regionHeight));
+    return new Rect(left, top, left + regionWidth, top + regionHeight);
+  }
+
+  private static int roundUp(int size) {
+    return (size + SIZE_QUANTUM - 1) / SIZE_QUANTUM * SIZE_QUANTUM;
+  }
+
+  /**
+   * Reports whether a frame decoded within the region returned by {@link #getRegion(int, int)}
+   * produced a result.
+   */
+  synchronized void recordRegionOutcome(boolean found) {
+    if (found) {
+      misses = 0;
+    } else if (++misses >= MAX_MISSES) {
+      // Whatever was there is gone or unreadable from here; look at everything again
+      for (int i = 0; i < MAX_POINTS; i++) {
+        pointNanos[i] = 0L;
+      }
+      misses = 0;
+      fallbacks++;
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "regionFrames=" + regionFrames + " fullFrames=" + fullFrames + " fallbacks=" + fallbacks;
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passes possible result points found in a downscaled or cropped image on in the coordinates of
+ * the whole framing rect, to the viewfinder and to the tracker of where barcodes were seen (the
+ * {@link RoiTracker} on a device). It also counts them: a reader which found finder patterns but
+ * no barcode is a reason to look again at full resolution.
+ */
+final class ScaledResultPointCallback implements ResultPointCallback {
+
+  private final ResultPointCallback delegate;
+  private final ResultPointCallback tracker;
+  private final AtomicInteger pointCount;
+  private volatile int scale;
+  private volatile int left;
+  private volatile int top;
+
+  ScaledResultPointCallback(ResultPointCallback delegate, ResultPointCallback tracker) {
+    this.delegate = delegate;
+    this.tracker = tracker;
+    pointCount = new AtomicInteger();
+    scale = 1;
+  }
+
+  /**
+   * Starts counting again, for an image downscaled by {@code scale} after being cropped to a
+   * region whose top left corner is at ({@code left}, {@code top}) in the framing rect.
+   */
+  void reset(int scale, int left, int top) {
+    this.scale = scale;
+    this.left = left;
+    this.top = top;
+    pointCount.set(0);
+  }
+
+  int getPointCount() {
+    return pointCount.get();
+  }
+
+  @Override
+  public void foundPossibleResultPoint(ResultPoint point) {
+    pointCount.incrementAndGet();
+    int scale = this.scale;
+    int left = this.left;
+    int top = this.top;
+    if (scale != 1 || left != 0 || top != 0) {
+      point = new ResultPoint(point.getX() * scale + left, point.getY() * scale + top);
+    }
+    if (tracker != null) {
+      tracker.foundPossibleResultPoint(point);
+    }
+    if (delegate != null) {
+      delegate.foundPossibleResultPoint(point);
+    }
+  }
+
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.client.android.camera.ReusableYUVLuminanceSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes barcodes from 8-bit luminance data, the way the scanner decodes its preview frames:
+ * binarizations tried from cheapest to most expensive, readers ordered by what was found before,
+ * optionally a downscaled pass first or every barcode in the image. It uses no Android types, so
+ * it runs as well on a plain JVM, for tests, benchmarks or bulk decoding on a server.
+ *
+ * <p>An engine keeps readers, binarizers and buffers from one image to the next and is not
+ * thread-safe; use one per thread. Call {@link #shutdown()} when done with it.</p>
+ */
+public final class ScanEngine {
+
+  private final DecodeProfile profile;
+  private final BinarizerTierStats tierStats;
+  private final FormatHitHistogram formatHistogram;
+  private final PyramidLevelStats pyramidStats;
+  private final ScaledResultPointCallback pointCallback;
+  private final AdaptiveFormatReader adaptiveReader;
+  private final PartitionedDecoder partitionedDecoder;
+  private final MultiBarcodeDecoder multiDecoder;
+  private final TieredBinarizers[] binarizers;
+  private final LuminancePyramid pyramid;
+  private ReusableYUVLuminanceSource source;
+  private long frameNumber;
+  private BinarizerTierStats.Tier winningTier;
+
+  public ScanEngine(DecodeProfile profile) {
+    this(profile, new BinarizerTierStats(), new FormatHitHistogram(), new PyramidLevelStats(), null);
+  }
+
+  /**
+   * @param tierStats binarization wins, possibly shared with other engines
+   * @param formatHistogram format hits, possibly shared with other engines
+   * @param pyramidStats pyramid level attempts, possibly shared with other engines
+   * @param tracker also receives possible result points, in the coordinates results are reported in
+   */
+  ScanEngine(DecodeProfile profile,
+             BinarizerTierStats tierStats,
+             FormatHitHistogram formatHistogram,
+             PyramidLevelStats pyramidStats,
+             ResultPointCallback tracker) {
+    this.profile = profile;
+    this.tierStats = tierStats;
+    this.formatHistogram = formatHistogram;
+    this.pyramidStats = pyramidStats;
+    // Points found in a downscaled or cropped image have to be mapped back before anyone sees them
+    pointCallback = new ScaledResultPointCallback(profile.getResultPointCallback(), tracker);
+    Map<DecodeHintType,Object> hints = profile.buildHints();
+    hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, pointCallback);
+    Set<BarcodeFormat> formats = profile.getFormats();
+    adaptiveReader = new AdaptiveFormatReader(hints, formats, formatHistogram);
+    List<Set<BarcodeFormat>> formatGroups = profile.getFormatGroups();
+    partitionedDecoder = formatGroups == null ? null :
+        new PartitionedDecoder(hints, formatGroups, tierStats, formatHistogram, profile.isTryHarder());
+    multiDecoder = profile.isMultiple() ? new MultiBarcodeDecoder(hints, formats) : null;
+    binarizers = new TieredBinarizers[LuminancePyramid.getLevelCount()];
+    for (int i = 0; i < binarizers.length; i++) {
+      binarizers[i] = new TieredBinarizers();
+    }
+    pyramid = profile.isPyramid() ? new LuminancePyramid() : null;
+  }
+
+  /**
+   * Decodes part of an image. Result points are reported relative to the top left corner of that
+   * part. The image data is not used any more once this returns.
+   *
+   * @param luminances one byte of luminance per pixel, row after row; only the first
+   *  {@code dataWidth * dataHeight} bytes are read, so a YUV frame with its Y plane first will do
+   * @param dataWidth width of the whole image
+   * @param dataHeight height of the whole image
+   * @param left left edge of the part to decode
+   * @param top top edge of the part to decode
+   * @param width width of the part to decode
+   * @param height height of the part to decode
+   */
+  public ScanResult decode(byte[] luminances,
+                           int dataWidth,
+                           int dataHeight,
+                           int left,
+                           int top,
+                           int width,
+                           int height) {
+    if (source == null || source.getWidth() != width || source.getHeight() != height) {
+      source = new ReusableYUVLuminanceSource(width, height);
+    }
+    source.reset(luminances, dataWidth, dataHeight, left, top);
+    ScanResult result;
+    try {
+      result = decode(source, 0, 0, ++frameNumber);
+    } finally {
+      awaitIdle();
+    }
+    for (Result found : result.getResults()) {
+      formatHistogram.recordHit(found.getBarcodeFormat());
+    }
+    return result;
+  }
+
+  /**
+   * Decodes a source which may be reused for the next image; format hits are left to the caller,
+   * which may not report every result. Format groups decoding in parallel may still be reading
+   * {@code source} when this returns; call {@link #awaitIdle()} before changing it.
+   *
+   * @param left added to the x coordinate of every result point
+   * @param top added to the y coordinate of every result point
+   * @param frameNumber increases with every image, to try rarely useful work now and then
+   */
+  ScanResult decode(LuminanceSource source, int left, int top, long frameNumber) {
+    long startNanos = System.nanoTime();
+    winningTier = null;
+    pointCallback.reset(1, left, top);
+    Result[] results;
+    if (multiDecoder != null) {
+      TieredBinarizers fullBinarizers = binarizers[0];
+      fullBinarizers.bind(source);
+      results = multiDecoder.decode(new BinaryBitmap(fullBinarizers.get(BinarizerTierStats.Tier.HYBRID)));
+      if (results != null) {
+        for (int i = 0; i < results.length; i++) {
+          results[i] = transformResultPoints(results[i], 1, left, top);
+        }
+      }
+    } else {
+      adaptiveReader.nextFrame();
+      Result result = pyramid == null ? decodeLevel(source, 0, frameNumber) :
+          decodePyramid(source, frameNumber, left, top);
+      results = result == null ? null : new Result[] {transformResultPoints(result, 1, left, top)};
+    }
+    return new ScanResult(results, winningTier, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Waits for format groups still reading the last source.
+   */
+  void awaitIdle() {
+    if (partitionedDecoder != null) {
+      partitionedDecoder.awaitIdle();
+    }
+  }
+
+  /**
+   * @return how many format group decodes have thrown, if decoding format groups in parallel
+   */
+  int getGroupFailures() {
+    return partitionedDecoder == null ? 0 : partitionedDecoder.getFailures();
+  }
+
+  /**
+   * @return what the most recent failed format group decode threw, or null
+   */
+  Throwable getLastGroupFailure() {
+    return partitionedDecoder == null ? null : partitionedDecoder.getLastFailure();
+  }
+
+  public DecodeProfile getProfile() {
+    return profile;
+  }
+
+  /**
+   * @return recent hits per format, which order the readers
+   */
+  public FormatHitHistogram getFormatHistogram() {
+    return formatHistogram;
+  }
+
+  /**
+   * Stops the threads which decode format groups in parallel, if any.
+   */
+  public void shutdown() {
+    if (partitionedDecoder != null) {
+      partitionedDecoder.shutdown();
+    }
+  }
+
+  /**
+   * Decodes the coarsest usable level first. If that fails but the readers reported possible
+   * result points, something barcode-like is in view but too small at that scale, so the image
+   * is tried again at full resolution.
+   */
+  private Result decodePyramid(LuminanceSource source, long frameNumber, int left, int top) {
+    pyramid.bind(source);
+    int level = pyramid.getCoarsestLevel();
+    while (true) {
+      int scale = LuminancePyramid.getScale(level);
+      pointCallback.reset(scale, left, top);
+      Result result = decodeLevel(pyramid.get(level), level, frameNumber);
+      pyramidStats.recordAttempt(level);
+      if (result != null) {
+        pyramidStats.recordSuccess(level);
+        return transformResultPoints(result, scale, 0, 0);
+      }
+      if (level == 0 || pointCallback.getPointCount() == 0) {
+        return null;
+      }
+      level = 0;
+    }
+  }
+
+  /**
+   * Runs the binarization tiers over one level of the image.
+   */
+  private Result decodeLevel(LuminanceSource source, int level, long frameNumber) {
+    if (partitionedDecoder != null) {
+      Result result = partitionedDecoder.decode(source, level, frameNumber);
+      if (result != null) {
+        winningTier = partitionedDecoder.getWinningTier();
+      }
+      return result;
+    }
+    TieredBinarizers levelBinarizers = binarizers[level];
+    levelBinarizers.bind(source);
+    boolean rowsTried = false;
+    for (BinarizerTierStats.Tier tier : BinarizerTierStats.Tier.values()) {
+      if (!profile.isTryHarder() && !tierStats.shouldTry(tier, frameNumber)) {
+        continue;
+      }
+      BinaryBitmap bitmap = new BinaryBitmap(levelBinarizers.get(tier));
+      // The hybrid tier binarizes rows exactly like the global one; only 2D readers gain
+      boolean skipRowReaders = tier == BinarizerTierStats.Tier.HYBRID && rowsTried;
+      try {
+        Result result = adaptiveReader.decode(bitmap, skipRowReaders);
+        winningTier = tier;
+        tierStats.recordWin(tier);
+        return result;
+      } catch (ReaderException re) {
+        // continue
+      }
+      rowsTried |= tier == BinarizerTierStats.Tier.GLOBAL_HISTOGRAM;
+    }
+    return null;
+  }
+
+  private static Result transformResultPoints(Result result, int scale, int left, int top) {
+    if (scale == 1 && left == 0 && top == 0) {
+      return result;
+    }
+    ResultPoint[] points = result.getResultPoints();
+    ResultPoint[] scaled = null;
+    if (points != null) {
+      scaled = new ResultPoint[points.length];
+      for (int i = 0; i < points.length; i++) {
+        ResultPoint point = points[i];
+        scaled[i] = point == null ? null :
+            new ResultPoint(point.getX() * scale + left, point.getY() * scale + top);
+      }
+    }
+    Result scaledResult = new Result(result.getText(), result.getRawBytes(), result.getNumBits(), scaled,
+        result.getBarcodeFormat(), result.getTimestamp());
+    scaledResult.putAllMetadata(result.getResultMetadata());
+    return scaledResult;
+  }
+
+}
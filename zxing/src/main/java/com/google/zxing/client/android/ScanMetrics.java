@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms for the live scan pipeline, from the camera callback to the
+ * result on screen. There is one registry per process so it can be read at any time, from code
+ * through the getters or from a shell through {@link ScanMetricsReceiver}. Everything is recorded
+ * without locks, from whichever thread the event happens on. Times are kept in microseconds.
+ */
+public final class ScanMetrics {
+
+  public enum Counter {
+    /** Frames the camera delivered. */
+    FRAMES_DELIVERED,
+    /** Frames the quality check turned away before decoding. */
+    FRAMES_REJECTED,
+    /** Frames a decoder ran on. */
+    FRAMES_DECODED,
+    /** Decoded frames with at least one barcode in them. */
+    FRAMES_WITH_RESULT,
+    /** Results which reached the screen. */
+    RESULTS_SHOWN,
+    /** Camera launches which applied a cached configuration. */
+    CAMERA_CONFIG_CACHE_HITS,
+    /** Camera launches which had to negotiate the configuration. */
+    CAMERA_CONFIG_CACHE_MISSES,
+    /** Changes to camera settings asked for while the camera was open. */
+    CAMERA_PARAMETER_CHANGES,
+    /** Calls to the camera driver to read or write settings while the camera was open. */
+    CAMERA_PARAMETER_ROUND_TRIPS,
+    /** Focus passes started by the scanner, in modes where the camera doesn't focus by itself. */
+    AUTO_FOCUS_PASSES,
+    /** Times focus and metering were moved to follow a barcode, or back to the middle. */
+    FOCUS_AREA_CHANGES,
+    /** Times the scanner zoomed in or out to make a barcode a better size. */
+    AUTO_ZOOM_CHANGES,
+    /** Zoom changes followed by a result within a few frames. */
+    AUTO_ZOOM_HITS,
+    /** Zoom changes not followed by a result within a few frames. */
+    AUTO_ZOOM_MISSES,
+  }
+
+  public enum Timer {
+    /** Opening the camera device, on the camera thread. */
+    CAMERA_OPEN,
+    /** Choosing the preview size and applying camera settings, on the camera thread. */
+    CAMERA_CONFIGURE,
+    /** Scanner asked for the camera until its first preview frame arrived. */
+    CAMERA_STARTUP,
+    /** How much quicker applying a cached camera configuration was than negotiating it. */
+    CAMERA_CONFIG_SAVED,
+    /** Applying a batch of camera setting changes, on the camera thread. */
+    CAMERA_PARAMETER_APPLY,
+    /** Sensor began exposing the frame until the camera delivered it; Camera2 only. */
+    SENSOR_TO_DELIVERY,
+    /** Camera delivered the frame until a decoder was handed it. */
+    CAPTURE_TO_ENQUEUE,
+    /** Decoder was handed the frame until it started work on it. */
+    ENQUEUE_TO_DECODE,
+    /** Time spent decoding, successful or not. */
+    DECODE,
+    /** Rendering and compressing the thumbnail sent along with a result. */
+    THUMBNAIL_ENCODE,
+    /** Decoder finished until the capture handler saw the result. */
+    DECODE_TO_RESULT,
+    /** Scanner resumed until the first result was shown. */
+    FIRST_RESULT,
+    /** {@link #FIRST_RESULT} for barcodes near the middle of the framing rect. */
+    FIRST_RESULT_CENTERED,
+    /** {@link #FIRST_RESULT} for barcodes away from the middle of the framing rect. */
+    FIRST_RESULT_OFF_CENTER,
+  }
+
+  private static final Counter[] COUNTERS = Counter.values();
+  private static final Timer[] TIMERS = Timer.values();
+  private static final BarcodeFormat[] FORMATS = BarcodeFormat.values();
+
+  private static final ScanMetrics INSTANCE = new ScanMetrics();
+
+  private final AtomicLongArray counters = new AtomicLongArray(COUNTERS.length);
+  private final AtomicHistogram[] timers = new AtomicHistogram[TIMERS.length];
+  private final Map<BarcodeFormat,AtomicHistogram> decodeByFormat = new EnumMap<>(BarcodeFormat.class);
+  private final AtomicHistogram decodeWithoutResult = new AtomicHistogram();
+  private final AtomicHistogram framesBeforeResult = new AtomicHistogram();
+  private final AtomicLong framesSinceResult = new AtomicLong();
+  private final AtomicLong sessionStartNanos = new AtomicLong();
+
+  private ScanMetrics() {
+    for (int i = 0; i < timers.length; i++) {
+      timers[i] = new AtomicHistogram();
+    }
+    // Filled once here and only read afterwards, so the map needs no locking
+    for (BarcodeFormat format : FORMATS) {
+      decodeByFormat.put(format, new AtomicHistogram());
+    }
+  }
+
+  public static ScanMetrics get() {
+    return INSTANCE;
+  }
+
+  public void increment(Counter counter) {
+    counters.incrementAndGet(counter.ordinal());
+  }
+
+  public void recordNanos(Timer timer, long nanos) {
+    timers[timer.ordinal()].record(nanos / 1000L);
+  }
+
+  /**
+   * Records how long a decoder took on a frame, under the format it found, if any.
+   */
+  void recordDecode(BarcodeFormat format, long nanos) {
+    recordNanos(Timer.DECODE, nanos);
+    if (format == null) {
+      decodeWithoutResult.record(nanos / 1000L);
+    } else {
+      decodeByFormat.get(format).record(nanos / 1000L);
+    }
+  }
+
+  /**
+   * Called when the scanner comes to the foreground and starts looking for barcodes.
+   */
+  void startSession() {
+    framesSinceResult.set(0L);
+    sessionStartNanos.set(System.nanoTime());
+  }
+
+  /**
+   * Called for every frame which was rejected or decoded without a result.
+   */
+  void recordFrameWithoutResult() {
+    framesSinceResult.incrementAndGet();
+  }
+
+  /**
+   * Called when a result from the camera is shown.
+   *
+   * @param offCenter whether the barcode was away from the middle of the framing rect
+   */
+  void recordResultShown(boolean offCenter) {
+    increment(Counter.RESULTS_SHOWN);
+    long started = sessionStartNanos.getAndSet(0L);
+    if (started != 0L) {
+      long nanos = System.nanoTime() - started;
+      recordNanos(Timer.FIRST_RESULT, nanos);
+      recordNanos(offCenter ? Timer.FIRST_RESULT_OFF_CENTER : Timer.FIRST_RESULT_CENTERED, nanos);
+    }
+    framesBeforeResult.record(framesSinceResult.getAndSet(0L));
+  }
+
+  public long getCount(Counter counter) {
+    return counters.get(counter.ordinal());
+  }
+
+  /**
+   * @return the histogram of {@code timer}, in microseconds
+   */
+  public AtomicHistogram getTimer(Timer timer) {
+    return timers[timer.ordinal()];
+  }
+
+  /**
+   * @return time to decode frames in which {@code format} was found, in microseconds; or frames
+   *  with nothing found if {@code format} is null
+   */
+  public AtomicHistogram getDecodeLatency(BarcodeFormat format) {
+    return format == null ? decodeWithoutResult : decodeByFormat.get(format);
+  }
+
+  /**
+   * @return how many frames were rejected or came up empty before each result shown
+   */
+  public AtomicHistogram getFramesBeforeResult() {
+    return framesBeforeResult;
+  }
+
+  public void reset() {
+    for (int i = 0; i < COUNTERS.length; i++) {
+      counters.set(i, 0L);
+    }
+    for (AtomicHistogram timer : timers) {
+      timer.reset();
+    }
+    for (AtomicHistogram histogram : decodeByFormat.values()) {
+      histogram.reset();
+    }
+    decodeWithoutResult.reset();
+    framesBeforeResult.reset();
+  }
+
+  /**
+   * @return every counter and every histogram with values in it, one per line
+   */
+  public String dump() {
+    StringBuilder out = new StringBuilder();
+    for (Counter counter : COUNTERS) {
+      out.append(counter).append(": ").append(getCount(counter)).append('\n');
+    }
+    for (Timer timer : TIMERS) {
+      appendMillis(out, timer.toString(), timers[timer.ordinal()]);
+    }
+    for (BarcodeFormat format : FORMATS) {
+      appendMillis(out, "DECODE " + format, decodeByFormat.get(format));
+    }
+    appendMillis(out, "DECODE no result", decodeWithoutResult);
+    if (framesBeforeResult.getCount() > 0L) {
+      out.append("FRAMES_BEFORE_RESULT: n=").append(framesBeforeResult.getCount())
+          .append(" mean=").append(String.format(Locale.ENGLISH, "%.1f", framesBeforeResult.getMean()))
+          .append(" p50=").append(framesBeforeResult.getPercentile(50.0))
+          .append(" p90=").append(framesBeforeResult.getPercentile(90.0))
+          .append(" max=").append(framesBeforeResult.getMax()).append('\n');
+    }
+    return out.toString();
+  }
+
+  private static void appendMillis(StringBuilder out, String name, AtomicHistogram histogram) {
+    if (histogram.getCount() == 0L) {
+      return;
+    }
+    out.append(name).append(": n=").append(histogram.getCount())
+        .append(String.format(Locale.ENGLISH, " mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+            histogram.getMean() / 1000.0,
+            histogram.getPercentile(50.0) / 1000.0,
+            histogram.getPercentile(90.0) / 1000.0,
+            histogram.getPercentile(99.0) / 1000.0,
+            histogram.getMax() / 1000.0))
+        .append('\n');
+  }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Answers {@link Intents.Metrics#ACTION} with a dump of {@link ScanMetrics}, to the log and, when
+ * the broadcast was sent from a shell, as its result.
+ */
+public final class ScanMetricsReceiver extends BroadcastReceiver {
+
+  private static final String TAG = ScanMetricsReceiver.class.getSimpleName();
+
+  @Override
+  public void onReceive(Context context, Intent intent) {
+    ScanMetrics metrics = ScanMetrics.get();
+    String dump = metrics.dump();
+    Log.i(TAG, "Scan metrics:\n" + dump);
+    if (isOrderedBroadcast()) {
+      setResultData(dump);
+    }
+    if (intent.getBooleanExtra(Intents.Metrics.RESET, false)) {
+      metrics.reset();
+    }
+  }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.Result;
+
+/**
+ * What one {@link ScanEngine} decode found, and how long it took.
+ */
+public final class ScanResult {
+
+  private static final Result[] NO_RESULTS = new Result[0];
+
+  private final Result[] results;
+  private final BinarizerTierStats.Tier tier;
+  private final long decodeNanos;
+
+  ScanResult(Result[] results, BinarizerTierStats.Tier tier, long decodeNanos) {
+    this.results = results == null ? NO_RESULTS : results;
+    this.tier = tier;
+    this.decodeNanos = decodeNanos;
+  }
+
+  /**
+   * @return the barcode found, or the first of them if the profile asked for all; null if none
+   */
+  public Result getResult() {
+    return results.length == 0 ? null : results[0];
+  }
+
+  /**
+   * @return every barcode found, possibly none
+   */
+  public Result[] getResults() {
+    return results.clone();
+  }
+
+  /**
+   * @return time spent decoding, in nanoseconds
+   */
+  public long getDecodeNanos() {
+    return decodeNanos;
+  }
+
+  /**
+   * @return the binarization which produced the result, or null if unknown or nothing was found
+   */
+  BinarizerTierStats.Tier getTier() {
+    return tier;
+  }
+
+  @Override
+  public String toString() {
+    return results.length + " result(s) in " + (decodeNanos / 1000L) + "us" +
+        (tier == null ? "" : " (" + tier + " binarizer)");
+  }
+
+}
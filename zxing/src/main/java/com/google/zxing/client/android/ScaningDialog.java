@@ -9,6 +9,7 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.Window;
+import android.widget.TextView;
 
 /**
  * Created by Administrator on 2017/9/25 0025.
@@ -16,6 +17,10 @@ import android.view.Window;
 
 public class ScaningDialog extends DialogFragment {
 
+    private TextView messageView;
+    private CharSequence defaultMessage;
+    private CharSequence message;
+
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -25,6 +30,11 @@ public class ScaningDialog extends DialogFragment {
     @Override
     public View onCreateView(LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.dialog_scaning, container, false);
+        messageView = view.findViewById(R.id.scaning_message);
+        defaultMessage = messageView.getText();
+        if (message != null) {
+            messageView.setText(message);
+        }
 
         return view;
     }
@@ -37,4 +47,14 @@ public class ScaningDialog extends DialogFragment {
         dialog.setCancelable(false);
         return dialog;
     }
+
+    /**
+     * 更新提示文字，批量导入时显示进度；可在界面创建前调用，传null恢复默认文字
+     */
+    public void setMessage(CharSequence message) {
+        this.message = message;
+        if (messageView != null) {
+            messageView.setText(message == null ? defaultMessage : message);
+        }
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+
+/**
+ * One binarizer per {@link BinarizerTierStats.Tier}, all bound to the same luminance source and
+ * kept for as long as that source is reused. A binarizer can't be moved to another source, so
+ * sets for the last few sources are kept: decoding switches between the whole framing rect and a
+ * few region sizes while the user aims, and each of those keeps its scratch arrays. Not
+ * thread-safe; each decoding thread has its own.
+ *
+ * <p>Once every source has been seen, binding allocates nothing. The global histogram tier still
+ * allocates its {@link com.google.zxing.common.BitMatrix} whenever a 2D reader asks for one, as
+ * the core binarizer does; its row path, which the 1D readers use, reuses its arrays.</p>
+ */
+final class TieredBinarizers {
+
+  // The whole framing rect plus the region sources DecodeHandler keeps
+  private static final int SLOTS = 5;
+
+  private final Slot[] slots = new Slot[SLOTS];
+  private Slot current;
+  private long binds;
+
+  /**
+   * Prepares the binarizers for the next frame in {@code source}.
+   */
+  void bind(LuminanceSource source) {
+    binds++;
+    Slot slot = null;
+    Slot leastRecent = null;
+    int free = -1;
+    for (int i = 0; i < SLOTS; i++) {
+      Slot candidate = slots[i];
+      if (candidate == null) {
+        free = i;
+      } else if (candidate.source == source) {
+        slot = candidate;
+        break;
+      } else if (leastRecent == null || candidate.lastBound < leastRecent.lastBound) {
+        leastRecent = candidate;
+      }
+    }
+    if (slot != null) {
+      slot.reset();
+    } else if (free >= 0) {
+      slot = new Slot(source);
+      slots[free] = slot;
+    } else {
+      slot = leastRecent;
+      slot.bind(source);
+    }
+    slot.lastBound = binds;
+    current = slot;
+  }
+
+  Binarizer get(BinarizerTierStats.Tier tier) {
+    switch (tier) {
+      case GLOBAL_HISTOGRAM:
+        return current.global;
+      case INVERTED:
+        return current.inverted;
+      default:
+        return current.hybrid;
+    }
+  }
+
+  private static final class Slot {
+
+    private LuminanceSource source;
+    private GlobalHistogramBinarizer global;
+    private ReusableHybridBinarizer hybrid;
+    private ReusableInvertedLuminanceSource invertedSource;
+    private ReusableHybridBinarizer inverted;
+    private long lastBound;
+
+    Slot(LuminanceSource source) {
+      bind(source);
+    }
+
+    void bind(LuminanceSource source) {
+      this.source = source;
+      global = new GlobalHistogramBinarizer(source);
+      hybrid = new ReusableHybridBinarizer(source);
+      invertedSource = new ReusableInvertedLuminanceSource(source);
+      inverted = new ReusableHybridBinarizer(invertedSource);
+    }
+
+    void reset() {
+      hybrid.reset();
+      invertedSource.reset();
+      inverted.reset();
+    }
+  }
+
+}
@@ -19,22 +19,39 @@ package com.google.zxing.client.android.camera;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.hardware.Camera;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.RejectedExecutionException;
 
 import com.google.zxing.client.android.PreferencesActivity;
+import com.google.zxing.client.android.ScanMetrics;
 
+/**
+ * Decides when the camera focuses, in modes where it only does when told to. Focus is triggered
+ * by what the decoders see: a run of frames much blurrier than usual, or of sharp frames which
+ * still decode to nothing. A timer refocuses now and then regardless, and backs off while scans
+ * keep succeeding. Runs on a thread of its own, since the decoders report from theirs.
+ */
 @SuppressWarnings("deprecation") // camera APIs
-final class AutoFocusManager implements Camera.AutoFocusCallback {
+final class AutoFocusManager implements Camera.AutoFocusCallback, Handler.Callback {
 
   private static final String TAG = AutoFocusManager.class.getSimpleName();
 
-  private static final long AUTO_FOCUS_INTERVAL_MS = 2000L;
+  // Refocus this long after the last pass if nothing asked sooner, doubled by each success
+  private static final long MIN_AUTO_FOCUS_INTERVAL_MS = 2000L;
+  private static final long MAX_AUTO_FOCUS_INTERVAL_MS = 16000L;
+  // Frames this soon after a pass may have been exposed before it ended, so they say nothing
+  private static final long SETTLE_MS = 300L;
+  // New focus areas go to the camera with the next preview frame; focus once they're there
+  private static final long AREAS_SETTLE_MS = 100L;
+  private static final int BLURRY_FRAMES_BEFORE_FOCUS = 3;
+  private static final int FAILED_DECODES_BEFORE_FOCUS = 8;
   private static final Collection<String> FOCUS_MODES_CALLING_AF;
   static {
     FOCUS_MODES_CALLING_AF = new ArrayList<>(2);
@@ -42,11 +59,30 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
     FOCUS_MODES_CALLING_AF.add(Camera.Parameters.FOCUS_MODE_MACRO);
   }
 
+  /**
+   * Why a focus pass was started; also the what of the message starting it.
+   */
+  private enum Trigger {
+    START,
+    BLUR,
+    FAILED_DECODES,
+    AREAS,
+    INTERVAL,
+  }
+  private static final Trigger[] TRIGGERS = Trigger.values();
+
   private boolean stopped;
   private boolean focusing;
   private final boolean useAutoFocus;
   private final Camera camera;
-  private AsyncTask<?,?,?> outstandingTask;
+  private final HandlerThread thread;
+  private final Handler handler;
+  private long intervalMs = MIN_AUTO_FOCUS_INTERVAL_MS;
+  private long focusedAtMs;
+  private int blurryFrames;
+  private int failedDecodes;
+  // Passes since the last successful scan, by trigger
+  private final int[] passes = new int[TRIGGERS.length];
 
   AutoFocusManager(Context context, Camera camera) {
     this.camera = camera;
@@ -56,57 +92,140 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
         sharedPrefs.getBoolean(PreferencesActivity.KEY_AUTO_FOCUS, true) &&
         FOCUS_MODES_CALLING_AF.contains(currentFocusMode);
     Log.i(TAG, "Current focus mode '" + currentFocusMode + "'; use auto focus? " + useAutoFocus);
+    if (useAutoFocus) {
+      thread = new HandlerThread("AutoFocus");
+      thread.start();
+      handler = new Handler(thread.getLooper(), this);
+    } else {
+      thread = null;
+      handler = null;
+    }
     start();
   }
 
   @Override
   public synchronized void onAutoFocus(boolean success, Camera theCamera) {
     focusing = false;
+    focusedAtMs = SystemClock.uptimeMillis();
+    blurryFrames = 0;
+    failedDecodes = 0;
     autoFocusAgainLater();
   }
 
   private synchronized void autoFocusAgainLater() {
-    if (!stopped && outstandingTask == null) {
-      AutoFocusTask newTask = new AutoFocusTask();
-      try {
-        newTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-        outstandingTask = newTask;
-      } catch (RejectedExecutionException ree) {
-        Log.w(TAG, "Could not request auto focus", ree);
-      }
+    if (!stopped) {
+      int what = Trigger.INTERVAL.ordinal();
+      handler.removeMessages(what);
+      handler.sendEmptyMessageDelayed(what, intervalMs);
     }
   }
 
   synchronized void start() {
     if (useAutoFocus) {
-      outstandingTask = null;
-      if (!stopped && !focusing) {
-        try {
-          camera.autoFocus(this);
-          focusing = true;
-        } catch (RuntimeException re) {
-          // Have heard RuntimeException reported in Android 4.0.x+; continue?
-          Log.w(TAG, "Unexpected exception while focusing", re);
-          // Try again later to keep cycle going
-          autoFocusAgainLater();
-        }
-      }
+      handler.sendEmptyMessage(Trigger.START.ordinal());
     }
   }
 
-  private synchronized void cancelOutstandingTask() {
-    if (outstandingTask != null) {
-      if (outstandingTask.getStatus() != AsyncTask.Status.FINISHED) {
-        outstandingTask.cancel(true);
+  @Override
+  public boolean handleMessage(Message message) {
+    focus(TRIGGERS[message.what]);
+    return true;
+  }
+
+  private synchronized void focus(Trigger trigger) {
+    if (stopped || focusing) {
+      return;
+    }
+    handler.removeMessages(Trigger.INTERVAL.ordinal());
+    try {
+      camera.autoFocus(this);
+      focusing = true;
+      passes[trigger.ordinal()]++;
+      ScanMetrics.get().increment(ScanMetrics.Counter.AUTO_FOCUS_PASSES);
+    } catch (RuntimeException re) {
+      // Have heard RuntimeException reported in Android 4.0.x+; continue?
+      Log.w(TAG, "Unexpected exception while focusing", re);
+      // Try again later to keep cycle going
+      autoFocusAgainLater();
+    }
+  }
+
+  /**
+   * Takes in how a decoder got on with a frame. Called from the decode threads.
+   */
+  synchronized void onFrameOutcome(CameraManager.FrameOutcome outcome) {
+    if (!useAutoFocus || stopped) {
+      return;
+    }
+    if (outcome == CameraManager.FrameOutcome.RESULT) {
+      // Focus is fine as it is; leave it alone for longer
+      intervalMs = Math.min(2 * intervalMs, MAX_AUTO_FOCUS_INTERVAL_MS);
+      logPasses();
+      blurryFrames = 0;
+      failedDecodes = 0;
+      if (!focusing) {
+        autoFocusAgainLater();
+      }
+      return;
+    }
+    if (focusing || SystemClock.uptimeMillis() - focusedAtMs < SETTLE_MS) {
+      return;
+    }
+    Trigger trigger = null;
+    if (outcome == CameraManager.FrameOutcome.BLURRY) {
+      if (++blurryFrames >= BLURRY_FRAMES_BEFORE_FOCUS) {
+        trigger = Trigger.BLUR;
+      }
+    } else {
+      // Sharp enough to be decoded, so a miss is the scene's fault or a slight defocus
+      blurryFrames = 0;
+      if (++failedDecodes >= FAILED_DECODES_BEFORE_FOCUS) {
+        trigger = Trigger.FAILED_DECODES;
       }
-      outstandingTask = null;
+    }
+    if (trigger != null) {
+      intervalMs = MIN_AUTO_FOCUS_INTERVAL_MS;
+      blurryFrames = 0;
+      failedDecodes = 0;
+      handler.sendEmptyMessage(trigger.ordinal());
     }
   }
 
+  /**
+   * Starts a pass shortly, so new focus areas are focused on without waiting for the timer.
+   */
+  synchronized void onAreasChanged() {
+    if (useAutoFocus && !stopped) {
+      intervalMs = MIN_AUTO_FOCUS_INTERVAL_MS;
+      handler.sendEmptyMessageDelayed(Trigger.AREAS.ordinal(), AREAS_SETTLE_MS);
+    }
+  }
+
+  private void logPasses() {
+    StringBuilder counts = new StringBuilder();
+    int total = 0;
+    for (Trigger trigger : TRIGGERS) {
+      int count = passes[trigger.ordinal()];
+      total += count;
+      counts.append(' ').append(trigger).append('=').append(count);
+      passes[trigger.ordinal()] = 0;
+    }
+    Log.i(TAG, "Scan succeeded after " + total + " focus passes:" + counts +
+        "; next scheduled pass in " + intervalMs + " ms");
+  }
+
+  /**
+   * @return true while the camera is busy with a focus pass this manager started
+   */
+  synchronized boolean isFocusing() {
+    return focusing;
+  }
+
   synchronized void stop() {
     stopped = true;
     if (useAutoFocus) {
-      cancelOutstandingTask();
+      handler.removeCallbacksAndMessages(null);
+      thread.quitSafely();
       // Doesn't hurt to call this even if not focusing
       try {
         camera.cancelAutoFocus();
@@ -117,17 +236,4 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
     }
   }
 
-  private final class AutoFocusTask extends AsyncTask<Object,Object,Object> {
-    @Override
-    protected Object doInBackground(Object... voids) {
-      try {
-        Thread.sleep(AUTO_FOCUS_INTERVAL_MS);
-      } catch (InterruptedException e) {
-        // continue
-      }
-      start();
-      return null;
-    }
-  }
-
 }
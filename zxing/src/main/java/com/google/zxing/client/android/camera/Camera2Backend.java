@@ -0,0 +1,722 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.MeteringRectangle;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+import android.view.Display;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.WindowManager;
+import com.google.zxing.client.android.PreferencesActivity;
+import com.google.zxing.client.android.ScanMetrics;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the {@link CameraDevice} API, on devices which implement more of it than the old API
+ * offered and can focus continuously. Frames come from an {@link ImageReader} in YUV_420_888; only the Y plane is used,
+ * and it is handed to decoders as the camera lends it, padding and all, rather than being copied
+ * into an array first. Each frame keeps its image acquired until it is released, so the reader
+ * holds one image more than there are frames.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class Camera2Backend implements CameraBackend {
+
+  private static final String TAG = Camera2Backend.class.getSimpleName();
+
+  private static final int MAX_PREVIEW_WIDTH = 1920;
+  private static final int MAX_PREVIEW_HEIGHT = 1080;
+  // Sizes which can't keep up with 30fps aren't worth the extra pixels
+  private static final long MAX_FRAME_DURATION_NANOS = 1000000000L / 30L;
+  private static final long OPEN_TIMEOUT_MS = 2500L;
+
+  private final Context context;
+  private final FrameScheduler frameScheduler;
+  private final Listener listener;
+  private final android.hardware.camera2.CameraManager cameraService;
+  private HandlerThread cameraThread;
+  private Handler cameraHandler;
+  private CameraDevice device;
+  private CameraCharacteristics characteristics;
+  private SurfaceHolder holder;
+  private String cameraId;
+  private Point cameraResolution;
+  private int focusMode;
+  private Range<Integer> fpsRange;
+  private Point screenResolution;
+  private boolean realtimeTimestamps;
+  private boolean torch;
+  private boolean requestUpdatePending;
+  private final FocusAreaController focusAreas;
+  private Rect activeArray;
+  private int maxFocusRegions;
+  private int maxMeteringRegions;
+  private MeteringRectangle[] regions;
+  private final ZoomController zoom;
+  private Rect cropRegion;
+  private final Runnable updateRequest = new Runnable() {
+    @Override
+    public void run() {
+      synchronized (Camera2Backend.this) {
+        requestUpdatePending = false;
+        startRepeatingRequest();
+      }
+    }
+  };
+  private CameraCaptureSession session;
+  private PreviewStream stream;
+
+  Camera2Backend(Context context, FrameScheduler frameScheduler, Listener listener) {
+    this.context = context;
+    this.frameScheduler = frameScheduler;
+    this.listener = listener;
+    cameraService = (android.hardware.camera2.CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    focusAreas = new FocusAreaController(new FocusAreaController.Listener() {
+      @Override
+      public void onAreaChanged(Rect area) {
+        // Without regions of its own the camera goes back to its default, the whole picture
+        regions = area == null ? null : new MeteringRectangle[] {toRegion(area)};
+        requestUpdate();
+      }
+    });
+    zoom = new ZoomController(new ZoomController.Listener() {
+      @Override
+      public void onZoomChanged(double ratio) {
+        cropRegion = toCropRegion(ratio);
+        // Whatever the regions were aimed at has moved
+        regions = null;
+        focusAreas.reset();
+        requestUpdate();
+      }
+    });
+  }
+
+  /**
+   * @param cameraId index of the camera which will be opened, or negative for the first facing back
+   * @return true if this device runs Android 5.0 or later and that camera does more than the old
+   *  API could; at the legacy hardware level the new API only emulates the old one, slower. A
+   *  camera which can only focus when triggered is left to the old API too, whose
+   *  {@link AutoFocusManager} triggers it as decoding goes.
+   */
+  static boolean isSupported(Context context, int cameraId) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+      return false;
+    }
+    android.hardware.camera2.CameraManager cameraService =
+        (android.hardware.camera2.CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    try {
+      String id = findCameraId(cameraService, cameraId);
+      if (id == null) {
+        return false;
+      }
+      CameraCharacteristics characteristics = cameraService.getCameraCharacteristics(id);
+      Integer level = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+      if (level == null || level == CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY) {
+        return false;
+      }
+      int[] focusModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+      return !contains(focusModes, CameraMetadata.CONTROL_AF_MODE_AUTO) ||
+          contains(focusModes, CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+    } catch (CameraAccessException | RuntimeException e) {
+      Log.w(TAG, "Can't read camera characteristics", e);
+      return false;
+    }
+  }
+
+  private static boolean contains(int[] values, int value) {
+    if (values != null) {
+      for (int candidate : values) {
+        if (candidate == value) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static String findCameraId(android.hardware.camera2.CameraManager cameraService, int cameraId)
+      throws CameraAccessException {
+    String[] ids = cameraService.getCameraIdList();
+    if (cameraId >= 0) {
+      return cameraId < ids.length ? ids[cameraId] : null;
+    }
+    for (String id : ids) {
+      Integer facing = cameraService.getCameraCharacteristics(id).get(CameraCharacteristics.LENS_FACING);
+      if (facing != null && facing == CameraMetadata.LENS_FACING_BACK) {
+        return id;
+      }
+    }
+    return ids.length > 0 ? ids[0] : null;
+  }
+
+  @Override
+  public synchronized void open(int cameraId) throws IOException {
+    if (device != null) {
+      return;
+    }
+    if (cameraThread == null) {
+      cameraThread = new HandlerThread("Camera2");
+      cameraThread.start();
+      cameraHandler = new Handler(cameraThread.getLooper());
+    }
+    String id;
+    try {
+      id = findCameraId(cameraService, cameraId);
+      if (id == null) {
+        throw new IOException("No camera " + cameraId);
+      }
+      characteristics = cameraService.getCameraCharacteristics(id);
+      this.cameraId = id;
+    } catch (CameraAccessException cae) {
+      throw new IOException(cae);
+    }
+
+    // The device arrives on the callback thread, not the one calling here
+    OpenCallback callback = new OpenCallback();
+    try {
+      cameraService.openCamera(id, callback, cameraHandler);
+      if (!callback.opened.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        callback.abandoned = true;
+        throw new IOException("Camera " + id + " took too long to open");
+      }
+    } catch (CameraAccessException | SecurityException e) {
+      throw new IOException(e);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ie);
+    }
+    if (callback.device == null) {
+      throw new IOException("Camera " + id + " failed to open: " + callback.error);
+    }
+    device = callback.device;
+    Log.i(TAG, "Opened camera " + id);
+  }
+
+  /**
+   * Uses the preview size, focus mode and frame rate range chosen on an earlier launch if there
+   * are any, otherwise chooses them from the camera's characteristics and keeps them for next time.
+   */
+  @Override
+  public synchronized void configure() {
+    WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+    Display display = manager.getDefaultDisplay();
+    Point theScreenResolution = new Point();
+    display.getSize(theScreenResolution);
+    screenResolution = theScreenResolution;
+
+    // Focus and frame rate only depend on the camera; the preferences are applied per request
+    CameraConfigCache cache = new CameraConfigCache(context, "camera2", cameraId, screenResolution, "");
+    long start = System.nanoTime();
+    String cached = cache.get();
+    boolean applied = false;
+    if (cached != null) {
+      // Preview size, focus mode, then the frame rate range
+      String[] parts = cached.split("\n", -1);
+      try {
+        cameraResolution = CameraConfigCache.parseSize(parts[0]);
+        focusMode = Integer.parseInt(parts[1]);
+        fpsRange = parts[2].isEmpty() ? null : Range.create(Integer.valueOf(parts[2]), Integer.valueOf(parts[3]));
+        applied = true;
+        cache.recordHit(System.nanoTime() - start);
+      } catch (RuntimeException re) {
+        Log.w(TAG, "Can't use cached configuration " + cached, re);
+        cache.remove();
+        start = System.nanoTime();
+      }
+    }
+    if (!applied) {
+      chooseSize();
+      focusMode = findFocusMode();
+      fpsRange = findFpsRange();
+      cache.put(CameraConfigCache.formatSize(cameraResolution) + '\n' + focusMode + '\n' +
+          (fpsRange == null ? "\n" : fpsRange.getLower() + "\n" + fpsRange.getUpper()),
+          System.nanoTime() - start);
+    }
+    Log.i(TAG, "Camera resolution: " + cameraResolution + ", focus mode " + focusMode + ", fps " + fpsRange);
+
+    Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+    realtimeTimestamps = timestampSource != null &&
+        timestampSource == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+    torch = FrontLightMode.readPref(prefs) == FrontLightMode.ON;
+
+    activeArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+    maxFocusRegions = orZero(characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF));
+    maxMeteringRegions = orZero(characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AE));
+    // Follows the same preference as the fixed areas of the old camera interface
+    focusAreas.setEnabled(activeArray != null && (maxFocusRegions > 0 || maxMeteringRegions > 0) &&
+        !prefs.getBoolean(PreferencesActivity.KEY_DISABLE_METERING, true));
+    regions = null;
+
+    Float maxZoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+    zoom.setMaxRatio(maxZoom == null ? 1.0 : maxZoom);
+    zoom.setEnabled(activeArray != null && prefs.getBoolean(PreferencesActivity.KEY_AUTO_ZOOM, false));
+    cropRegion = null;
+  }
+
+  private static int orZero(Integer value) {
+    return value == null ? 0 : value;
+  }
+
+  @Override
+  public synchronized void setPreviewDisplay(SurfaceHolder holder) {
+    this.holder = holder;
+    // Frames for the screen are then the size of those for decoding; the view scales them
+    holder.setFixedSize(cameraResolution.x, cameraResolution.y);
+  }
+
+  private void chooseSize() {
+    // Preview sizes are always landscape, whichever way the screen is held
+    Point screenResolutionForCamera = screenResolution.x < screenResolution.y ?
+        new Point(screenResolution.y, screenResolution.x) : new Point(screenResolution);
+
+    StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+    Size[] outputSizes = map.getOutputSizes(ImageFormat.YUV_420_888);
+    List<Point> candidates = new ArrayList<>(outputSizes.length);
+    for (Size size : outputSizes) {
+      if (size.getWidth() <= MAX_PREVIEW_WIDTH && size.getHeight() <= MAX_PREVIEW_HEIGHT &&
+          map.getOutputMinFrameDuration(ImageFormat.YUV_420_888, size) <= MAX_FRAME_DURATION_NANOS) {
+        candidates.add(new Point(size.getWidth(), size.getHeight()));
+      }
+    }
+    Point best = CameraConfigurationUtils.findBestPreviewSize(candidates, screenResolutionForCamera);
+    if (best == null) {
+      Size fallback = outputSizes[outputSizes.length - 1];
+      best = new Point(fallback.getWidth(), fallback.getHeight());
+      Log.i(TAG, "No suitable preview sizes, using " + best);
+    }
+    cameraResolution = best;
+  }
+
+  @Override
+  public synchronized boolean isOpen() {
+    return device != null;
+  }
+
+  @Override
+  public synchronized void close() {
+    stopPreview();
+    if (device != null) {
+      device.close();
+      device = null;
+    }
+    if (cameraThread != null) {
+      cameraThread.quitSafely();
+      cameraThread = null;
+      cameraHandler = null;
+    }
+  }
+
+  @Override
+  public synchronized void startPreview(int bufferCount) {
+    if (device == null || holder == null || stream != null) {
+      return;
+    }
+    final PreviewStream newStream = new PreviewStream(cameraResolution, bufferCount);
+    stream = newStream;
+    Surface previewSurface = holder.getSurface();
+    try {
+      device.createCaptureSession(Arrays.asList(previewSurface, newStream.reader.getSurface()),
+          new CameraCaptureSession.StateCallback() {
+            @Override
+            public void onConfigured(CameraCaptureSession configured) {
+              synchronized (Camera2Backend.this) {
+                if (stream != newStream) {
+                  // Stopped while configuring
+                  configured.close();
+                  return;
+                }
+                session = configured;
+                startRepeatingRequest();
+              }
+            }
+            @Override
+            public void onConfigureFailed(CameraCaptureSession failed) {
+              Log.w(TAG, "Camera rejected the preview configuration");
+              synchronized (Camera2Backend.this) {
+                if (stream != newStream) {
+                  return;
+                }
+              }
+              listener.onCameraLost("rejected the preview configuration");
+            }
+          }, cameraHandler);
+    } catch (CameraAccessException | IllegalStateException e) {
+      Log.w(TAG, "Can't start the preview", e);
+    }
+  }
+
+  /**
+   * (Re)starts the stream of preview frames with the current settings.
+   */
+  private void startRepeatingRequest() {
+    if (session == null) {
+      return;
+    }
+    try {
+      CaptureRequest.Builder builder = device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+      builder.addTarget(holder.getSurface());
+      builder.addTarget(stream.reader.getSurface());
+      SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+      if (prefs.getBoolean(PreferencesActivity.KEY_AUTO_FOCUS, true)) {
+        builder.set(CaptureRequest.CONTROL_AF_MODE, focusMode);
+      }
+      if (fpsRange != null) {
+        builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+      }
+      builder.set(CaptureRequest.FLASH_MODE,
+          torch ? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF);
+      if (cropRegion != null) {
+        builder.set(CaptureRequest.SCALER_CROP_REGION, cropRegion);
+      }
+      if (regions != null) {
+        if (maxFocusRegions > 0) {
+          builder.set(CaptureRequest.CONTROL_AF_REGIONS, regions);
+        }
+        if (maxMeteringRegions > 0) {
+          builder.set(CaptureRequest.CONTROL_AE_REGIONS, regions);
+        }
+      }
+      session.setRepeatingRequest(builder.build(), null, cameraHandler);
+      ScanMetrics.get().increment(ScanMetrics.Counter.CAMERA_PARAMETER_ROUND_TRIPS);
+    } catch (CameraAccessException | IllegalStateException e) {
+      Log.w(TAG, "Can't set the preview request", e);
+    }
+  }
+
+  /**
+   * @return continuous focus if the camera has it; otherwise it has a fixed focus, as
+   *  {@link #isSupported(Context, int)} leaves cameras which need focus triggering to the old API
+   */
+  private int findFocusMode() {
+    int[] modes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+    return contains(modes, CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE) ?
+        CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE : CameraMetadata.CONTROL_AF_MODE_OFF;
+  }
+
+  /**
+   * @return the range with the highest maximum frame rate and, among those, the highest minimum,
+   *  so exposure stays short enough for a moving hand; or null if the camera lists none
+   */
+  private Range<Integer> findFpsRange() {
+    Range<Integer>[] ranges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+    Range<Integer> best = null;
+    if (ranges != null) {
+      for (Range<Integer> range : ranges) {
+        if (best == null || range.getUpper() > best.getUpper() ||
+            (range.getUpper().equals(best.getUpper()) && range.getLower() > best.getLower())) {
+          best = range;
+        }
+      }
+    }
+    return best;
+  }
+
+  @Override
+  public synchronized void stopPreview() {
+    if (session != null) {
+      session.close();
+      session = null;
+    }
+    if (cameraHandler != null) {
+      cameraHandler.removeCallbacks(updateRequest);
+    }
+    requestUpdatePending = false;
+    if (stream != null) {
+      stream.stop();
+      stream = null;
+    }
+  }
+
+  @Override
+  public synchronized Point getCameraResolution() {
+    return cameraResolution;
+  }
+
+  @Override
+  public synchronized Point getScreenResolution() {
+    return screenResolution;
+  }
+
+  /**
+   * Replaces the repeating request on the camera thread, once for however many changes arrive
+   * before it gets there.
+   */
+  @Override
+  public synchronized void setTorch(boolean on) {
+    if (on != torch) {
+      torch = on;
+      requestUpdate();
+    }
+  }
+
+  private void requestUpdate() {
+    ScanMetrics.get().increment(ScanMetrics.Counter.CAMERA_PARAMETER_CHANGES);
+    if (session != null && !requestUpdatePending) {
+      requestUpdatePending = true;
+      cameraHandler.post(updateRequest);
+    }
+  }
+
+  /**
+   * There is no focus to trigger: the camera either focuses continuously, watching the scene
+   * itself, or has a fixed focus.
+   */
+  @Override
+  public synchronized void onFrame(CameraManager.FrameOutcome outcome, Rect target, float spread) {
+    zoom.onFrameOutcome(outcome);
+    if (outcome != CameraManager.FrameOutcome.BLURRY) {
+      focusAreas.setTarget(target, cameraResolution);
+      zoom.onSymbolSpread(spread);
+    }
+  }
+
+  /**
+   * @return the middle of the sensor, magnified {@code ratio} times; or null for all of it
+   */
+  private Rect toCropRegion(double ratio) {
+    if (ratio <= 1.0) {
+      return null;
+    }
+    int width = (int) (activeArray.width() / ratio);
+    int height = (int) (activeArray.height() / ratio);
+    int left = activeArray.left + (activeArray.width() - width) / 2;
+    int top = activeArray.top + (activeArray.height() - height) / 2;
+    return new Rect(left, top, left + width, top + height);
+  }
+
+  /**
+   * Maps an area from -1000 to 1000 across the preview onto the sensor. The preview shows the
+   * middle of the sensor, or of the zoomed crop, cut to the preview's aspect ratio.
+   */
+  private MeteringRectangle toRegion(Rect area) {
+    Rect field = cropRegion != null ? cropRegion : activeArray;
+    int width = field.width();
+    int height = field.height();
+    if ((long) width * cameraResolution.y > (long) height * cameraResolution.x) {
+      width = height * cameraResolution.x / cameraResolution.y;
+    } else {
+      height = width * cameraResolution.y / cameraResolution.x;
+    }
+    int left = field.left + (field.width() - width) / 2;
+    int top = field.top + (field.height() - height) / 2;
+    return new MeteringRectangle(
+        left + (area.left + 1000) * width / 2000,
+        top + (area.top + 1000) * height / 2000,
+        area.width() * width / 2000,
+        area.height() * height / 2000,
+        MeteringRectangle.METERING_WEIGHT_MAX);
+  }
+
+  @Override
+  public synchronized String getPreviewStats() {
+    return "images " + stream + "; focus areas " + focusAreas + "; " + zoom;
+  }
+
+  /**
+   * Sensor timestamps are in the elapsed realtime base on most devices; to compare them with
+   * {@link System#nanoTime()} they need moving over.
+   *
+   * @return how long ago, by {@link System#nanoTime()}, the frame began exposing; or -1 if the
+   *  timestamp can't be compared with the clock
+   */
+  private long nanosSinceExposure(long sensorTimestamp, long now) {
+    if (!realtimeTimestamps) {
+      return -1L;
+    }
+    return SystemClock.elapsedRealtimeNanos() - sensorTimestamp - (System.nanoTime() - now);
+  }
+
+  /**
+   * The camera stopped working after it was opened, so everything using it has to go.
+   */
+  private void onDeviceLost(CameraDevice camera, String reason) {
+    synchronized (this) {
+      if (device != camera) {
+        // Closed on purpose meanwhile
+        return;
+      }
+      stopPreview();
+      device = null;
+    }
+    listener.onCameraLost(reason);
+  }
+
+  /**
+   * Hears about the camera from opening it until it is closed.
+   */
+  private final class OpenCallback extends CameraDevice.StateCallback {
+
+    private final CountDownLatch opened = new CountDownLatch(1);
+    private volatile CameraDevice device;
+    private volatile int error;
+    // Set if open() gave up waiting; a camera which turns up afterwards has nobody to close it
+    private volatile boolean abandoned;
+
+    @Override
+    public void onOpened(CameraDevice camera) {
+      if (abandoned) {
+        camera.close();
+        return;
+      }
+      device = camera;
+      opened.countDown();
+    }
+
+    @Override
+    public void onDisconnected(CameraDevice camera) {
+      Log.w(TAG, "Camera disconnected");
+      camera.close();
+      onClosed(camera, "was disconnected");
+    }
+
+    @Override
+    public void onError(CameraDevice camera, int error) {
+      Log.w(TAG, "Camera error " + error);
+      this.error = error;
+      camera.close();
+      onClosed(camera, "failed with error " + error);
+    }
+
+    private void onClosed(CameraDevice camera, String reason) {
+      if (device == null) {
+        // Still opening; open() reports why it failed
+        opened.countDown();
+      } else {
+        // Waits for open() to finish, since it holds the backend's lock until then
+        onDeviceLost(camera, reason);
+      }
+    }
+  }
+
+  /**
+   * The reader frames arrive through during one run of the preview, and the frames which lend
+   * its images out. The reader outlives the preview until every frame is back, since closing it
+   * would free planes decoders may still be reading.
+   */
+  private final class PreviewStream implements ImageReader.OnImageAvailableListener, PreviewFrame.Owner {
+
+    private final ImageReader reader;
+    private final int frameCount;
+    private final Queue<PreviewFrame> freeFrames;
+    private boolean stopped;
+    private long framesCaptured;
+    private long framesDropped;
+
+    PreviewStream(Point size, int frameCount) {
+      this.frameCount = frameCount;
+      // One image more than frames, so the newest can be acquired while every frame is out
+      reader = ImageReader.newInstance(size.x, size.y, ImageFormat.YUV_420_888, frameCount + 1);
+      freeFrames = new ArrayDeque<>(frameCount);
+      for (int i = 0; i < frameCount; i++) {
+        freeFrames.add(new PreviewFrame(this));
+      }
+      reader.setOnImageAvailableListener(this, cameraHandler);
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader imageReader) {
+      long now = System.nanoTime();
+      PreviewFrame frame;
+      Image image;
+      synchronized (this) {
+        if (stopped) {
+          return;
+        }
+        try {
+          // Older images waiting behind this one would only be skipped by the scheduler anyway
+          image = reader.acquireLatestImage();
+        } catch (IllegalStateException ise) {
+          framesDropped++;
+          return;
+        }
+        if (image == null) {
+          return;
+        }
+        frame = freeFrames.poll();
+        if (frame == null) {
+          // Every frame is out; the camera keeps running, this one is just not decoded
+          image.close();
+          framesDropped++;
+          return;
+        }
+        framesCaptured++;
+      }
+      long sinceExposure = nanosSinceExposure(image.getTimestamp(), now);
+      if (sinceExposure >= 0L) {
+        ScanMetrics.get().recordNanos(ScanMetrics.Timer.SENSOR_TO_DELIVERY, sinceExposure);
+      }
+      Image.Plane luminance = image.getPlanes()[0];
+      frame.onCaptured(luminance.getBuffer(), luminance.getRowStride(), image,
+          image.getWidth(), image.getHeight(), now);
+      frameScheduler.offer(frame);
+    }
+
+    @Override
+    public synchronized void release(PreviewFrame frame) {
+      ((Image) frame.getHandle()).close();
+      freeFrames.add(frame);
+      if (stopped && freeFrames.size() == frameCount) {
+        reader.close();
+      }
+    }
+
+    synchronized void stop() {
+      stopped = true;
+      reader.setOnImageAvailableListener(null, null);
+      if (freeFrames.size() == frameCount) {
+        reader.close();
+      }
+    }
+
+    @Override
+    public synchronized String toString() {
+      return "captured=" + framesCaptured + " dropped=" + framesDropped;
+    }
+  }
+
+}
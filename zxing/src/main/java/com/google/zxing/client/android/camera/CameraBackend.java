@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.view.SurfaceHolder;
+
+import java.io.IOException;
+
+/**
+ * One of the camera APIs, as {@link CameraManager} drives it: open a camera, run its preview into a
+ * {@link FrameScheduler}, and switch the torch. Frames are given back through their
+ * {@link PreviewFrame.Owner}, which the backend provides. Opening and configuring happen on the
+ * camera thread, everything else on the main thread once the backend is open; calls other than
+ * frame releases and {@link #onFrame} never overlap.
+ */
+interface CameraBackend {
+
+  /**
+   * Told when an open camera stops working, say because another app took it, or won't run the
+   * preview after all. May be called on any thread; the backend still has to be closed.
+   */
+  interface Listener {
+
+    void onCameraLost(String reason);
+  }
+
+  /**
+   * Opens the camera. May block for a while, so it is called on the camera thread.
+   *
+   * @param cameraId index of the camera to open, or negative for the first one facing back
+   * @throws IOException if the camera can't be opened
+   */
+  void open(int cameraId) throws IOException;
+
+  /**
+   * Chooses the preview size and applies the settings from the preferences. Called on the camera
+   * thread right after {@link #open(int)}.
+   */
+  void configure();
+
+  /**
+   * Points the preview at {@code holder}, once its surface exists. Called on the main thread.
+   *
+   * @throws IOException if the camera won't draw into it
+   */
+  void setPreviewDisplay(SurfaceHolder holder) throws IOException;
+
+  boolean isOpen();
+
+  void close();
+
+  /**
+   * Starts delivering frames to the scheduler.
+   *
+   * @param bufferCount how many frames may be held by decoders, the scheduler and the camera at once
+   */
+  void startPreview(int bufferCount);
+
+  /**
+   * Stops delivering frames. Frames still held may be released afterwards.
+   */
+  void stopPreview();
+
+  /**
+   * @return size of the preview frames, or null before the camera was opened
+   */
+  Point getCameraResolution();
+
+  /**
+   * @return size of the screen in its current orientation, or null before the camera was opened
+   */
+  Point getScreenResolution();
+
+  void setTorch(boolean on);
+
+  /**
+   * Hears how a decoder got on with a frame, so the camera can refocus, aim focus and metering
+   * where a barcode seems to be, or zoom to a better size. Called from the decode threads while
+   * the preview runs, without any lock held, so the backend guards what this touches itself.
+   *
+   * @param outcome how decoding went
+   * @param target part of the preview frame where a barcode seems to be, or null if nothing has
+   *  been seen lately; ignored for {@link CameraManager.FrameOutcome#BLURRY} frames
+   * @param spread how far apart candidate result points were in recent frames, as a share of the
+   *  framing rect; 0 if too few were seen. Ignored for blurry frames too.
+   */
+  void onFrame(CameraManager.FrameOutcome outcome, Rect target, float spread);
+
+  /**
+   * @return summary of how preview frames have been delivered, for the log
+   */
+  String getPreviewStats();
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Point;
+import android.os.Build;
+import android.util.Log;
+import com.google.zxing.client.android.ScanMetrics;
+
+/**
+ * Remembers, across launches, what was negotiated with one camera: the preview size and whatever
+ * settings the capability lists led to. Each entry is keyed by backend, camera, screen size and the
+ * preferences which feed into it, so a change to any of them misses; the whole store is dropped
+ * when the build fingerprint changes, since an OS update can change what the camera driver
+ * offers. A backend which finds its entry can apply it without reading the capability lists, and
+ * one which sees the camera reject an entry just removes it and negotiates again.
+ *
+ * <p>Every launch records a hit or a miss; a hit also records how much quicker it was than the
+ * negotiation which produced the entry.</p>
+ */
+final class CameraConfigCache {
+
+  private static final String TAG = CameraConfigCache.class.getSimpleName();
+
+  private static final String PREFS_NAME = "camera_config_cache";
+  private static final int VERSION = 1;
+  private static final String KEY_FINGERPRINT = "fingerprint";
+  private static final String CONFIG_SUFFIX = ".config";
+  private static final String NANOS_SUFFIX = ".nanos";
+
+  private final SharedPreferences prefs;
+  private final String key;
+
+  /**
+   * @param backend which camera API the entry is for
+   * @param cameraId the camera's ID in that API
+   * @param screenResolution screen size in its current orientation
+   * @param settings every preference the negotiation depends on, in a fixed order
+   */
+  CameraConfigCache(Context context, String backend, String cameraId, Point screenResolution, String settings) {
+    prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    String fingerprint = VERSION + "/" + Build.FINGERPRINT;
+    if (!fingerprint.equals(prefs.getString(KEY_FINGERPRINT, null))) {
+      prefs.edit().clear().putString(KEY_FINGERPRINT, fingerprint).apply();
+    }
+    key = backend + '/' + cameraId + '/' + screenResolution.x + 'x' + screenResolution.y + '/' + settings;
+  }
+
+  /**
+   * @return the configuration stored for this camera, or null if there is none yet
+   */
+  String get() {
+    return prefs.getString(key + CONFIG_SUFFIX, null);
+  }
+
+  /**
+   * Stores a freshly negotiated configuration, and records a miss.
+   *
+   * @param negotiationNanos how long negotiating it took
+   */
+  void put(String config, long negotiationNanos) {
+    prefs.edit()
+        .putString(key + CONFIG_SUFFIX, config)
+        .putLong(key + NANOS_SUFFIX, negotiationNanos)
+        .apply();
+    ScanMetrics.get().increment(ScanMetrics.Counter.CAMERA_CONFIG_CACHE_MISSES);
+    Log.i(TAG, "Negotiated camera configuration in " + negotiationNanos / 1000000L + "ms; cached");
+  }
+
+  /**
+   * Records that the stored configuration was applied, and how long that took.
+   */
+  void recordHit(long applyNanos) {
+    long saved = prefs.getLong(key + NANOS_SUFFIX, 0L) - applyNanos;
+    ScanMetrics metrics = ScanMetrics.get();
+    metrics.increment(ScanMetrics.Counter.CAMERA_CONFIG_CACHE_HITS);
+    if (saved > 0L) {
+      metrics.recordNanos(ScanMetrics.Timer.CAMERA_CONFIG_SAVED, saved);
+    }
+    Log.i(TAG, "Applied cached camera configuration in " + applyNanos / 1000000L + "ms, " +
+        saved / 1000000L + "ms quicker than negotiating it");
+  }
+
+  static String formatSize(Point size) {
+    return size.x + "x" + size.y;
+  }
+
+  /**
+   * @throws NumberFormatException if {@code size} didn't come from {@link #formatSize(Point)}
+   */
+  static Point parseSize(String size) {
+    int x = size.indexOf('x');
+    if (x < 0) {
+      throw new NumberFormatException("Not a size: " + size);
+    }
+    return new Point(Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1)));
+  }
+
+  /**
+   * Forgets the stored configuration, for example because the camera no longer accepts it.
+   */
+  void remove() {
+    prefs.edit().remove(key + CONFIG_SUFFIX).remove(key + NANOS_SUFFIX).apply();
+  }
+
+}
@@ -57,7 +57,14 @@ final class CameraConfigurationManager {
      * Reads, one time, values from the camera that are needed by the app.
      */
     void initFromCameraParameters(OpenCamera camera) {
-        Camera.Parameters parameters = camera.getCamera().getParameters();
+        initDisplay(camera);
+        initPreviewSize(camera, null);
+    }
+
+    /**
+     * Works out how the camera is turned relative to the screen, and the size of the screen.
+     */
+    void initDisplay(OpenCamera camera) {
         WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         Display display = manager.getDefaultDisplay();
 
@@ -124,6 +131,15 @@ final class CameraConfigurationManager {
         display.getSize(theScreenResolution);
         screenResolution = theScreenResolution;
         Log.i(TAG, "Screen resolution in current orientation: " + screenResolution);
+    }
+
+    /**
+     * Chooses the preview size, unless an earlier launch already did. Call after
+     * {@link #initDisplay(OpenCamera)}.
+     *
+     * @param knownPreviewSize preview size negotiated with this camera before, or null to choose one
+     */
+    void initPreviewSize(OpenCamera camera, Point knownPreviewSize) {
 
         /** 因为换成了竖屏显示，所以不替换屏幕宽高得出的预览图是变形的 */
         Point screenResolutionForCamera = new Point();
@@ -135,9 +151,14 @@ final class CameraConfigurationManager {
             screenResolutionForCamera.y = screenResolution.x;
         }
 
-        cameraResolution = findBestPreviewSizeValue(parameters, screenResolutionForCamera);
+        if (knownPreviewSize != null) {
+            cameraResolution = new Point(knownPreviewSize);
+        } else {
+            Camera.Parameters parameters = camera.getCamera().getParameters();
+            cameraResolution = findBestPreviewSizeValue(parameters, screenResolutionForCamera);
+        }
         Log.i(TAG, "Camera resolution: " + cameraResolution);
-        bestPreviewSize = findBestPreviewSizeValue(parameters, screenResolutionForCamera);
+        bestPreviewSize = new Point(cameraResolution);
         Log.i(TAG, "Best available preview size: " + bestPreviewSize);
 
         boolean isScreenPortrait = screenResolutionForCamera.x < screenResolutionForCamera.y;
@@ -217,6 +238,38 @@ final class CameraConfigurationManager {
         theCamera.setDisplayOrientation(90);
     }
 
+    /**
+     * Applies parameters negotiated on an earlier launch in one go, without reading any of the
+     * camera's capability lists.
+     *
+     * @param flattened the parameters which negotiation changed, flattened
+     * @throws RuntimeException if the camera rejects them
+     */
+    void setCachedCameraParameters(OpenCamera camera, String flattened) {
+        Camera theCamera = camera.getCamera();
+        Camera.Parameters parameters = theCamera.getParameters();
+        CameraConfigurationUtils.applyFlattened(parameters, flattened);
+        theCamera.setParameters(parameters);
+
+        /** 设置相机预览为竖屏 */
+        theCamera.setDisplayOrientation(90);
+    }
+
+    /**
+     * @return every preference {@link #setDesiredCameraParameters(OpenCamera, boolean)} reads, so
+     *  parameters negotiated under other settings aren't reused
+     */
+    String describeSettings() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return FrontLightMode.readPref(prefs) + "," +
+                prefs.getBoolean(PreferencesActivity.KEY_AUTO_FOCUS, true) + ',' +
+                prefs.getBoolean(PreferencesActivity.KEY_DISABLE_CONTINUOUS_FOCUS, true) + ',' +
+                prefs.getBoolean(PreferencesActivity.KEY_INVERT_SCAN, false) + ',' +
+                prefs.getBoolean(PreferencesActivity.KEY_DISABLE_BARCODE_SCENE_MODE, true) + ',' +
+                prefs.getBoolean(PreferencesActivity.KEY_DISABLE_METERING, true) + ',' +
+                prefs.getBoolean(PreferencesActivity.KEY_DISABLE_EXPOSURE, true);
+    }
+
     Point getBestPreviewSize() {
         return bestPreviewSize;
     }
@@ -237,23 +290,12 @@ final class CameraConfigurationManager {
         return cwNeededRotation;
     }
 
-    boolean getTorchState(Camera camera) {
-        if (camera != null) {
-            Camera.Parameters parameters = camera.getParameters();
-            if (parameters != null) {
-                String flashMode = parameters.getFlashMode();
-                return
-                        Camera.Parameters.FLASH_MODE_ON.equals(flashMode) ||
-                                Camera.Parameters.FLASH_MODE_TORCH.equals(flashMode);
-            }
-        }
-        return false;
-    }
-
-    void setTorch(Camera camera, boolean newSetting) {
-        Camera.Parameters parameters = camera.getParameters();
+    /**
+     * Switches the torch in {@code parameters}, with the exposure to match; the caller sends them
+     * to the camera.
+     */
+    void setTorch(Camera.Parameters parameters, boolean newSetting) {
         doSetTorch(parameters, newSetting, false);
-        camera.setParameters(parameters);
     }
 
     private void initializeTorch(Camera.Parameters parameters, SharedPreferences prefs, boolean safeMode) {
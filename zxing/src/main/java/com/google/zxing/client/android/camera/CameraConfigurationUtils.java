@@ -22,11 +22,14 @@ import android.hardware.Camera;
 import android.os.Build;
 import android.util.Log;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
@@ -187,6 +190,13 @@ public final class CameraConfigurationUtils {
     }
   }
 
+  /**
+   * @return the fixed area in the middle of the preview which focus and metering default to
+   */
+  static List<Camera.Area> buildMiddleArea() {
+    return buildMiddleArea(AREA_PER_1000);
+  }
+
   private static List<Camera.Area> buildMiddleArea(int areaPer1000) {
     return Collections.singletonList(
         new Camera.Area(new Rect(-areaPer1000, -areaPer1000, areaPer1000, areaPer1000), 1));
@@ -282,10 +292,39 @@ public final class CameraConfigurationUtils {
       return new Point(defaultSize.width, defaultSize.height);
     }
 
+    List<Point> supportedSizes = new ArrayList<>(rawSupportedSizes.size());
+    for (Camera.Size size : rawSupportedSizes) {
+      supportedSizes.add(new Point(size.width, size.height));
+    }
+    Point bestSize = findBestPreviewSize(supportedSizes, screenResolution);
+    if (bestSize != null) {
+      return bestSize;
+    }
+
+    // If there is nothing at all suitable, return current preview size
+    Camera.Size defaultPreview = parameters.getPreviewSize();
+    if (defaultPreview == null) {
+      throw new IllegalStateException("Parameters contained no preview size!");
+    }
+    Point defaultSize = new Point(defaultPreview.width, defaultPreview.height);
+    Log.i(TAG, "No suitable preview sizes, using default: " + defaultSize);
+    return defaultSize;
+  }
+
+  /**
+   * Picks the preview size to use out of those a camera supports, whichever camera API they came
+   * from: one exactly the size of the screen if there is one, otherwise the largest with nearly
+   * the screen's aspect ratio.
+   *
+   * @param supportedSizes preview sizes the camera supports
+   * @param screenResolution screen size in landscape
+   * @return the best size, or null if none is suitable
+   */
+  static Point findBestPreviewSize(Collection<Point> supportedSizes, Point screenResolution) {
     if (Log.isLoggable(TAG, Log.INFO)) {
       StringBuilder previewSizesString = new StringBuilder();
-      for (Camera.Size size : rawSupportedSizes) {
-        previewSizesString.append(size.width).append('x').append(size.height).append(' ');
+      for (Point size : supportedSizes) {
+        previewSizesString.append(size.x).append('x').append(size.y).append(' ');
       }
       Log.i(TAG, "Supported preview sizes: " + previewSizesString);
     }
@@ -294,10 +333,10 @@ public final class CameraConfigurationUtils {
 
     // Find a suitable size, with max resolution
     int maxResolution = 0;
-    Camera.Size maxResPreviewSize = null;
-    for (Camera.Size size : rawSupportedSizes) {
-      int realWidth = size.width;
-      int realHeight = size.height;
+    Point maxResPreviewSize = null;
+    for (Point size : supportedSizes) {
+      int realWidth = size.x;
+      int realHeight = size.y;
       int resolution = realWidth * realHeight;
       if (resolution < MIN_PREVIEW_PIXELS) {
         continue;
@@ -329,19 +368,11 @@ public final class CameraConfigurationUtils {
     // of the additional computation needed. We're likely to get here on newer Android 4+ devices, where
     // the CPU is much more powerful.
     if (maxResPreviewSize != null) {
-      Point largestSize = new Point(maxResPreviewSize.width, maxResPreviewSize.height);
+      Point largestSize = new Point(maxResPreviewSize);
       Log.i(TAG, "Using largest suitable preview size: " + largestSize);
       return largestSize;
     }
-
-    // If there is nothing at all suitable, return current preview size
-    Camera.Size defaultPreview = parameters.getPreviewSize();
-    if (defaultPreview == null) {
-      throw new IllegalStateException("Parameters contained no preview size!");
-    }
-    Point defaultSize = new Point(defaultPreview.width, defaultPreview.height);
-    Log.i(TAG, "No suitable preview sizes, using default: " + defaultSize);
-    return defaultSize;
+    return null;
   }
 
   private static String findSettableValue(String name,
@@ -389,6 +420,45 @@ public final class CameraConfigurationUtils {
     return result.toString();
   }
 
+  /**
+   * @param before flattened parameters as they were
+   * @param after flattened parameters as they are now
+   * @return the parameters which changed or appeared, flattened the same way
+   */
+  static String diffFlattened(String before, String after) {
+    Map<String,String> old = new HashMap<>();
+    for (String entry : SEMICOLON.split(before)) {
+      int equals = entry.indexOf('=');
+      if (equals > 0) {
+        old.put(entry.substring(0, equals), entry.substring(equals + 1));
+      }
+    }
+    StringBuilder diff = new StringBuilder();
+    for (String entry : SEMICOLON.split(after)) {
+      int equals = entry.indexOf('=');
+      if (equals > 0 && !entry.substring(equals + 1).equals(old.get(entry.substring(0, equals)))) {
+        if (diff.length() > 0) {
+          diff.append(';');
+        }
+        diff.append(entry);
+      }
+    }
+    return diff.toString();
+  }
+
+  /**
+   * Sets every parameter in {@code flattened}, as returned by {@link #diffFlattened(String, String)},
+   * leaving the rest alone.
+   */
+  static void applyFlattened(Camera.Parameters parameters, String flattened) {
+    for (String entry : SEMICOLON.split(flattened)) {
+      int equals = entry.indexOf('=');
+      if (equals > 0) {
+        parameters.set(entry.substring(0, equals), entry.substring(equals + 1));
+      }
+    }
+  }
+
   public static String collectStats(Camera.Parameters parameters) {
     return collectStats(parameters.flatten());
   }
@@ -17,26 +17,30 @@
 package com.google.zxing.client.android.camera;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.graphics.Point;
 import android.graphics.Rect;
-import android.hardware.Camera;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.client.android.camera.open.OpenCamera;
+import com.google.zxing.client.android.PreferencesActivity;
+import com.google.zxing.client.android.ScanMetrics;
 import com.google.zxing.client.android.camera.open.OpenCameraInterface;
 
 import java.io.IOException;
 
 /**
- * This object wraps the Camera service object and expects to be the only one talking to it. The
+ * This object wraps the camera and expects to be the only one talking to it. The
  * implementation encapsulates the steps needed to take preview-sized images, which are used for
- * both preview and decoding.
+ * both preview and decoding. The Camera2 API is used where the device implements it fully, the
+ * original camera API everywhere else.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
-@SuppressWarnings("deprecation") // camera APIs
 public final class CameraManager {
 
   private static final String TAG = CameraManager.class.getSimpleName();
@@ -47,107 +51,267 @@ public final class CameraManager {
   private static final int MAX_FRAME_HEIGHT = 675; // = 5/8 * 1080
 
   private final Context context;
-  private final CameraConfigurationManager configManager;
-  private OpenCamera camera;
-  private AutoFocusManager autoFocusManager;
+  private CameraBackend backend;
   private Rect framingRect;
   private Rect framingRectInPreview;
-  private boolean initialized;
   private boolean previewing;
   private int requestedCameraId = OpenCameraInterface.NO_REQUESTED_CAMERA;
   private int requestedFramingRectWidth;
   private int requestedFramingRectHeight;
+  private int previewBufferCount = PreviewBufferPool.DEFAULT_BUFFER_COUNT;
+  private final Handler mainHandler;
+  private HandlerThread cameraThread;
+  private Handler cameraHandler;
+  private boolean opening;
+  // Bumped by every close, so an open which finishes afterwards knows it is no longer wanted
+  private int openGeneration;
   /**
-   * Preview frames are delivered here, which we pass on to the registered handler. Make sure to
-   * clear the handler so it will only receive one message.
+   * The backend delivers preview frames here. It hands each decoder that asks the latest frame
+   * available.
    */
-  private final PreviewCallback previewCallback;
+  private final FrameScheduler frameScheduler;
+  private FrameRecorder frameRecorder;
+  // The backend while its preview runs, for reports from the decoders, which don't take the lock
+  private volatile CameraBackend previewBackend;
 
   public CameraManager(Context context) {
     this.context = context;
-    this.configManager = new CameraConfigurationManager(context);
-    previewCallback = new PreviewCallback(configManager);
+    frameScheduler = new FrameScheduler();
+    mainHandler = new Handler(Looper.getMainLooper());
   }
-  
+
+  /**
+   * Told on the main thread how opening the camera went, and if it stops working later on.
+   */
+  public interface OpenCallback {
+
+    void onCameraOpened();
+
+    void onCameraOpenFailed(Exception e);
+
+    /**
+     * The camera stopped working while open, and has been closed.
+     */
+    void onCameraLost(Exception e);
+  }
+
+  /**
+   * How a decoder got on with a preview frame, as far as focusing is concerned.
+   */
+  public enum FrameOutcome {
+    /** Rejected as much blurrier than recent frames. */
+    BLURRY,
+    /** Decoded without finding anything. */
+    NO_RESULT,
+    /** Decoded with a barcode found. */
+    RESULT,
+  }
+
   /**
-   * Opens the camera driver and initializes the hardware parameters.
+   * Opens and configures the camera on the camera thread, so the main thread can get on with
+   * laying out the screen meanwhile. The callback is not called if the driver is closed first.
+   * Once the camera is open, {@link #setPreviewDisplay(SurfaceHolder)} connects it to the screen.
    *
-   * @param holder The surface object which the camera will draw preview frames into.
-   * @throws IOException Indicates the camera driver failed to open.
+   * @param callback told on the main thread when the camera is ready, or why it isn't
    */
-  public synchronized void openDriver(SurfaceHolder holder) throws IOException {
-    OpenCamera theCamera = camera;
-    if (theCamera == null) {
-      theCamera = OpenCameraInterface.open(requestedCameraId);
-      if (theCamera == null) {
-        throw new IOException("Camera.open() failed to return object from driver");
+  public synchronized void openDriverAsync(final OpenCallback callback) {
+    if (backend != null || opening) {
+      return;
+    }
+    opening = true;
+    final long requestedNanos = System.nanoTime();
+    final int cameraId = requestedCameraId;
+    final int generation = openGeneration;
+    if (cameraThread == null) {
+      cameraThread = new HandlerThread("Camera");
+      cameraThread.start();
+      cameraHandler = new Handler(cameraThread.getLooper());
+    }
+    frameScheduler.expectFirstFrame(requestedNanos);
+    cameraHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        openOnCameraThread(cameraId, generation, requestedNanos, callback);
       }
-      camera = theCamera;
+    });
+  }
+
+  private void openOnCameraThread(int cameraId, final int generation, long requestedNanos,
+                                  final OpenCallback callback) {
+    // Runs without holding the lock, so the main thread never waits for the camera
+    CameraBackend newBackend = createBackend(cameraId, generation, callback);
+    Exception failure = openBackend(newBackend, cameraId, requestedNanos);
+    if (failure != null && newBackend instanceof Camera2Backend) {
+      Log.w(TAG, "Camera2 failed; falling back to the original camera API", failure);
+      newBackend = new LegacyCameraBackend(context, frameScheduler);
+      failure = openBackend(newBackend, cameraId, requestedNanos);
     }
 
-    if (!initialized) {
-      initialized = true;
-      configManager.initFromCameraParameters(theCamera);
-      if (requestedFramingRectWidth > 0 && requestedFramingRectHeight > 0) {
-        setManualFramingRect(requestedFramingRectWidth, requestedFramingRectHeight);
-        requestedFramingRectWidth = 0;
-        requestedFramingRectHeight = 0;
+    synchronized (this) {
+      if (generation != openGeneration) {
+        // Closed while we were opening
+        if (failure == null) {
+          newBackend.close();
+        }
+        return;
+      }
+      opening = false;
+      if (failure == null) {
+        backend = newBackend;
+        if (requestedFramingRectWidth > 0 && requestedFramingRectHeight > 0) {
+          setManualFramingRect(requestedFramingRectWidth, requestedFramingRectHeight);
+          requestedFramingRectWidth = 0;
+          requestedFramingRectHeight = 0;
+        }
       }
     }
 
-    Camera cameraObject = theCamera.getCamera();
-    Camera.Parameters parameters = cameraObject.getParameters();
-    String parametersFlattened = parameters == null ? null : parameters.flatten(); // Save these, temporarily
+    final Exception result = failure;
+    mainHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (CameraManager.this) {
+          if (generation != openGeneration) {
+            return;
+          }
+        }
+        if (result == null) {
+          callback.onCameraOpened();
+        } else {
+          callback.onCameraOpenFailed(result);
+        }
+      }
+    });
+  }
+
+  /**
+   * Opens and configures a backend.
+   *
+   * @return why it failed, or null if it didn't; a backend which failed has been closed again
+   */
+  private Exception openBackend(CameraBackend newBackend, int cameraId, long requestedNanos) {
     try {
-      configManager.setDesiredCameraParameters(theCamera, false);
-    } catch (RuntimeException re) {
-      // Driver failed
-      Log.w(TAG, "Camera rejected parameters. Setting only minimal safe-mode parameters");
-      Log.i(TAG, "Resetting to saved camera params: " + parametersFlattened);
-      // Reset:
-      if (parametersFlattened != null) {
-        parameters = cameraObject.getParameters();
-        parameters.unflatten(parametersFlattened);
-        try {
-          cameraObject.setParameters(parameters);
-          configManager.setDesiredCameraParameters(theCamera, true);
-        } catch (RuntimeException re2) {
-          // Well, darn. Give up
-          Log.w(TAG, "Camera rejected even safe-mode parameters! No configuration");
+      long start = System.nanoTime();
+      newBackend.open(cameraId);
+      long opened = System.nanoTime();
+      newBackend.configure();
+      long configured = System.nanoTime();
+      ScanMetrics metrics = ScanMetrics.get();
+      metrics.recordNanos(ScanMetrics.Timer.CAMERA_OPEN, opened - start);
+      metrics.recordNanos(ScanMetrics.Timer.CAMERA_CONFIGURE, configured - opened);
+      Log.i(TAG, "Camera ready " + (configured - requestedNanos) / 1000000L + "ms after it was asked for: " +
+          "waited " + (start - requestedNanos) / 1000000L + "ms, opened in " + (opened - start) / 1000000L +
+          "ms, configured in " + (configured - opened) / 1000000L + "ms");
+    } catch (IOException | RuntimeException e) {
+      newBackend.close();
+      return e;
+    }
+    return null;
+  }
+
+  private CameraBackend createBackend(int cameraId, final int generation, final OpenCallback callback) {
+    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+    CameraBackend newBackend;
+    if (!prefs.getBoolean(PreferencesActivity.KEY_LEGACY_CAMERA, false) &&
+        Camera2Backend.isSupported(context, cameraId)) {
+      newBackend = new Camera2Backend(context, frameScheduler, new CameraBackend.Listener() {
+        @Override
+        public void onCameraLost(String reason) {
+          onBackendLost(generation, callback, reason);
         }
+      });
+    } else {
+      newBackend = new LegacyCameraBackend(context, frameScheduler);
+    }
+    Log.i(TAG, "Using " + newBackend.getClass().getSimpleName());
+    return newBackend;
+  }
+
+  /**
+   * Closes a backend whose camera stopped working, and tells the callback on the main thread.
+   */
+  private void onBackendLost(final int generation, final OpenCallback callback, final String reason) {
+    synchronized (this) {
+      if (generation != openGeneration || backend == null) {
+        // Closed on purpose meanwhile
+        return;
+      }
+      Log.w(TAG, "Camera " + reason + " while open");
+      previewBackend = null;
+      backend.close();
+      backend = null;
+      if (previewing) {
+        frameScheduler.clear();
+        previewing = false;
+        closeFrameRecorder();
       }
     }
-    cameraObject.setPreviewDisplay(holder);
+    mainHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (CameraManager.this) {
+          if (generation != openGeneration) {
+            return;
+          }
+        }
+        callback.onCameraLost(new IOException("Camera " + reason));
+      }
+    });
+  }
 
+  /**
+   * Points the open camera's preview at a surface.
+   *
+   * @param holder The surface object which the camera will draw preview frames into.
+   * @throws IOException Indicates the camera won't draw into it.
+   */
+  public synchronized void setPreviewDisplay(SurfaceHolder holder) throws IOException {
+    if (isOpen()) {
+      backend.setPreviewDisplay(holder);
+    }
   }
 
   public synchronized boolean isOpen() {
-    return camera != null;
+    return backend != null && backend.isOpen();
   }
 
   /**
-   * Closes the camera driver if still in use.
+   * Closes the camera driver if still in use, or abandons opening it.
    */
   public synchronized void closeDriver() {
-    if (camera != null) {
-      camera.getCamera().release();
-      camera = null;
+    openGeneration++;
+    opening = false;
+    previewBackend = null;
+    if (isOpen()) {
+      backend.close();
+      backend = null;
       // Make sure to clear these each time we close the camera, so that any scanning rect
       // requested by intent is forgotten.
       framingRect = null;
       framingRectInPreview = null;
     }
+    if (cameraThread != null) {
+      // An open still in progress finishes first, then closes what it opened
+      cameraThread.quitSafely();
+      cameraThread = null;
+      cameraHandler = null;
+    }
   }
 
   /**
    * Asks the camera hardware to begin drawing preview frames to the screen.
    */
   public synchronized void startPreview() {
-    OpenCamera theCamera = camera;
-    if (theCamera != null && !previewing) {
-      theCamera.getCamera().startPreview();
+    if (isOpen() && !previewing) {
+      Point cameraResolution = backend.getCameraResolution();
+      SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+      if (cameraResolution != null && prefs.getBoolean(PreferencesActivity.KEY_RECORD_FRAMES, false)) {
+        frameRecorder = FrameRecorder.open(context, cameraResolution, getFramingRectInPreview());
+        frameScheduler.setRecorder(frameRecorder);
+      }
+      backend.startPreview(previewBufferCount);
       previewing = true;
-      autoFocusManager = new AutoFocusManager(context, theCamera.getCamera());
+      previewBackend = backend;
     }
   }
 
@@ -155,14 +319,22 @@ public final class CameraManager {
    * Tells the camera to stop drawing preview frames.
    */
   public synchronized void stopPreview() {
-    if (autoFocusManager != null) {
-      autoFocusManager.stop();
-      autoFocusManager = null;
-    }
-    if (camera != null && previewing) {
-      camera.getCamera().stopPreview();
-      previewCallback.setHandler(null, 0);
+    if (isOpen() && previewing) {
+      previewBackend = null;
+      backend.stopPreview();
+      // Frames which were waiting go back now; the backend no longer hands them to the camera
+      frameScheduler.clear();
       previewing = false;
+      closeFrameRecorder();
+      Log.i(TAG, "Preview " + backend.getPreviewStats() + "; frames: " + frameScheduler);
+    }
+  }
+
+  private void closeFrameRecorder() {
+    if (frameRecorder != null) {
+      frameScheduler.setRecorder(null);
+      frameRecorder.close();
+      frameRecorder = null;
     }
   }
 
@@ -172,37 +344,94 @@ public final class CameraManager {
    * @param newSetting if {@code true}, light should be turned on if currently off. And vice versa.
    */
   public synchronized void setTorch(boolean newSetting) {
-    OpenCamera theCamera = camera;
-    if (theCamera != null && newSetting != configManager.getTorchState(theCamera.getCamera())) {
-      boolean wasAutoFocusManager = autoFocusManager != null;
-      if (wasAutoFocusManager) {
-        autoFocusManager.stop();
-        autoFocusManager = null;
-      }
-      configManager.setTorch(theCamera.getCamera(), newSetting);
-      if (wasAutoFocusManager) {
-        autoFocusManager = new AutoFocusManager(context, theCamera.getCamera());
-        autoFocusManager.start();
-      }
+    if (isOpen()) {
+      backend.setTorch(newSetting);
     }
   }
 
   /**
-   * A single preview frame will be returned to the handler supplied. The data will arrive as byte[]
-   * in the message.obj field, with width and height encoded as message.arg1 and message.arg2,
-   * respectively.
+   * Tells the camera how a decoder got on with a frame, so it can refocus, focus and meter on the
+   * part of the picture where a barcode seems to be, or zoom so the barcode fills a good part of
+   * the framing rect. Called by the decoders for every frame they look at, so it doesn't take
+   * this object's lock; the camera decides how often to act.
+   *
+   * @param outcome how decoding went
+   * @param target where in the preview frame recent frames showed something barcode-like, or
+   *  null if they didn't; ignored for {@link FrameOutcome#BLURRY} frames
+   * @param spread how far apart candidate result points were in recent frames, as a share of the
+   *  framing rect along the axis they spread most; 0 if too few were seen. Ignored for blurry
+   *  frames too.
+   */
+  public void reportFrame(FrameOutcome outcome, Rect target, float spread) {
+    CameraBackend theBackend = previewBackend;
+    if (theBackend != null) {
+      theBackend.onFrame(outcome, target, spread);
+    }
+  }
+
+  /**
+   * A single preview frame will be returned to the handler supplied: the most recent one already
+   * captured if nobody has taken it yet, otherwise the next one the camera delivers. The frame
+   * will arrive as a {@link PreviewFrame} in the message.obj field, with the request's tag in
+   * message.arg1. It holds memory the camera fills and must be handed back with
+   * {@link #releasePreviewFrame(PreviewFrame)} once the receiver is done with it.
+   * Several requests may be outstanding at once; each is served by its own frame.
    *
    * @param handler The handler to send the message to.
    * @param message The what field of the message to be sent.
+   * @param tag Anything the caller needs back with the frame, such as which round of requests
+   *  it belongs to.
    */
-  public synchronized void requestPreviewFrame(Handler handler, int message) {
-    OpenCamera theCamera = camera;
-    if (theCamera != null && previewing) {
-      previewCallback.setHandler(handler, message);
-      theCamera.getCamera().setOneShotPreviewCallback(previewCallback);
+  public synchronized void requestPreviewFrame(Handler handler, int message, int tag) {
+    if (isOpen() && previewing) {
+      frameScheduler.request(handler, message, tag);
     }
   }
 
+  /**
+   * Forgets any frame requests which haven't been served yet, and drops the frame waiting to be
+   * decoded, if any.
+   */
+  public synchronized void cancelPreviewFrameRequests() {
+    frameScheduler.clear();
+  }
+
+  /**
+   * Sets how many preview frames circulate between the camera and the decoders. There should be
+   * at least one more than the number of frames which can be in flight at once, so the camera
+   * always has somewhere to write. Takes effect the next time the preview starts.
+   *
+   * @param count number of frames
+   */
+  public synchronized void setPreviewBufferCount(int count) {
+    previewBufferCount = Math.max(2, count);
+  }
+
+  /**
+   * Returns a frame delivered by {@link #requestPreviewFrame(Handler, int, int)} to the camera so it
+   * can be filled again. The caller must not touch the frame afterwards. May be called after the
+   * preview has stopped.
+   *
+   * @param frame The preview frame which is no longer needed.
+   */
+  public void releasePreviewFrame(PreviewFrame frame) {
+    frame.release();
+  }
+
+  /**
+   * @return how many preview frames the camera has delivered, whether or not they were decoded
+   */
+  public long getPreviewFramesDelivered() {
+    return frameScheduler.getFramesOffered();
+  }
+
+  /**
+   * @return how many preview frames were replaced by a newer one before any decoder took them
+   */
+  public long getPreviewFramesSkipped() {
+    return frameScheduler.getFramesReplaced();
+  }
+
   /**
    * Calculates the framing rect which the UI should draw to show the user where to place the
    * barcode. This target helps with alignment as well as forces the user to hold the device
@@ -212,10 +441,10 @@ public final class CameraManager {
    */
   public synchronized Rect getFramingRect() {
     if (framingRect == null) {
-      if (camera == null) {
+      if (!isOpen()) {
         return null;
       }
-      Point screenResolution = configManager.getScreenResolution();
+      Point screenResolution = backend.getScreenResolution();
       if (screenResolution == null) {
         // Called early, before init even finished
         return null;
@@ -256,8 +485,8 @@ public final class CameraManager {
         return null;
       }
       Rect rect = new Rect(framingRect);
-      Point cameraResolution = configManager.getCameraResolution();
-      Point screenResolution = configManager.getScreenResolution();
+      Point cameraResolution = backend.getCameraResolution();
+      Point screenResolution = backend.getScreenResolution();
       if (cameraResolution == null || screenResolution == null) {
         // Called early, before init even finished
         return null;
@@ -290,8 +519,8 @@ public final class CameraManager {
    * @param height The height in pixels to scan.
    */
   public synchronized void setManualFramingRect(int width, int height) {
-    if (initialized) {
-      Point screenResolution = configManager.getScreenResolution();
+    if (isOpen()) {
+      Point screenResolution = backend.getScreenResolution();
       if (width > screenResolution.x) {
         width = screenResolution.x;
       }
@@ -328,4 +557,27 @@ public final class CameraManager {
                                         rect.width(), rect.height(), false);
   }
 
+  /**
+   * Like {@link #buildLuminanceSource(byte[], int, int)}, but reads the frame where the camera
+   * left it, and points {@code reuse} at it instead of wrapping it in a new object as long as the
+   * framing rectangle still has its size.
+   *
+   * @param frame A preview frame.
+   * @param reuse The source returned for the previous frame, or null.
+   * @return {@code reuse} or, if it could not be reused, a new source.
+   */
+  public ReusableYUVLuminanceSource buildLuminanceSource(PreviewFrame frame, ReusableYUVLuminanceSource reuse) {
+    Rect rect = getFramingRectInPreview();
+    if (rect == null) {
+      return null;
+    }
+    ReusableYUVLuminanceSource source = reuse;
+    if (source == null || source.getWidth() != rect.width() || source.getHeight() != rect.height()) {
+      source = new ReusableYUVLuminanceSource(rect.width(), rect.height());
+    }
+    source.reset(frame.getLuminance(), frame.getRowStride(), frame.getWidth(), frame.getHeight(),
+        rect.left, rect.top);
+    return source;
+  }
+
 }
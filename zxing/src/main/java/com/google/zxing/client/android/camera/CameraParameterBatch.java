@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.hardware.Camera;
+import android.util.Log;
+import com.google.zxing.client.android.ScanMetrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Collects changes to the camera's parameters while the preview runs, and applies everything
+ * collected with one {@link Camera#getParameters()} and one {@link Camera#setParameters} from
+ * the camera thread, at most once per preview frame. A change of a kind already waiting replaces
+ * it, so a flickering light sensor costs one round trip per frame at worst rather than one per
+ * reading. Nothing is applied while autofocus is running, since some drivers reject parameters
+ * then; the changes wait for a later frame instead.
+ */
+@SuppressWarnings("deprecation") // camera APIs
+final class CameraParameterBatch {
+
+  private static final String TAG = CameraParameterBatch.class.getSimpleName();
+
+  /**
+   * What a change is about; at most one of each kind waits at a time. Changes are applied in this
+   * order.
+   */
+  enum Kind {
+    TORCH,
+    ZOOM,
+    FOCUS_AREAS,
+    METERING_AREAS,
+  }
+
+  /**
+   * One change to the parameters, applied on the camera thread.
+   */
+  interface Change {
+    void applyTo(Camera.Parameters parameters);
+  }
+
+  private final Map<Kind,Change> pending = new EnumMap<>(Kind.class);
+  private Camera camera;
+  private AutoFocusManager autoFocusManager;
+  private long changesSubmitted;
+  private long changesReplaced;
+  private long batchesApplied;
+
+  /**
+   * @param camera the camera changes go to from now on, or null to drop them
+   */
+  synchronized void setCamera(Camera camera) {
+    this.camera = camera;
+    if (camera == null) {
+      pending.clear();
+    }
+  }
+
+  /**
+   * @param autoFocusManager focus manager to wait for, or null if none is running
+   */
+  synchronized void setAutoFocusManager(AutoFocusManager autoFocusManager) {
+    this.autoFocusManager = autoFocusManager;
+  }
+
+  /**
+   * Queues a change for the next {@link #apply()}. May be called from any thread.
+   */
+  synchronized void submit(Kind kind, Change change) {
+    changesSubmitted++;
+    if (pending.put(kind, change) != null) {
+      changesReplaced++;
+    }
+    ScanMetrics.get().increment(ScanMetrics.Counter.CAMERA_PARAMETER_CHANGES);
+  }
+
+  /**
+   * Applies whatever is waiting in one round trip to the driver. Called on the camera thread for
+   * every preview frame, and once as the preview starts.
+   */
+  void apply() {
+    Camera theCamera;
+    Change[] changes;
+    synchronized (this) {
+      if (pending.isEmpty() || camera == null ||
+          (autoFocusManager != null && autoFocusManager.isFocusing())) {
+        return;
+      }
+      theCamera = camera;
+      changes = pending.values().toArray(new Change[pending.size()]);
+      pending.clear();
+      batchesApplied++;
+    }
+    long start = System.nanoTime();
+    ScanMetrics metrics = ScanMetrics.get();
+    try {
+      Camera.Parameters parameters = theCamera.getParameters();
+      metrics.increment(ScanMetrics.Counter.CAMERA_PARAMETER_ROUND_TRIPS);
+      for (Change change : changes) {
+        change.applyTo(parameters);
+      }
+      theCamera.setParameters(parameters);
+      metrics.increment(ScanMetrics.Counter.CAMERA_PARAMETER_ROUND_TRIPS);
+    } catch (RuntimeException re) {
+      // Released meanwhile, or the driver didn't like something; either way there's no retrying
+      Log.w(TAG, "Camera rejected " + changes.length + " parameter changes", re);
+    }
+    metrics.recordNanos(ScanMetrics.Timer.CAMERA_PARAMETER_APPLY, System.nanoTime() - start);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "changes=" + changesSubmitted + " replaced=" + changesReplaced + " applied in " + batchesApplied;
+  }
+
+}
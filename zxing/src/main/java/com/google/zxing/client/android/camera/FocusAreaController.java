@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import com.google.zxing.client.android.ScanMetrics;
+
+/**
+ * Moves the focus and metering area to where the decoders recently saw something barcode-like,
+ * and back to the middle once they no longer do. Areas are in the coordinates both camera APIs
+ * start from: -1000 to 1000 across the preview frame, each way. Changes come at most every
+ * {@value #MIN_CHANGE_INTERVAL_MS} ms, and only when the area moved noticeably, since each one
+ * costs the camera a settings update and may set it refocusing.
+ *
+ * <p>Not thread-safe; its backend calls in under the backend's lock.</p>
+ */
+final class FocusAreaController {
+
+  /**
+   * Applies a new area to the camera.
+   */
+  interface Listener {
+
+    /**
+     * @param area the new area, or null for the middle of the preview
+     */
+    void onAreaChanged(Rect area);
+  }
+
+  private static final long MIN_CHANGE_INTERVAL_MS = 500L;
+  // Smaller moves of an edge than this aren't worth a settings update
+  private static final int MIN_MOVE = 150;
+  // Some drivers hunt when asked to focus on a sliver; areas are at least twice this across
+  private static final int MIN_HALF_SIZE = 150;
+
+  private final Listener listener;
+  private boolean enabled;
+  private Rect area;
+  private long changedAtMs;
+  private long changes;
+
+  FocusAreaController(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @param enabled whether areas should follow the target at all; if not, they are left alone
+   */
+  void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    area = null;
+  }
+
+  /**
+   * Forgets the current area, for when the picture it was found in no longer matches the preview;
+   * the next target sets a new one.
+   */
+  void reset() {
+    area = null;
+  }
+
+  /**
+   * @param target part of the preview frame where a barcode seems to be, or null if none is
+   * @param previewSize size of the preview frames
+   */
+  void setTarget(Rect target, Point previewSize) {
+    if (!enabled || previewSize == null) {
+      return;
+    }
+    long now = SystemClock.uptimeMillis();
+    if (now - changedAtMs < MIN_CHANGE_INTERVAL_MS || (target == null && area == null)) {
+      return;
+    }
+    Rect newArea = target == null ? null : toArea(target, previewSize);
+    if (newArea != null && area != null && !movedEnough(area, newArea)) {
+      return;
+    }
+    area = newArea;
+    changedAtMs = now;
+    changes++;
+    ScanMetrics.get().increment(ScanMetrics.Counter.FOCUS_AREA_CHANGES);
+    listener.onAreaChanged(newArea);
+  }
+
+  private static Rect toArea(Rect target, Point previewSize) {
+    int left = target.left * 2000 / previewSize.x - 1000;
+    int top = target.top * 2000 / previewSize.y - 1000;
+    int right = target.right * 2000 / previewSize.x - 1000;
+    int bottom = target.bottom * 2000 / previewSize.y - 1000;
+    int halfWidth = Math.max(MIN_HALF_SIZE, (right - left) / 2);
+    int halfHeight = Math.max(MIN_HALF_SIZE, (bottom - top) / 2);
+    // Clamp the center so the whole area stays inside the frame
+    int centerX = Math.max(-1000 + halfWidth, Math.min((left + right) / 2, 1000 - halfWidth));
+    int centerY = Math.max(-1000 + halfHeight, Math.min((top + bottom) / 2, 1000 - halfHeight));
+    return new Rect(centerX - halfWidth, centerY - halfHeight, centerX + halfWidth, centerY + halfHeight);
+  }
+
+  private static boolean movedEnough(Rect from, Rect to) {
+    return Math.abs(from.left - to.left) >= MIN_MOVE || Math.abs(from.top - to.top) >= MIN_MOVE ||
+        Math.abs(from.right - to.right) >= MIN_MOVE || Math.abs(from.bottom - to.bottom) >= MIN_MOVE;
+  }
+
+  @Override
+  public String toString() {
+    return "changes=" + changes + " area=" + (area == null ? "middle" : area.toShortString());
+  }
+
+}
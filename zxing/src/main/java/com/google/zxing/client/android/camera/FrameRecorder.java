@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.content.Context;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Records every preview frame the camera delivers into a {@link FrameRecording} in the app's
+ * external files directory, so frames from a scan which went badly can be pulled off the device
+ * ({@code adb pull}) and replayed. Opt-in, from the preferences; the copy costs a few milliseconds
+ * per frame on the camera thread. Frames the camera only lends the luminance plane of are
+ * recorded with grey chroma, which decoding never reads.
+ */
+final class FrameRecorder {
+
+  private static final String TAG = FrameRecorder.class.getSimpleName();
+
+  static final String FILE_NAME = "preview-frames.nv21ring";
+  // Around 90 frames, three seconds, at 720p
+  private static final long MAX_BYTES = 128L * 1024 * 1024;
+
+  private final FrameRecording.Writer writer;
+  private final Rect framingRect;
+
+  private FrameRecorder(FrameRecording.Writer writer, Rect framingRect) {
+    this.writer = writer;
+    this.framingRect = framingRect;
+  }
+
+  /**
+   * @param framingRect framing rect in preview coordinates, or null if the whole frame is scanned
+   * @return a recorder, or null if the recording file couldn't be opened
+   */
+  static FrameRecorder open(Context context, Point cameraResolution, Rect framingRect) {
+    File dir = context.getExternalFilesDir(null);
+    if (dir == null) {
+      dir = context.getFilesDir();
+    }
+    File file = new File(dir, FILE_NAME);
+    FrameRecording.Writer writer;
+    try {
+      writer = new FrameRecording.Writer(file, cameraResolution.x, cameraResolution.y, MAX_BYTES);
+    } catch (IOException ioe) {
+      Log.w(TAG, "Can't record preview frames to " + file, ioe);
+      return null;
+    }
+    Log.i(TAG, "Recording the last " + writer.getCapacity() + " preview frames to " + file +
+        " (" + writer.getFramesWritten() + " already there)");
+    Rect rect = framingRect != null ? new Rect(framingRect) :
+        new Rect(0, 0, cameraResolution.x, cameraResolution.y);
+    return new FrameRecorder(writer, rect);
+  }
+
+  /**
+   * Called as the camera delivers a frame, before the frame goes anywhere else.
+   */
+  void record(PreviewFrame frame) {
+    if (frame.getWidth() != writer.getWidth() || frame.getHeight() != writer.getHeight()) {
+      return;
+    }
+    byte[] data = frame.getData();
+    if (data != null) {
+      writer.append(data, frame.getCapturedNanos(),
+          framingRect.left, framingRect.top, framingRect.right, framingRect.bottom);
+    } else {
+      writer.appendLuminance(frame.getLuminance(), frame.getRowStride(), frame.getCapturedNanos(),
+          framingRect.left, framingRect.top, framingRect.right, framingRect.bottom);
+    }
+  }
+
+  void close() {
+    Log.i(TAG, "Recorded " + writer.getFramesWritten() + " preview frames in total");
+    try {
+      writer.close();
+    } catch (IOException ioe) {
+      Log.w(TAG, "Failed to close the frame recording", ioe);
+    }
+  }
+
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A file of raw NV21 preview frames kept as a ring: a fixed number of slots, each holding one
+ * frame with its framing rect and capture time, the oldest overwritten once all are full. The file
+ * is memory-mapped, so appending a frame is a copy into the page cache and what was written
+ * survives the process being killed.
+ *
+ * <p>Layout, big-endian: a {@value #HEADER_SIZE} byte header (magic, version, frame width and
+ * height, slot count, slot size, frames written so far), then the slots. Each slot starts with a
+ * {@value #SLOT_HEADER_SIZE} byte header (sequence number from 1, capture time in nanoseconds,
+ * framing rect left, top, right and bottom) followed by the frame. The sequence number is
+ * cleared while a slot is being written and set last, so a frame torn by a crash is skipped.</p>
+ *
+ * <p>Plain Java, so recordings pulled off a device can be read and replayed anywhere.</p>
+ */
+public final class FrameRecording {
+
+  private static final int MAGIC = 0x4E563231; // "NV21"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 64;
+  private static final int SLOT_HEADER_SIZE = 32;
+  private static final int FRAMES_WRITTEN_OFFSET = 24;
+
+  private FrameRecording() {}
+
+  /**
+   * @return bytes of NV21 data in one frame of this size
+   */
+  static int frameSize(int width, int height) {
+    return width * height * 3 / 2;
+  }
+
+  /**
+   * Appends frames to a recording. Not thread-safe; frames are expected from one thread, the one
+   * the camera delivers them on.
+   */
+  public static final class Writer implements Closeable {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int slotCount;
+    private final int slotSize;
+    private long framesWritten;
+    private byte[] greyRow;
+
+    /**
+     * Opens {@code path} for recording frames of the given size. An existing recording of the same
+     * geometry is continued where it left off; anything else there is replaced.
+     *
+     * @param maxBytes the most the file may take; decides how many frames the ring holds
+     * @throws IOException if the file can't be mapped, or not even one frame fits
+     */
+    public Writer(File path, int width, int height, long maxBytes) throws IOException {
+      this.width = width;
+      this.height = height;
+      slotSize = SLOT_HEADER_SIZE + frameSize(width, height);
+      long slots = (Math.min(maxBytes, Integer.MAX_VALUE) - HEADER_SIZE) / slotSize;
+      if (slots < 1) {
+        throw new IOException("No room for a " + width + 'x' + height + " frame in " + maxBytes + " bytes");
+      }
+      slotCount = (int) slots;
+      long fileSize = HEADER_SIZE + (long) slotCount * slotSize;
+
+      file = new RandomAccessFile(path, "rw");
+      boolean resume = matches(file, width, height, slotCount, slotSize);
+      try {
+        file.setLength(fileSize);
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+      } catch (IOException ioe) {
+        file.close();
+        throw ioe;
+      }
+      if (resume) {
+        framesWritten = buffer.getLong(FRAMES_WRITTEN_OFFSET);
+      } else {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, width);
+        buffer.putInt(12, height);
+        buffer.putInt(16, slotCount);
+        buffer.putInt(20, slotSize);
+        buffer.putLong(FRAMES_WRITTEN_OFFSET, 0L);
+        for (int slot = 0; slot < slotCount; slot++) {
+          buffer.putLong(HEADER_SIZE + slot * slotSize, 0L);
+        }
+      }
+    }
+
+    private static boolean matches(RandomAccessFile file, int width, int height, int slotCount, int slotSize)
+        throws IOException {
+      if (file.length() < HEADER_SIZE) {
+        return false;
+      }
+      file.seek(0);
+      return file.readInt() == MAGIC && file.readInt() == VERSION &&
+          file.readInt() == width && file.readInt() == height &&
+          file.readInt() == slotCount && file.readInt() == slotSize;
+    }
+
+    /**
+     * Copies one frame into the next slot.
+     *
+     * @param data NV21 frame of the size this recording was opened with
+     * @param capturedNanos {@link System#nanoTime()} when the camera delivered it
+     */
+    public void append(byte[] data, long capturedNanos, int left, int top, int right, int bottom) {
+      int offset = beginSlot(capturedNanos, left, top, right, bottom);
+      buffer.put(data, 0, frameSize(width, height));
+      endSlot(offset);
+    }
+
+    /**
+     * Copies the luminance of one frame into the next slot; the chroma is recorded as grey.
+     *
+     * @param luminance luminance plane, left as it is
+     * @param rowStride distance in bytes between the starts of two rows of the plane
+     */
+    public void appendLuminance(ByteBuffer luminance, int rowStride, long capturedNanos,
+                                int left, int top, int right, int bottom) {
+      int offset = beginSlot(capturedNanos, left, top, right, bottom);
+      ByteBuffer rows = luminance.duplicate();
+      for (int y = 0; y < height; y++) {
+        rows.limit(y * rowStride + width).position(y * rowStride);
+        buffer.put(rows);
+      }
+      if (greyRow == null) {
+        greyRow = new byte[width];
+        Arrays.fill(greyRow, (byte) 128);
+      }
+      for (int y = 0; y < height / 2; y++) {
+        buffer.put(greyRow);
+      }
+      endSlot(offset);
+    }
+
+    /**
+     * Invalidates the next slot and writes its header.
+     *
+     * @return offset of the slot, with the buffer positioned where its frame goes
+     */
+    private int beginSlot(long capturedNanos, int left, int top, int right, int bottom) {
+      int offset = HEADER_SIZE + (int) (framesWritten % slotCount) * slotSize;
+      buffer.putLong(offset, 0L);
+      buffer.putLong(offset + 8, capturedNanos);
+      buffer.putInt(offset + 16, left);
+      buffer.putInt(offset + 20, top);
+      buffer.putInt(offset + 24, right);
+      buffer.putInt(offset + 28, bottom);
+      buffer.position(offset + SLOT_HEADER_SIZE);
+      return offset;
+    }
+
+    private void endSlot(int offset) {
+      long sequence = framesWritten + 1;
+      buffer.putLong(offset, sequence);
+      buffer.putLong(FRAMES_WRITTEN_OFFSET, sequence);
+      framesWritten = sequence;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    /**
+     * @return how many of the most recent frames the ring keeps
+     */
+    public int getCapacity() {
+      return slotCount;
+    }
+
+    /**
+     * @return frames appended since the recording was created, including ones since overwritten
+     */
+    public long getFramesWritten() {
+      return framesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+      buffer.force();
+      file.close();
+    }
+  }
+
+  /**
+   * Reads every complete frame out of a recording, oldest first.
+   *
+   * @throws IOException if the file isn't a recording this version understands
+   */
+  public static List<Frame> read(File path) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+      FileChannel channel = file.getChannel();
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+        throw new IOException("Not a frame recording: " + path);
+      }
+      if (buffer.getInt(4) != VERSION) {
+        throw new IOException("Unsupported frame recording version " + buffer.getInt(4) + ": " + path);
+      }
+      int width = buffer.getInt(8);
+      int height = buffer.getInt(12);
+      int slotCount = buffer.getInt(16);
+      int slotSize = buffer.getInt(20);
+      if ((long) HEADER_SIZE + (long) slotCount * slotSize > buffer.capacity() ||
+          slotSize < SLOT_HEADER_SIZE + frameSize(width, height)) {
+        throw new IOException("Truncated frame recording: " + path);
+      }
+
+      List<Frame> frames = new ArrayList<>(slotCount);
+      for (int slot = 0; slot < slotCount; slot++) {
+        int offset = HEADER_SIZE + slot * slotSize;
+        long sequence = buffer.getLong(offset);
+        if (sequence <= 0L) {
+          // Never written, or torn
+          continue;
+        }
+        byte[] data = new byte[frameSize(width, height)];
+        buffer.position(offset + SLOT_HEADER_SIZE);
+        buffer.get(data);
+        frames.add(new Frame(sequence, buffer.getLong(offset + 8), width, height,
+            buffer.getInt(offset + 16), buffer.getInt(offset + 20),
+            buffer.getInt(offset + 24), buffer.getInt(offset + 28), data));
+      }
+      Collections.sort(frames, new Comparator<Frame>() {
+        @Override
+        public int compare(Frame a, Frame b) {
+          return Long.compare(a.sequence, b.sequence);
+        }
+      });
+      return frames;
+    }
+  }
+
+  /**
+   * One recorded frame.
+   */
+  public static final class Frame {
+
+    private final long sequence;
+    private final long capturedNanos;
+    private final int width;
+    private final int height;
+    private final int left;
+    private final int top;
+    private final int right;
+    private final int bottom;
+    private final byte[] data;
+
+    Frame(long sequence, long capturedNanos, int width, int height,
+          int left, int top, int right, int bottom, byte[] data) {
+      this.sequence = sequence;
+      this.capturedNanos = capturedNanos;
+      this.width = width;
+      this.height = height;
+      this.left = left;
+      this.top = top;
+      this.right = right;
+      this.bottom = bottom;
+      this.data = data;
+    }
+
+    /**
+     * @return position of this frame in the recording, from 1; gaps mean frames were overwritten
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} on the device when the camera delivered the frame
+     */
+    public long getCapturedNanos() {
+      return capturedNanos;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    /**
+     * @return left edge of the framing rect, in preview coordinates
+     */
+    public int getLeft() {
+      return left;
+    }
+
+    public int getTop() {
+      return top;
+    }
+
+    public int getRight() {
+      return right;
+    }
+
+    public int getBottom() {
+      return bottom;
+    }
+
+    /**
+     * @return the NV21 frame
+     */
+    public byte[] getData() {
+      return data;
+    }
+
+    @Override
+    public String toString() {
+      return "#" + sequence + ' ' + width + 'x' + height +
+          " [" + left + ',' + top + ' ' + right + ',' + bottom + ']';
+    }
+  }
+
+}
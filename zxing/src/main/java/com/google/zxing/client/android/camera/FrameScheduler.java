@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.os.Handler;
+import android.os.Message;
+import com.google.zxing.client.android.ScanMetrics;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Sits between the camera and the decoders. Every captured frame is offered here: if a decoder is
+ * waiting it gets the frame straight away, otherwise the frame goes into a single-slot mailbox,
+ * replacing (and recycling) whatever older frame was there. A decoder asking for work therefore
+ * always gets the freshest frame available, never a backlog, and the camera keeps running at its
+ * own rate no matter how slow decoding is. Whichever camera backend is running, every frame it
+ * captures passes through here, so this is also where frames are counted and recorded.
+ */
+final class FrameScheduler {
+
+  private final Queue<Message> waitingDecoders;
+  private FrameRecorder recorder;
+  private PreviewFrame latest;
+  private long startupNanos;
+  private long framesOffered;
+  private long framesHandedOff;
+  private long framesReplaced;
+
+  FrameScheduler() {
+    waitingDecoders = new ArrayDeque<>();
+  }
+
+  /**
+   * @param recorder where to copy every frame offered from now on, or null to stop copying
+   */
+  synchronized void setRecorder(FrameRecorder recorder) {
+    this.recorder = recorder;
+  }
+
+  /**
+   * @param startupNanos {@link System#nanoTime()} when the camera was asked for; the time until the
+   *  next frame arrives is recorded as the camera's startup time
+   */
+  synchronized void expectFirstFrame(long startupNanos) {
+    this.startupNanos = startupNanos;
+  }
+
+  /**
+   * Called for every frame the camera delivers.
+   */
+  synchronized void offer(PreviewFrame frame) {
+    framesOffered++;
+    ScanMetrics metrics = ScanMetrics.get();
+    metrics.increment(ScanMetrics.Counter.FRAMES_DELIVERED);
+    if (startupNanos != 0L) {
+      metrics.recordNanos(ScanMetrics.Timer.CAMERA_STARTUP, frame.getCapturedNanos() - startupNanos);
+      startupNanos = 0L;
+    }
+    if (recorder != null) {
+      recorder.record(frame);
+    }
+    Message request = waitingDecoders.poll();
+    if (request != null) {
+      handOff(request, frame);
+      return;
+    }
+    if (latest != null) {
+      // Nobody took the previous frame in time; this one is newer, so the old one goes back
+      latest.release();
+      framesReplaced++;
+    }
+    latest = frame;
+  }
+
+  /**
+   * Asks for the next frame to decode: the one in the mailbox if there is one, otherwise the next
+   * one the camera delivers.
+   *
+   * @param tag passed back in the message's arg1
+   */
+  synchronized void request(Handler handler, int what, int tag) {
+    Message request = handler.obtainMessage(what, tag, 0);
+    PreviewFrame frame = latest;
+    if (frame != null) {
+      latest = null;
+      handOff(request, frame);
+    } else {
+      waitingDecoders.add(request);
+    }
+  }
+
+  private void handOff(Message request, PreviewFrame frame) {
+    frame.onEnqueued(System.nanoTime());
+    request.obj = frame;
+    if (request.getTarget().sendMessage(request)) {
+      framesHandedOff++;
+    } else {
+      // The decoder's looper has quit, so nothing will ever release the frame there
+      frame.release();
+    }
+  }
+
+  /**
+   * Forgets waiting decoders and gives the mailbox frame, if any, back to its owner.
+   */
+  synchronized void clear() {
+    Message request;
+    while ((request = waitingDecoders.poll()) != null) {
+      request.recycle();
+    }
+    if (latest != null) {
+      latest.release();
+      latest = null;
+    }
+  }
+
+  synchronized long getFramesOffered() {
+    return framesOffered;
+  }
+
+  synchronized long getFramesReplaced() {
+    return framesReplaced;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "offered=" + framesOffered + " decoded=" + framesHandedOff + " skipped=" + framesReplaced;
+  }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import com.google.zxing.client.android.PreferencesActivity;
+import com.google.zxing.client.android.camera.open.OpenCamera;
+import com.google.zxing.client.android.camera.open.OpenCameraInterface;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Drives the original {@link Camera} API, which every device has. Preview frames arrive as NV21
+ * in the buffers of a {@link PreviewBufferPool}, which decoders then read directly.
+ */
+@SuppressWarnings("deprecation") // camera APIs
+final class LegacyCameraBackend implements CameraBackend {
+
+  private static final String TAG = LegacyCameraBackend.class.getSimpleName();
+
+  private final Context context;
+  private final CameraConfigurationManager configManager;
+  private final PreviewBufferPool previewBufferPool;
+  private final PreviewCallback previewCallback;
+  private final CameraParameterBatch parameterBatch;
+  private final Runnable applyParameters;
+  private final FocusAreaController focusAreas;
+  private final ZoomController zoom;
+  private Handler cameraHandler;
+  private OpenCamera camera;
+  // Read by the decode threads' reports too
+  private volatile AutoFocusManager autoFocusManager;
+  private boolean previewing;
+  private boolean torch;
+
+  LegacyCameraBackend(Context context, FrameScheduler frameScheduler) {
+    this.context = context;
+    configManager = new CameraConfigurationManager(context);
+    previewBufferPool = new PreviewBufferPool();
+    parameterBatch = new CameraParameterBatch();
+    previewCallback = new PreviewCallback(configManager, previewBufferPool, frameScheduler, parameterBatch);
+    applyParameters = new Runnable() {
+      @Override
+      public void run() {
+        parameterBatch.apply();
+      }
+    };
+    focusAreas = new FocusAreaController(new FocusAreaController.Listener() {
+      @Override
+      public void onAreaChanged(Rect area) {
+        submitAreas(area == null ? CameraConfigurationUtils.buildMiddleArea() :
+            Collections.singletonList(new Camera.Area(area, 1)));
+      }
+    });
+    zoom = new ZoomController(new ZoomController.Listener() {
+      @Override
+      public void onZoomChanged(double ratio) {
+        submitZoom(ratio);
+      }
+    });
+  }
+
+  @Override
+  public void open(int cameraId) throws IOException {
+    if (camera == null) {
+      // Preview and focus callbacks come to the looper of the thread which opens the camera
+      OpenCamera theCamera = OpenCameraInterface.open(cameraId);
+      if (theCamera == null) {
+        throw new IOException("Camera.open() failed to return object from driver");
+      }
+      camera = theCamera;
+      cameraHandler = new Handler(Looper.myLooper() != null ? Looper.myLooper() : Looper.getMainLooper());
+      parameterBatch.setCamera(theCamera.getCamera());
+    }
+  }
+
+  /**
+   * Applies the parameters negotiated on an earlier launch if there are any, otherwise negotiates
+   * them from the capability lists and keeps the result for next time.
+   */
+  @Override
+  public void configure() {
+    OpenCamera theCamera = camera;
+    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+    torch = FrontLightMode.readPref(prefs) == FrontLightMode.ON;
+    // Areas are only set at all where the fixed ones would have been
+    focusAreas.setEnabled(!prefs.getBoolean(PreferencesActivity.KEY_DISABLE_METERING, true));
+    zoom.setEnabled(prefs.getBoolean(PreferencesActivity.KEY_AUTO_ZOOM, false));
+    configManager.initDisplay(theCamera);
+    CameraConfigCache cache = new CameraConfigCache(context, "legacy", Integer.toString(theCamera.getIndex()),
+        configManager.getScreenResolution(), configManager.describeSettings());
+    long start = System.nanoTime();
+    String cached = cache.get();
+    if (cached != null) {
+      // Preview size, then the parameters negotiation changed
+      int newline = cached.indexOf('\n');
+      try {
+        configManager.initPreviewSize(theCamera, CameraConfigCache.parseSize(cached.substring(0, newline)));
+        configManager.setCachedCameraParameters(theCamera, cached.substring(newline + 1));
+        cache.recordHit(System.nanoTime() - start);
+        return;
+      } catch (RuntimeException re) {
+        Log.w(TAG, "Camera rejected cached parameters; negotiating them again", re);
+        cache.remove();
+        start = System.nanoTime();
+      }
+    }
+    configManager.initPreviewSize(theCamera, null);
+
+    Camera cameraObject = theCamera.getCamera();
+    Camera.Parameters parameters = cameraObject.getParameters();
+    String parametersFlattened = parameters == null ? null : parameters.flatten(); // Save these, temporarily
+    boolean negotiated = false;
+    try {
+      configManager.setDesiredCameraParameters(theCamera, false);
+      negotiated = true;
+    } catch (RuntimeException re) {
+      // Driver failed
+      Log.w(TAG, "Camera rejected parameters. Setting only minimal safe-mode parameters");
+      Log.i(TAG, "Resetting to saved camera params: " + parametersFlattened);
+      // Reset:
+      if (parametersFlattened != null) {
+        parameters = cameraObject.getParameters();
+        parameters.unflatten(parametersFlattened);
+        try {
+          cameraObject.setParameters(parameters);
+          configManager.setDesiredCameraParameters(theCamera, true);
+        } catch (RuntimeException re2) {
+          // Well, darn. Give up
+          Log.w(TAG, "Camera rejected even safe-mode parameters! No configuration");
+        }
+      }
+    }
+    // Safe mode is a workaround for this launch only; next time negotiation is tried again
+    if (negotiated && parametersFlattened != null) {
+      long negotiationNanos = System.nanoTime() - start;
+      String changed = CameraConfigurationUtils.diffFlattened(parametersFlattened,
+          cameraObject.getParameters().flatten());
+      cache.put(CameraConfigCache.formatSize(configManager.getBestPreviewSize()) + '\n' + changed,
+          negotiationNanos);
+    }
+  }
+
+  @Override
+  public void setPreviewDisplay(SurfaceHolder holder) throws IOException {
+    camera.getCamera().setPreviewDisplay(holder);
+  }
+
+  @Override
+  public boolean isOpen() {
+    return camera != null;
+  }
+
+  @Override
+  public void close() {
+    if (camera != null) {
+      previewBufferPool.detach();
+      parameterBatch.setCamera(null);
+      camera.getCamera().release();
+      camera = null;
+    }
+  }
+
+  @Override
+  public void startPreview(int bufferCount) {
+    OpenCamera theCamera = camera;
+    if (theCamera != null && !previewing) {
+      Point cameraResolution = configManager.getCameraResolution();
+      if (cameraResolution != null) {
+        previewBufferPool.setBufferCount(bufferCount);
+        previewBufferPool.attach(theCamera.getCamera(), cameraResolution);
+      }
+      theCamera.getCamera().setPreviewCallbackWithBuffer(previewCallback);
+      theCamera.getCamera().startPreview();
+      previewing = true;
+      autoFocusManager = new AutoFocusManager(context, theCamera.getCamera());
+      parameterBatch.setAutoFocusManager(autoFocusManager);
+      // Changes made before the preview started don't have to wait for the first frame
+      cameraHandler.post(applyParameters);
+    }
+  }
+
+  @Override
+  public void stopPreview() {
+    parameterBatch.setAutoFocusManager(null);
+    if (autoFocusManager != null) {
+      autoFocusManager.stop();
+      autoFocusManager = null;
+    }
+    if (camera != null && previewing) {
+      camera.getCamera().stopPreview();
+      // Also drops every buffer still queued with the driver; they are queued again on start
+      camera.getCamera().setPreviewCallbackWithBuffer(null);
+      previewBufferPool.detach();
+      previewing = false;
+    }
+  }
+
+  @Override
+  public Point getCameraResolution() {
+    return configManager.getCameraResolution();
+  }
+
+  @Override
+  public Point getScreenResolution() {
+    return configManager.getScreenResolution();
+  }
+
+  /**
+   * Queues the change for the next batch rather than applying it now, so autofocus can carry on
+   * and repeated calls cost one round trip between them.
+   */
+  @Override
+  public void setTorch(final boolean on) {
+    if (camera != null && on != torch) {
+      torch = on;
+      parameterBatch.submit(CameraParameterBatch.Kind.TORCH, new CameraParameterBatch.Change() {
+        @Override
+        public void applyTo(Camera.Parameters parameters) {
+          configManager.setTorch(parameters, on);
+        }
+      });
+    }
+  }
+
+  /**
+   * Synchronized for the focus area and zoom controllers, which aren't thread-safe; decoders
+   * report in parallel.
+   */
+  @Override
+  public synchronized void onFrame(CameraManager.FrameOutcome outcome, Rect target, float spread) {
+    AutoFocusManager theAutoFocusManager = autoFocusManager;
+    if (theAutoFocusManager != null) {
+      theAutoFocusManager.onFrameOutcome(outcome);
+    }
+    zoom.onFrameOutcome(outcome);
+    if (outcome != CameraManager.FrameOutcome.BLURRY) {
+      focusAreas.setTarget(target, configManager.getCameraResolution());
+      zoom.onSymbolSpread(spread);
+    }
+  }
+
+  private void submitZoom(final double ratio) {
+    parameterBatch.submit(CameraParameterBatch.Kind.ZOOM, new CameraParameterBatch.Change() {
+      @Override
+      public void applyTo(Camera.Parameters parameters) {
+        if (parameters.isZoomSupported()) {
+          List<Integer> ratios = parameters.getZoomRatios();
+          if (ratios != null && !ratios.isEmpty()) {
+            zoom.setMaxRatio(ratios.get(ratios.size() - 1) / 100.0);
+          }
+        } else {
+          zoom.setMaxRatio(1.0);
+        }
+        CameraConfigurationUtils.setZoom(parameters, ratio);
+      }
+    });
+    // Whatever the areas were aimed at has moved
+    focusAreas.reset();
+  }
+
+  /**
+   * Both go in the same batch, so moving them costs one round trip.
+   */
+  private void submitAreas(final List<Camera.Area> areas) {
+    parameterBatch.submit(CameraParameterBatch.Kind.FOCUS_AREAS, new CameraParameterBatch.Change() {
+      @Override
+      public void applyTo(Camera.Parameters parameters) {
+        if (parameters.getMaxNumFocusAreas() > 0) {
+          parameters.setFocusAreas(areas);
+        }
+      }
+    });
+    parameterBatch.submit(CameraParameterBatch.Kind.METERING_AREAS, new CameraParameterBatch.Change() {
+      @Override
+      public void applyTo(Camera.Parameters parameters) {
+        if (parameters.getMaxNumMeteringAreas() > 0) {
+          parameters.setMeteringAreas(areas);
+        }
+      }
+    });
+    AutoFocusManager theAutoFocusManager = autoFocusManager;
+    if (theAutoFocusManager != null) {
+      theAutoFocusManager.onAreasChanged();
+    }
+  }
+
+  @Override
+  public String getPreviewStats() {
+    return "buffers " + previewBufferPool + "; parameters " + parameterBatch + "; focus areas " + focusAreas + "; " + zoom;
+  }
+
+}
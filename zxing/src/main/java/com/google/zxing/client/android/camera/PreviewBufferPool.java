@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.hardware.Camera;
+import android.util.Log;
+
+/**
+ * Owns the fixed set of preview buffers handed to the camera through
+ * {@link Camera#addCallbackBuffer(byte[])}. Buffers are sized once from the camera resolution and
+ * then cycle between the driver and the decoder, so steady-state scanning allocates no frame
+ * buffers at all; the counters here exist to prove that.
+ */
+@SuppressWarnings("deprecation") // camera APIs
+final class PreviewBufferPool implements PreviewFrame.Owner {
+
+  private static final String TAG = PreviewBufferPool.class.getSimpleName();
+
+  static final int DEFAULT_BUFFER_COUNT = 3;
+
+  private PreviewFrame[] frames;
+  private Camera camera;
+  private int bufferCount = DEFAULT_BUFFER_COUNT;
+  private int bufferSize;
+  private long buffersAllocated;
+  private long buffersRecycled;
+
+  /**
+   * @param bufferCount number of buffers to keep in circulation; takes effect on the next
+   *  {@link #attach(Camera, Point)}
+   */
+  synchronized void setBufferCount(int bufferCount) {
+    this.bufferCount = Math.max(2, bufferCount);
+  }
+
+  /**
+   * Makes sure buffers of the right size exist for this resolution, then queues all of them with
+   * the camera. Must be called before the preview starts.
+   */
+  synchronized void attach(Camera camera, Point cameraResolution) {
+    int size = cameraResolution.x * cameraResolution.y * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+    if (frames == null || frames.length != bufferCount || size != bufferSize) {
+      frames = new PreviewFrame[bufferCount];
+      for (int i = 0; i < bufferCount; i++) {
+        frames[i] = new PreviewFrame(this, new byte[size]);
+      }
+      bufferSize = size;
+      buffersAllocated += bufferCount;
+      Log.i(TAG, "Allocated " + bufferCount + " preview buffers of " + size + " bytes");
+    }
+    for (PreviewFrame frame : frames) {
+      camera.addCallbackBuffer(frame.getData());
+    }
+    this.camera = camera;
+  }
+
+  /**
+   * Called once the camera has dropped every queued buffer; frames released from now on are kept
+   * until the next {@link #attach(Camera, Point)} queues them all again.
+   */
+  synchronized void detach() {
+    camera = null;
+  }
+
+  /**
+   * @return the pooled frame wrapping this buffer, or null if it isn't one of ours
+   */
+  synchronized PreviewFrame frameFor(byte[] data) {
+    if (frames != null) {
+      for (PreviewFrame frame : frames) {
+        if (frame.getData() == data) {
+          return frame;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Hands a buffer back to the camera so it can be filled again. Buffers which don't belong to
+   * the current pool, for example ones released after a resolution change, are dropped.
+   */
+  synchronized void recycle(Camera camera, byte[] buffer) {
+    if (buffer != null && buffer.length == bufferSize) {
+      camera.addCallbackBuffer(buffer);
+      buffersRecycled++;
+    }
+  }
+
+  @Override
+  public synchronized void release(PreviewFrame frame) {
+    if (camera != null) {
+      recycle(camera, frame.getData());
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "allocated=" + buffersAllocated + " recycled=" + buffersRecycled;
+  }
+
+}
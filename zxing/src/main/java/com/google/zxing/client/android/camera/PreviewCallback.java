@@ -18,40 +18,39 @@ package com.google.zxing.client.android.camera;
 
 import android.graphics.Point;
 import android.hardware.Camera;
-import android.os.Handler;
-import android.os.Message;
-import android.util.Log;
 
 @SuppressWarnings("deprecation") // camera APIs
 final class PreviewCallback implements Camera.PreviewCallback {
 
-  private static final String TAG = PreviewCallback.class.getSimpleName();
-
   private final CameraConfigurationManager configManager;
-  private Handler previewHandler;
-  private int previewMessage;
-
-  PreviewCallback(CameraConfigurationManager configManager) {
+  private final PreviewBufferPool bufferPool;
+  private final FrameScheduler frameScheduler;
+  private final CameraParameterBatch parameterBatch;
+
+  PreviewCallback(CameraConfigurationManager configManager,
+                  PreviewBufferPool bufferPool,
+                  FrameScheduler frameScheduler,
+                  CameraParameterBatch parameterBatch) {
     this.configManager = configManager;
-  }
-
-  void setHandler(Handler previewHandler, int previewMessage) {
-    this.previewHandler = previewHandler;
-    this.previewMessage = previewMessage;
+    this.bufferPool = bufferPool;
+    this.frameScheduler = frameScheduler;
+    this.parameterBatch = parameterBatch;
   }
 
   @Override
   public void onPreviewFrame(byte[] data, Camera camera) {
+    long now = System.nanoTime();
     Point cameraResolution = configManager.getCameraResolution();
-    Handler thePreviewHandler = previewHandler;
-    if (cameraResolution != null && thePreviewHandler != null) {
-      Message message = thePreviewHandler.obtainMessage(previewMessage, cameraResolution.x,
-          cameraResolution.y, data);
-      message.sendToTarget();
-      previewHandler = null;
+    PreviewFrame frame = bufferPool.frameFor(data);
+    if (cameraResolution != null && frame != null) {
+      frame.onCaptured(cameraResolution.x, cameraResolution.y, now);
+      frameScheduler.offer(frame);
     } else {
-      Log.d(TAG, "Got preview callback, but no handler or resolution available");
+      // Can't describe this frame; give the buffer straight back so the camera can keep filling it
+      bufferPool.recycle(camera, data);
     }
+    // Between frames is the one moment per frame a settings change can't hold one up
+    parameterBatch.apply();
   }
 
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One pooled preview buffer plus what is known about the frame currently in it. Instances are
+ * created once per buffer and reused, so they travel through the pipeline without allocation.
+ * Decoders read the luminance plane, which is either the start of an NV21 buffer of our own or a
+ * plane the camera lends for as long as the frame is held; either way it is only valid until the
+ * frame is released.
+ */
+public final class PreviewFrame {
+
+  /**
+   * Takes frames back once nothing reads from them any more, so the memory can be filled again.
+   */
+  interface Owner {
+    void release(PreviewFrame frame);
+  }
+
+  private final Owner owner;
+  private final byte[] data;
+  private ByteBuffer luminance;
+  private int rowStride;
+  private Object handle;
+  private int width;
+  private int height;
+  private long capturedNanos;
+  private long enqueuedNanos;
+
+  /**
+   * A frame which always lives in the same NV21 buffer.
+   */
+  PreviewFrame(Owner owner, byte[] data) {
+    this.owner = owner;
+    this.data = data;
+    luminance = ByteBuffer.wrap(data);
+  }
+
+  /**
+   * A frame whose luminance plane is lent by the camera anew for each capture.
+   */
+  PreviewFrame(Owner owner) {
+    this.owner = owner;
+    this.data = null;
+  }
+
+  void onCaptured(int width, int height, long capturedNanos) {
+    this.width = width;
+    this.height = height;
+    this.rowStride = width;
+    this.capturedNanos = capturedNanos;
+    this.enqueuedNanos = 0L;
+  }
+
+  /**
+   * @param handle whatever the owner needs to give the plane back, such as the image it belongs to
+   */
+  void onCaptured(ByteBuffer luminance, int rowStride, Object handle, int width, int height, long capturedNanos) {
+    this.luminance = luminance;
+    this.handle = handle;
+    this.width = width;
+    this.height = height;
+    this.rowStride = rowStride;
+    this.capturedNanos = capturedNanos;
+    this.enqueuedNanos = 0L;
+  }
+
+  void onEnqueued(long enqueuedNanos) {
+    this.enqueuedNanos = enqueuedNanos;
+  }
+
+  void release() {
+    owner.release(this);
+  }
+
+  /**
+   * @return the NV21 frame data, or null if the camera only lent the luminance plane
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  /**
+   * @return the luminance plane, {@link #getRowStride()} bytes per row. Read it with absolute
+   *  gets only; it may be shared between threads.
+   */
+  public ByteBuffer getLuminance() {
+    return luminance;
+  }
+
+  /**
+   * @return distance in bytes between the starts of two rows of {@link #getLuminance()}, at least
+   *  the width
+   */
+  public int getRowStride() {
+    return rowStride;
+  }
+
+  Object getHandle() {
+    return handle;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return {@link System#nanoTime()} when the camera delivered this frame
+   */
+  public long getCapturedNanos() {
+    return capturedNanos;
+  }
+
+  /**
+   * @return {@link System#nanoTime()} when this frame was handed to a decoder
+   */
+  public long getEnqueuedNanos() {
+    return enqueuedNanos;
+  }
+
+}
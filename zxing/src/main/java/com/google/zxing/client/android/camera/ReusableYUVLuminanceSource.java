@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Like {@link PlanarYUVLuminanceSource}, but can be pointed at the next frame with
+ * {@link #reset(byte[], int, int, int, int)} instead of being created anew. The crop size is fixed
+ * for the life of the object; the copy returned by {@link #getMatrix()} lives in an array which is
+ * kept from one frame to the next.
+ *
+ * <p>The frame may also be a luminance plane in a {@link ByteBuffer} with padding at the end of
+ * each row, as cameras lend it, which is then read in place rather than copied out first.</p>
+ *
+ * <p>{@link #getRow(int, byte[])} and {@link #getMatrix()} may be called from several threads
+ * at once, but not concurrently with {@code reset}.</p>
+ */
+public final class ReusableYUVLuminanceSource extends LuminanceSource {
+
+  private static final int THUMBNAIL_SCALE_FACTOR = 2;
+
+  // Exactly one of these is set: the frame as an array, or as a buffer without one
+  private byte[] yuvData;
+  private ByteBuffer plane;
+  private int rowStride;
+  private int dataWidth;
+  private int dataHeight;
+  private int left;
+  private int top;
+  private byte[] matrix;
+  private boolean matrixValid;
+
+  /**
+   * @param width width of the crop which every frame will be read through
+   * @param height height of the crop which every frame will be read through
+   */
+  public ReusableYUVLuminanceSource(int width, int height) {
+    super(width, height);
+  }
+
+  /**
+   * Points this source at a new frame.
+   *
+   * @param yuvData frame data, with the Y plane first
+   * @param dataWidth width of the whole frame
+   * @param dataHeight height of the whole frame
+   * @param left left edge of the crop within the frame
+   * @param top top edge of the crop within the frame
+   */
+  public synchronized void reset(byte[] yuvData, int dataWidth, int dataHeight, int left, int top) {
+    checkCrop(dataWidth, dataHeight, left, top);
+    this.yuvData = yuvData;
+    this.plane = null;
+    this.rowStride = dataWidth;
+    this.dataWidth = dataWidth;
+    this.dataHeight = dataHeight;
+    this.left = left;
+    this.top = top;
+    matrixValid = false;
+  }
+
+  /**
+   * Points this source at a new frame held in a buffer. The buffer's position and limit are
+   * left alone.
+   *
+   * @param luminance the luminance plane
+   * @param rowStride distance in bytes between the starts of two rows, at least {@code dataWidth}
+   * @param dataWidth width of the whole frame
+   * @param dataHeight height of the whole frame
+   * @param left left edge of the crop within the frame
+   * @param top top edge of the crop within the frame
+   */
+  public synchronized void reset(ByteBuffer luminance, int rowStride, int dataWidth, int dataHeight,
+                                 int left, int top) {
+    if (luminance.hasArray() && luminance.arrayOffset() == 0 && rowStride == dataWidth) {
+      reset(luminance.array(), dataWidth, dataHeight, left, top);
+      return;
+    }
+    checkCrop(dataWidth, dataHeight, left, top);
+    this.yuvData = null;
+    // A view of our own, so relative reads don't disturb anyone else reading the frame
+    this.plane = luminance.duplicate();
+    this.rowStride = rowStride;
+    this.dataWidth = dataWidth;
+    this.dataHeight = dataHeight;
+    this.left = left;
+    this.top = top;
+    matrixValid = false;
+  }
+
+  private void checkCrop(int dataWidth, int dataHeight, int left, int top) {
+    if (left + getWidth() > dataWidth || top + getHeight() > dataHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      row = new byte[width];
+    }
+    int offset = (y + top) * rowStride + left;
+    byte[] data = yuvData;
+    if (data != null) {
+      System.arraycopy(data, offset, row, 0, width);
+    } else {
+      copyFromPlane(offset, row, 0, width);
+    }
+    return row;
+  }
+
+  private synchronized void copyFromPlane(int offset, byte[] dest, int destOffset, int length) {
+    plane.position(offset);
+    plane.get(dest, destOffset, length);
+  }
+
+  @Override
+  public synchronized byte[] getMatrix() {
+    int width = getWidth();
+    int height = getHeight();
+
+    // If the caller asks for the entire underlying image, save the copy and give them the
+    // original data. The docs specifically warn that result.length must be ignored.
+    if (yuvData != null && width == dataWidth && height == dataHeight) {
+      return yuvData;
+    }
+    if (matrixValid) {
+      return matrix;
+    }
+
+    int area = width * height;
+    if (matrix == null) {
+      matrix = new byte[area];
+    }
+    int inputOffset = top * rowStride + left;
+
+    if (yuvData == null) {
+      for (int y = 0; y < height; y++) {
+        copyFromPlane(inputOffset, matrix, y * width, width);
+        inputOffset += rowStride;
+      }
+    } else if (width == dataWidth) {
+      // If the width matches the full width of the underlying data, perform a single copy.
+      System.arraycopy(yuvData, inputOffset, matrix, 0, area);
+    } else {
+      // Otherwise copy one cropped row at a time.
+      for (int y = 0; y < height; y++) {
+        System.arraycopy(yuvData, inputOffset, matrix, y * width, width);
+        inputOffset += dataWidth;
+      }
+    }
+    matrixValid = true;
+    return matrix;
+  }
+
+  @Override
+  public boolean isCropSupported() {
+    return true;
+  }
+
+  @Override
+  public LuminanceSource crop(int left, int top, int width, int height) {
+    // Cropped views are used for a single decode, so a plain source over the same data will do
+    if (yuvData == null) {
+      ReusableYUVLuminanceSource cropped = new ReusableYUVLuminanceSource(width, height);
+      cropped.reset(plane, rowStride, dataWidth, dataHeight, this.left + left, this.top + top);
+      return cropped;
+    }
+    return new PlanarYUVLuminanceSource(yuvData,
+                                        dataWidth,
+                                        dataHeight,
+                                        this.left + left,
+                                        this.top + top,
+                                        width,
+                                        height,
+                                        false);
+  }
+
+  public int[] renderThumbnail() {
+    int width = getThumbnailWidth();
+    int height = getThumbnailHeight();
+    int[] pixels = new int[width * height];
+    byte[] yuv = yuvData;
+    int inputOffset = top * rowStride + left;
+
+    for (int y = 0; y < height; y++) {
+      int outputOffset = y * width;
+      for (int x = 0; x < width; x++) {
+        int index = inputOffset + x * THUMBNAIL_SCALE_FACTOR;
+        int grey = (yuv != null ? yuv[index] : plane.get(index)) & 0xff;
+        pixels[outputOffset + x] = 0xFF000000 | (grey * 0x00010101);
+      }
+      inputOffset += rowStride * THUMBNAIL_SCALE_FACTOR;
+    }
+    return pixels;
+  }
+  /**
+   * @return width of image from {@link #renderThumbnail()}
+   */
+  public int getThumbnailWidth() {
+    return getWidth() / THUMBNAIL_SCALE_FACTOR;
+  }
+
+  /**
+   * @return height of image from {@link #renderThumbnail()}
+   */
+  public int getThumbnailHeight() {
+    return getHeight() / THUMBNAIL_SCALE_FACTOR;
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.os.SystemClock;
+import android.util.Log;
+import com.google.zxing.client.android.ScanMetrics;
+
+import java.util.Locale;
+
+/**
+ * Zooms in on a barcode which looks small in the framing rect and still won't decode, and back
+ * out when it overflows the rect or has been lost. Size is judged from how far apart the readers'
+ * candidate result points are. The zoom aims for points spanning {@value #TARGET_SPREAD} of the
+ * rect, but is left alone anywhere between {@value #ZOOM_IN_BELOW} and {@value #ZOOM_OUT_ABOVE},
+ * so it doesn't see-saw around the target.
+ *
+ * <p>Each change is judged by whether a result follows within {@value #HIT_WINDOW_FRAMES} frames,
+ * and counted in {@link ScanMetrics} as a hit or a miss.</p>
+ *
+ * <p>Not thread-safe, except for {@link #setMaxRatio(double)}; its backend calls in under the
+ * backend's lock.</p>
+ */
+final class ZoomController {
+
+  private static final String TAG = ZoomController.class.getSimpleName();
+
+  /**
+   * Applies a new zoom to the camera.
+   */
+  interface Listener {
+
+    /**
+     * @param ratio magnification wanted, 1 for none
+     */
+    void onZoomChanged(double ratio);
+  }
+
+  private static final float TARGET_SPREAD = 0.4f;
+  private static final float ZOOM_IN_BELOW = 0.2f;
+  private static final float ZOOM_OUT_ABOVE = 0.75f;
+  // A small barcode which decodes anyway is fine as it is
+  private static final int FAILURES_BEFORE_ZOOM_IN = 4;
+  // With nothing barcode-like in sight for this long, whatever was zoomed in on is gone
+  private static final int FAILURES_BEFORE_RESET = 30;
+  // At most this factor per change, so a misjudged spread can't throw the barcode out of view
+  private static final double MAX_STEP = 2.0;
+  private static final double MIN_CHANGE = 0.05;
+  private static final double DEFAULT_MAX_RATIO = 4.0;
+  // Points stay recent for half a second; until they expire they describe the old zoom
+  private static final long MIN_CHANGE_INTERVAL_MS = 750L;
+  private static final int HIT_WINDOW_FRAMES = 15;
+
+  private final Listener listener;
+  private boolean enabled;
+  private volatile double maxRatio = DEFAULT_MAX_RATIO;
+  private double ratio = 1.0;
+  private int failures;
+  private long changedAtMs;
+  // Frames since the last change, or -1 once it has been judged
+  private int framesSinceChange = -1;
+  private long changes;
+  private long hits;
+  private long misses;
+
+  ZoomController(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @param enabled whether to zoom at all; either way the camera starts out unzoomed
+   */
+  void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    ratio = 1.0;
+    failures = 0;
+    framesSinceChange = -1;
+  }
+
+  /**
+   * @param maxRatio the most the camera can magnify, once known. May be called from any thread.
+   */
+  void setMaxRatio(double maxRatio) {
+    this.maxRatio = maxRatio;
+  }
+
+  /**
+   * Takes in how a decoder got on with a frame.
+   */
+  void onFrameOutcome(CameraManager.FrameOutcome outcome) {
+    if (!enabled) {
+      return;
+    }
+    if (framesSinceChange >= 0) {
+      framesSinceChange++;
+      if (outcome == CameraManager.FrameOutcome.RESULT) {
+        hits++;
+        ScanMetrics.get().increment(ScanMetrics.Counter.AUTO_ZOOM_HITS);
+        Log.i(TAG, "Result " + framesSinceChange + " frames after zooming to " + format(ratio));
+        framesSinceChange = -1;
+      } else if (framesSinceChange >= HIT_WINDOW_FRAMES) {
+        misses++;
+        ScanMetrics.get().increment(ScanMetrics.Counter.AUTO_ZOOM_MISSES);
+        framesSinceChange = -1;
+      }
+    }
+    failures = outcome == CameraManager.FrameOutcome.RESULT ? 0 : failures + 1;
+  }
+
+  /**
+   * @param spread how far apart the candidate points in recent frames were, as a share of the
+   *  framing rect along the axis they spread most; 0 if too few were seen
+   */
+  void onSymbolSpread(float spread) {
+    if (!enabled) {
+      return;
+    }
+    long now = SystemClock.uptimeMillis();
+    if (now - changedAtMs < MIN_CHANGE_INTERVAL_MS) {
+      return;
+    }
+    double newRatio = ratio;
+    if (spread > 0.0f) {
+      if (spread < ZOOM_IN_BELOW && failures >= FAILURES_BEFORE_ZOOM_IN) {
+        newRatio = Math.min(maxRatio, ratio * Math.min(MAX_STEP, TARGET_SPREAD / spread));
+      } else if (spread > ZOOM_OUT_ABOVE) {
+        newRatio = Math.max(1.0, ratio * Math.max(1.0 / MAX_STEP, TARGET_SPREAD / spread));
+      }
+    } else if (failures >= FAILURES_BEFORE_RESET) {
+      newRatio = 1.0;
+    }
+    if (Math.abs(newRatio - ratio) < MIN_CHANGE) {
+      return;
+    }
+    Log.i(TAG, "Zooming from " + format(ratio) + " to " + format(newRatio) + " at spread " + spread +
+        " after " + failures + " frames without a result");
+    ratio = newRatio;
+    changedAtMs = now;
+    failures = 0;
+    framesSinceChange = 0;
+    changes++;
+    ScanMetrics.get().increment(ScanMetrics.Counter.AUTO_ZOOM_CHANGES);
+    listener.onZoomChanged(newRatio);
+  }
+
+  private static String format(double ratio) {
+    return String.format(Locale.ENGLISH, "%.2fx", ratio);
+  }
+
+  @Override
+  public String toString() {
+    return "zoom=" + format(ratio) + " changes=" + changes + " hits=" + hits + " misses=" + misses;
+  }
+
+}
@@ -36,6 +36,13 @@ public final class OpenCamera {
     this.orientation = orientation;
   }
 
+  /**
+   * @return the ID the camera was opened with
+   */
+  public int getIndex() {
+    return index;
+  }
+
   public Camera getCamera() {
     return camera;
   }
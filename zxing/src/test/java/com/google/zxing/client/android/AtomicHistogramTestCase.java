@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link AtomicHistogram}.
+ */
+public final class AtomicHistogramTestCase extends Assert {
+
+  @Test
+  public void testEmpty() {
+    AtomicHistogram histogram = new AtomicHistogram();
+    assertEquals(0L, histogram.getCount());
+    assertEquals(0.0, histogram.getMean(), 0.0);
+    assertEquals(0L, histogram.getMax());
+    assertEquals(0L, histogram.getPercentile(50.0));
+  }
+
+  @Test
+  public void testSmallValuesExact() {
+    AtomicHistogram histogram = new AtomicHistogram();
+    for (int value = 0; value < 16; value++) {
+      histogram.record(value);
+    }
+    assertEquals(16L, histogram.getCount());
+    assertEquals(7.5, histogram.getMean(), 0.0);
+    assertEquals(15L, histogram.getMax());
+    for (int value = 0; value < 16; value++) {
+      // Exactly value + 1 of the 16 values are at most value
+      assertEquals(value, histogram.getPercentile((value + 1) * 100.0 / 16.0));
+    }
+  }
+
+  @Test
+  public void testPercentilesWithinAnEighth() {
+    AtomicHistogram histogram = new AtomicHistogram();
+    for (int value = 1; value <= 100000; value++) {
+      histogram.record(value);
+    }
+    for (double percentile : new double[] {1.0, 10.0, 50.0, 90.0, 99.0, 99.9}) {
+      long exact = (long) Math.ceil(percentile * 1000.0);
+      long reported = histogram.getPercentile(percentile);
+      assertTrue(percentile + ": " + reported, reported >= exact);
+      assertTrue(percentile + ": " + reported, reported <= exact + exact / 8);
+    }
+    // Never more than the largest value actually seen
+    assertEquals(100000L, histogram.getPercentile(100.0));
+  }
+
+  @Test
+  public void testBucketEdges() {
+    for (long value : new long[] {16L, 17L, 31L, 32L, 33L, 1023L, 1024L, 1L << 39}) {
+      AtomicHistogram histogram = new AtomicHistogram();
+      histogram.record(value);
+      // One value, so the result is the top of its bucket capped at the max: the value itself
+      assertEquals(value, histogram.getPercentile(50.0));
+      histogram.record(0L);
+      assertEquals(0L, histogram.getPercentile(50.0));
+    }
+  }
+
+  @Test
+  public void testNegativeCountsAsZero() {
+    AtomicHistogram histogram = new AtomicHistogram();
+    histogram.record(-5L);
+    assertEquals(1L, histogram.getCount());
+    assertEquals(0.0, histogram.getMean(), 0.0);
+    assertEquals(0L, histogram.getMax());
+    assertEquals(0L, histogram.getPercentile(100.0));
+  }
+
+  @Test
+  public void testHugeValuesClamped() {
+    AtomicHistogram histogram = new AtomicHistogram();
+    histogram.record(1L << 45);
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(Long.MAX_VALUE, histogram.getMax());
+    // Both land in the last bucket, whose top is just under 2^40
+    assertEquals((1L << 40) - 1L, histogram.getPercentile(50.0));
+    assertEquals((1L << 40) - 1L, histogram.getPercentile(100.0));
+  }
+
+  @Test
+  public void testReset() {
+    AtomicHistogram histogram = new AtomicHistogram();
+    histogram.record(100L);
+    histogram.record(200L);
+    histogram.reset();
+    assertEquals(0L, histogram.getCount());
+    assertEquals(0.0, histogram.getMean(), 0.0);
+    assertEquals(0L, histogram.getMax());
+    assertEquals(0L, histogram.getPercentile(99.0));
+    histogram.record(3L);
+    assertEquals(3L, histogram.getPercentile(50.0));
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Tests {@link FormatHitHistogram}.
+ */
+public final class FormatHitHistogramTestCase extends Assert {
+
+  @Test
+  public void testEmpty() {
+    for (String saved : new String[] {null, ""}) {
+      FormatHitHistogram histogram = FormatHitHistogram.parse(saved);
+      assertEquals("", histogram.toString());
+      assertTrue(histogram.getWeights().isEmpty());
+      assertEquals(0.0f, histogram.getShare(BarcodeFormat.QR_CODE), 0.0f);
+    }
+  }
+
+  @Test
+  public void testRoundTrip() {
+    FormatHitHistogram histogram = new FormatHitHistogram();
+    histogram.recordHit(BarcodeFormat.EAN_13);
+    histogram.recordHit(BarcodeFormat.QR_CODE);
+    histogram.recordHit(BarcodeFormat.QR_CODE);
+    FormatHitHistogram parsed = FormatHitHistogram.parse(histogram.toString());
+    assertEquals(histogram.toString(), parsed.toString());
+    assertEquals(histogram.getWeights(), parsed.getWeights());
+    assertEquals(histogram.getShare(BarcodeFormat.QR_CODE), parsed.getShare(BarcodeFormat.QR_CODE), 1.0e-6f);
+  }
+
+  @Test
+  public void testParseSkipsBadEntries() {
+    FormatHitHistogram histogram =
+        FormatHitHistogram.parse("QR_CODE=2.5;NOT_A_FORMAT=1.0;EAN_13=abc;CODE_128;=;AZTEC=1.5=2;EAN_8=0.5");
+    Map<BarcodeFormat,Float> weights = histogram.getWeights();
+    assertEquals(2, weights.size());
+    assertEquals(2.5f, weights.get(BarcodeFormat.QR_CODE), 0.0f);
+    assertEquals(0.5f, weights.get(BarcodeFormat.EAN_8), 0.0f);
+    assertEquals(2.5f / 3.0f, histogram.getShare(BarcodeFormat.QR_CODE), 1.0e-6f);
+    assertEquals("EAN_8=0.5;QR_CODE=2.5", histogram.toString());
+  }
+
+  @Test
+  public void testDecay() {
+    FormatHitHistogram histogram = new FormatHitHistogram();
+    histogram.recordHit(BarcodeFormat.QR_CODE);
+    assertEquals(1.0f, histogram.getWeight(BarcodeFormat.QR_CODE), 0.0f);
+    histogram.recordHit(BarcodeFormat.EAN_13);
+    assertEquals(0.98f, histogram.getWeight(BarcodeFormat.QR_CODE), 1.0e-6f);
+    assertEquals(1.0f, histogram.getWeight(BarcodeFormat.EAN_13), 0.0f);
+    assertEquals(0.98f / 1.98f, histogram.getShare(BarcodeFormat.QR_CODE), 1.0e-6f);
+    for (int i = 0; i < 500; i++) {
+      histogram.recordHit(BarcodeFormat.EAN_13);
+    }
+    // Long forgotten, and dropped rather than kept as a tiny weight
+    assertEquals(0.0f, histogram.getWeight(BarcodeFormat.QR_CODE), 0.0f);
+    assertFalse(histogram.getWeights().containsKey(BarcodeFormat.QR_CODE));
+    // The total settles at 1 / (1 - 0.98)
+    assertEquals(50.0f, histogram.getWeight(BarcodeFormat.EAN_13), 0.1f);
+  }
+
+  @Test
+  public void testRareNeedsEvidence() {
+    FormatHitHistogram histogram = new FormatHitHistogram();
+    for (int i = 0; i < 5; i++) {
+      histogram.recordHit(BarcodeFormat.QR_CODE);
+    }
+    float absent = histogram.getWeight(BarcodeFormat.EAN_13);
+    assertFalse(histogram.isRare(absent, 0.05f));
+    for (int i = 0; i < 10; i++) {
+      histogram.recordHit(BarcodeFormat.QR_CODE);
+    }
+    assertTrue(histogram.isRare(absent, 0.05f));
+    assertFalse(histogram.isRare(histogram.getWeight(BarcodeFormat.QR_CODE), 0.05f));
+  }
+
+}
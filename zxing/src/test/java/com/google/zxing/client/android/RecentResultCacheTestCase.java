@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link RecentResultCache}.
+ */
+public final class RecentResultCacheTestCase extends Assert {
+
+  @Test
+  public void testNewCodeIsFresh() {
+    RecentResultCache cache = new RecentResultCache();
+    Result[] results = {qr("a"), qr("b")};
+    assertArrayEquals(results, cache.dropRecent(results, 1000L));
+    assertEquals(0L, cache.getDuplicatesSuppressed());
+  }
+
+  @Test
+  public void testRememberedCodeDroppedWithinWindow() {
+    RecentResultCache cache = new RecentResultCache();
+    cache.remember(new Result[] {qr("a")}, 1000L);
+    assertNull(cache.dropRecent(new Result[] {qr("a")}, 3999L));
+    assertEquals(1L, cache.getDuplicatesSuppressed());
+    // Same text in another format is another code
+    Result other = new Result("a", null, null, BarcodeFormat.DATA_MATRIX);
+    Result[] fresh = cache.dropRecent(new Result[] {qr("a"), other, qr("b")}, 4000L);
+    assertEquals(2, fresh.length);
+    assertSame(other, fresh[0]);
+    assertEquals("b", fresh[1].getText());
+  }
+
+  @Test
+  public void testFreshAfterWindow() {
+    RecentResultCache cache = new RecentResultCache();
+    cache.remember(new Result[] {qr("a")}, 1000L);
+    assertNotNull(cache.dropRecent(new Result[] {qr("a")}, 4000L));
+    assertEquals(0L, cache.getDuplicatesSuppressed());
+  }
+
+  @Test
+  public void testCodeHeldInViewStaysSuppressed() {
+    RecentResultCache cache = new RecentResultCache();
+    cache.remember(new Result[] {qr("a")}, 0L);
+    // Seen every two seconds, it never gets three seconds clear of the last sighting
+    for (long now = 2000L; now <= 20000L; now += 2000L) {
+      assertNull(cache.dropRecent(new Result[] {qr("a")}, now));
+    }
+    assertEquals(10L, cache.getDuplicatesSuppressed());
+    assertNotNull(cache.dropRecent(new Result[] {qr("a")}, 23000L));
+  }
+
+  @Test
+  public void testLeastRecentlySeenEvicted() {
+    RecentResultCache cache = new RecentResultCache();
+    cache.remember(new Result[] {qr("first"), qr("kept")}, 0L);
+    for (int i = 0; i < 63; i++) {
+      cache.remember(new Result[] {qr("code" + i)}, 1L);
+      if (i == 31) {
+        // Seeing it again makes it recent
+        assertNull(cache.dropRecent(new Result[] {qr("kept")}, 1L));
+      }
+    }
+    // 65 codes, so the one seen longest ago has gone, well within the window
+    assertNotNull(cache.dropRecent(new Result[] {qr("first")}, 2L));
+    assertNull(cache.dropRecent(new Result[] {qr("kept")}, 2L));
+    assertNull(cache.dropRecent(new Result[] {qr("code0")}, 2L));
+  }
+
+  private static Result qr(String text) {
+    return new Result(text, null, null, BarcodeFormat.QR_CODE);
+  }
+
+}
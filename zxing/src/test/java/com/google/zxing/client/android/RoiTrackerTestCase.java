@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import android.graphics.Rect;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Tests {@link RoiTracker}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26, manifest = Config.NONE)
+public final class RoiTrackerTestCase extends Assert {
+
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+
+  @Test
+  public void testTooFewPoints() {
+    RoiTracker tracker = new RoiTracker();
+    assertNull(tracker.getRegion(WIDTH, HEIGHT));
+    assertEquals(0.0f, tracker.getSpread(WIDTH, HEIGHT), 0.0f);
+    tracker.addPoint(300.0f, 200.0f);
+    assertNull(tracker.getRegion(WIDTH, HEIGHT));
+    assertEquals(0.0f, tracker.getSpread(WIDTH, HEIGHT), 0.0f);
+  }
+
+  @Test
+  public void testRegionAroundPoints() {
+    RoiTracker tracker = new RoiTracker();
+    tracker.addPoint(300.0f, 200.0f);
+    tracker.addPoint(400.0f, 260.0f);
+    Rect region = tracker.getRegion(WIDTH, HEIGHT);
+    // Half the extent as margin each side, rounded up to a multiple of 32 and centred
+    assertEquals(new Rect(238, 150, 238 + 224, 150 + 160), region);
+    assertEquals(100.0f / WIDTH, tracker.getSpread(WIDTH, HEIGHT), 1.0e-6f);
+  }
+
+  @Test
+  public void testMinimumMargin() {
+    RoiTracker tracker = new RoiTracker();
+    tracker.addPoint(300.0f, 200.0f);
+    tracker.addPoint(310.0f, 205.0f);
+    Rect region = tracker.getRegion(WIDTH, HEIGHT);
+    assertEquals(96, region.width());
+    assertEquals(96, region.height());
+    assertTrue(region.contains(300 - 32, 200 - 32, 310 + 32, 205 + 32));
+  }
+
+  @Test
+  public void testClampedInsideFramingRect() {
+    RoiTracker tracker = new RoiTracker();
+    tracker.addPoint(5.0f, 470.0f);
+    tracker.addPoint(60.0f, 478.0f);
+    Rect region = tracker.getRegion(WIDTH, HEIGHT);
+    assertEquals(0, region.left);
+    assertEquals(HEIGHT, region.bottom);
+    assertEquals(0, region.width() % 32);
+    assertEquals(0, region.height() % 32);
+  }
+
+  @Test
+  public void testLargeRegionNotWorthIt() {
+    RoiTracker tracker = new RoiTracker();
+    tracker.addPoint(100.0f, 100.0f);
+    tracker.addPoint(420.0f, 300.0f);
+    assertNull(tracker.getRegion(WIDTH, HEIGHT));
+    assertEquals(0.5f, tracker.getSpread(WIDTH, HEIGHT), 1.0e-6f);
+  }
+
+  @Test
+  public void testMissesFallBack() {
+    RoiTracker tracker = new RoiTracker();
+    tracker.addPoint(300.0f, 200.0f);
+    tracker.addPoint(400.0f, 260.0f);
+    for (int i = 0; i < 3; i++) {
+      tracker.recordRegionOutcome(false);
+    }
+    tracker.recordRegionOutcome(true);
+    for (int i = 0; i < 3; i++) {
+      tracker.recordRegionOutcome(false);
+    }
+    // A result in between starts the count again
+    assertNotNull(tracker.getRegion(WIDTH, HEIGHT));
+    tracker.recordRegionOutcome(false);
+    assertNull(tracker.getRegion(WIDTH, HEIGHT));
+    assertEquals(0.0f, tracker.getSpread(WIDTH, HEIGHT), 0.0f);
+  }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tests {@link ScanEngine} on barcodes rendered into camera-sized frames.
+ */
+public final class ScanEngineTestCase extends Assert {
+
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  private static final byte PAPER = (byte) 220;
+  private static final byte INK = (byte) 30;
+
+  @Test
+  public void testCleanCodeDecodesWithGlobalTier() {
+    byte[] frame = newFrame();
+    draw(frame, WIDTH, encode(BarcodeFormat.QR_CODE, "clean", 240, 240), 200, 120, false);
+    ScanEngine engine = new ScanEngine(new DecodeProfile.Builder().build());
+    ScanResult scan = engine.decode(frame, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT);
+    assertNotNull(scan.getResult());
+    assertEquals("clean", scan.getResult().getText());
+    assertEquals(BarcodeFormat.QR_CODE, scan.getResult().getBarcodeFormat());
+    // Nothing has won yet, so the cheapest tier still goes first
+    assertEquals(BinarizerTierStats.Tier.GLOBAL_HISTOGRAM, scan.getTier());
+    assertEquals(1.0f, engine.getFormatHistogram().getWeight(BarcodeFormat.QR_CODE), 0.0f);
+  }
+
+  @Test
+  public void testEmptyFrame() {
+    ScanEngine engine = new ScanEngine(new DecodeProfile.Builder().setTryHarder(true).build());
+    ScanResult scan = engine.decode(newFrame(), WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT);
+    assertNull(scan.getResult());
+    assertEquals(0, scan.getResults().length);
+    assertNull(scan.getTier());
+  }
+
+  @Test
+  public void testInvertedTierOnlyNowAndThen() {
+    byte[] frame = newFrame();
+    draw(frame, WIDTH, encode(BarcodeFormat.QR_CODE, "inverted", 240, 240), 200, 120, true);
+    ScanEngine engine = new ScanEngine(new DecodeProfile.Builder()
+        .setFormats(EnumSet.of(BarcodeFormat.QR_CODE)).build());
+    // Light-on-dark codes are rare, so only every fourth frame gets the inverted tier
+    for (int i = 1; i <= 3; i++) {
+      assertNull(engine.decode(frame, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT).getResult());
+    }
+    ScanResult scan = engine.decode(frame, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT);
+    assertNotNull(scan.getResult());
+    assertEquals("inverted", scan.getResult().getText());
+    assertEquals(BinarizerTierStats.Tier.INVERTED, scan.getTier());
+  }
+
+  @Test
+  public void testTryHarderTriesEveryTier() {
+    byte[] frame = newFrame();
+    draw(frame, WIDTH, encode(BarcodeFormat.QR_CODE, "inverted", 240, 240), 200, 120, true);
+    ScanEngine engine = new ScanEngine(new DecodeProfile.Builder()
+        .setFormats(EnumSet.of(BarcodeFormat.QR_CODE)).setTryHarder(true).build());
+    ScanResult scan = engine.decode(frame, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT);
+    assertNotNull(scan.getResult());
+    assertEquals(BinarizerTierStats.Tier.INVERTED, scan.getTier());
+  }
+
+  @Test
+  public void testRegionPointsRelativeToRegion() {
+    byte[] frame = newFrame();
+    draw(frame, WIDTH, encode(BarcodeFormat.QR_CODE, "region", 200, 200), 300, 200, false);
+    ScanEngine engine = new ScanEngine(new DecodeProfile.Builder().build());
+    ScanResult scan = engine.decode(frame, WIDTH, HEIGHT, 250, 150, 320, 320);
+    assertNotNull(scan.getResult());
+    assertEquals("region", scan.getResult().getText());
+    // Within the region, the code spans 50 to 250 each way
+    assertPointsWithin(scan.getResult(), 50, 50, 250, 250);
+  }
+
+  @Test
+  public void testPyramidDecodesDownscaled() {
+    int width = 1280;
+    int height = 720;
+    byte[] frame = newFrame(width, height);
+    draw(frame, width, encode(BarcodeFormat.QR_CODE, "pyramid", 480, 480), 400, 120, false);
+    PyramidLevelStats pyramidStats = new PyramidLevelStats();
+    ScanEngine engine = new ScanEngine(new DecodeProfile.Builder().setPyramid(true).build(),
+        new BinarizerTierStats(), new FormatHitHistogram(), pyramidStats, null);
+    ScanResult scan = engine.decode(frame, width, height, 0, 0, width, height);
+    assertNotNull(scan.getResult());
+    assertEquals("pyramid", scan.getResult().getText());
+    // Only the half resolution level is tall enough to use, and it was enough
+    assertEquals(0L, pyramidStats.getAttempts(0));
+    assertEquals(1L, pyramidStats.getAttempts(1));
+    // Points come back in full resolution coordinates
+    assertPointsWithin(scan.getResult(), 400, 120, 880, 600);
+  }
+
+  @Test
+  public void testPyramidFallsBackToFullResolution() {
+    int width = 1280;
+    int height = 720;
+    byte[] frame = newFrame(width, height);
+    // Modules three pixels wide, offset so that at half resolution every other one is smeared
+    // into its neighbours: the finder patterns still show, the data doesn't
+    char[] text = new char[120];
+    Arrays.fill(text, 'x');
+    BitMatrix matrix = encode(BarcodeFormat.QR_CODE, new String(text), 0, 0);
+    draw(frame, width, scale(matrix, 3), 101, 101, false);
+    PyramidLevelStats pyramidStats = new PyramidLevelStats();
+    ScanEngine engine = new ScanEngine(new DecodeProfile.Builder().setPyramid(true).build(),
+        new BinarizerTierStats(), new FormatHitHistogram(), pyramidStats, null);
+    ScanResult scan = engine.decode(frame, width, height, 0, 0, width, height);
+    assertNotNull(scan.getResult());
+    assertEquals(1L, pyramidStats.getAttempts(1));
+    assertEquals(0.0f, pyramidStats.getSuccessShare(1), 0.0f);
+    assertEquals(1L, pyramidStats.getAttempts(0));
+    assertEquals(1.0f, pyramidStats.getSuccessShare(0), 0.0f);
+  }
+
+  @Test
+  public void testMultipleFindsEveryCode() {
+    byte[] frame = newFrame();
+    draw(frame, WIDTH, encode(BarcodeFormat.QR_CODE, "left", 200, 200), 60, 140, false);
+    draw(frame, WIDTH, encode(BarcodeFormat.QR_CODE, "right", 200, 200), 380, 140, false);
+    ScanEngine engine = new ScanEngine(new DecodeProfile.Builder().setMultiple(true).build());
+    ScanResult scan = engine.decode(frame, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT);
+    Set<String> texts = new HashSet<>();
+    for (Result result : scan.getResults()) {
+      texts.add(result.getText());
+    }
+    assertEquals(new HashSet<>(Arrays.asList("left", "right")), texts);
+  }
+
+  @Test
+  public void testPartitionedDecodesBothKinds() {
+    ScanEngine engine = new ScanEngine(new DecodeProfile.Builder()
+        .setFormats(EnumSet.of(BarcodeFormat.QR_CODE, BarcodeFormat.EAN_13)).setPartitioned(true).build());
+    try {
+      byte[] product = newFrame();
+      draw(product, WIDTH, encode(BarcodeFormat.EAN_13, "9780201379624", 400, 160), 120, 160, false);
+      ScanResult scan = engine.decode(product, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT);
+      assertNotNull(scan.getResult());
+      assertEquals(BarcodeFormat.EAN_13, scan.getResult().getBarcodeFormat());
+      assertEquals("9780201379624", scan.getResult().getText());
+      assertEquals(BinarizerTierStats.Tier.GLOBAL_HISTOGRAM, scan.getTier());
+
+      byte[] qrCode = newFrame();
+      draw(qrCode, WIDTH, encode(BarcodeFormat.QR_CODE, "partitioned", 240, 240), 200, 120, false);
+      scan = engine.decode(qrCode, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT);
+      assertNotNull(scan.getResult());
+      assertEquals(BarcodeFormat.QR_CODE, scan.getResult().getBarcodeFormat());
+      assertEquals(BinarizerTierStats.Tier.GLOBAL_HISTOGRAM, scan.getTier());
+      assertEquals(0, engine.getGroupFailures());
+    } finally {
+      engine.shutdown();
+    }
+  }
+
+  private static void assertPointsWithin(Result result, int left, int top, int right, int bottom) {
+    ResultPoint[] points = result.getResultPoints();
+    assertTrue(points.length > 0);
+    for (ResultPoint point : points) {
+      assertTrue(point.toString(), point.getX() >= left && point.getX() <= right);
+      assertTrue(point.toString(), point.getY() >= top && point.getY() <= bottom);
+    }
+  }
+
+  private static byte[] newFrame() {
+    return newFrame(WIDTH, HEIGHT);
+  }
+
+  /**
+   * @return an NV21 frame of mid grey
+   */
+  private static byte[] newFrame(int width, int height) {
+    byte[] frame = new byte[width * height * 3 / 2];
+    Arrays.fill(frame, (byte) 128);
+    return frame;
+  }
+
+  /**
+   * @return the code with the writer's default quiet zone, white around it
+   */
+  private static BitMatrix encode(BarcodeFormat format, String contents, int width, int height) {
+    try {
+      return new MultiFormatWriter().encode(contents, format, width, height);
+    } catch (WriterException we) {
+      throw new IllegalStateException(we);
+    }
+  }
+
+  private static BitMatrix scale(BitMatrix matrix, int factor) {
+    BitMatrix scaled = new BitMatrix(matrix.getWidth() * factor, matrix.getHeight() * factor);
+    for (int y = 0; y < scaled.getHeight(); y++) {
+      for (int x = 0; x < scaled.getWidth(); x++) {
+        if (matrix.get(x / factor, y / factor)) {
+          scaled.set(x, y);
+        }
+      }
+    }
+    return scaled;
+  }
+
+  /**
+   * Draws the code with its top left corner at {@code left, top}, dark on light or the other way.
+   */
+  private static void draw(byte[] frame, int frameWidth, BitMatrix matrix, int left, int top, boolean inverted) {
+    for (int y = 0; y < matrix.getHeight(); y++) {
+      for (int x = 0; x < matrix.getWidth(); x++) {
+        frame[(top + y) * frameWidth + left + x] = matrix.get(x, y) != inverted ? INK : PAPER;
+      }
+    }
+  }
+
+}
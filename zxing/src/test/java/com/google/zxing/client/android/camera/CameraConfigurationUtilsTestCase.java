@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.hardware.Camera;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+/**
+ * Tests {@link CameraConfigurationUtils}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26, manifest = Config.NONE)
+public final class CameraConfigurationUtilsTestCase extends Assert {
+
+  @Test
+  public void testDiffFlattened() {
+    assertEquals("", CameraConfigurationUtils.diffFlattened("a=1;b=2", "a=1;b=2"));
+    assertEquals("b=3", CameraConfigurationUtils.diffFlattened("a=1;b=2", "a=1;b=3"));
+    assertEquals("c=4", CameraConfigurationUtils.diffFlattened("a=1;b=2", "b=2;a=1;c=4"));
+    assertEquals("a=;b=x=y", CameraConfigurationUtils.diffFlattened("a=1;b=2", "a=;b=x=y"));
+    // Only what is set afterwards can be put back; anything dropped is left out
+    assertEquals("", CameraConfigurationUtils.diffFlattened("a=1;b=2", "a=1"));
+    assertEquals("a=1", CameraConfigurationUtils.diffFlattened("", "a=1;junk;=2"));
+  }
+
+  @Test
+  public void testApplyFlattened() {
+    Camera.Parameters parameters = newParameters();
+    parameters.set("focus-mode", "auto");
+    parameters.set("zoom", "0");
+    String before = parameters.flatten();
+    parameters.set("focus-mode", "continuous-picture");
+    parameters.set("zoom", "5");
+    parameters.set("x-vendor", "on");
+    String diff = CameraConfigurationUtils.diffFlattened(before, parameters.flatten());
+
+    Camera.Parameters fresh = newParameters();
+    fresh.set("focus-mode", "auto");
+    fresh.set("zoom", "0");
+    fresh.set("untouched", "kept");
+    CameraConfigurationUtils.applyFlattened(fresh, diff);
+    assertEquals("continuous-picture", fresh.get("focus-mode"));
+    assertEquals("5", fresh.get("zoom"));
+    assertEquals("on", fresh.get("x-vendor"));
+    assertEquals("kept", fresh.get("untouched"));
+  }
+
+  /**
+   * @return empty parameters; the shadow camera's own don't hold arbitrary keys
+   */
+  private static Camera.Parameters newParameters() {
+    return ReflectionHelpers.callConstructor(Camera.Parameters.class,
+        ReflectionHelpers.ClassParameter.from(Camera.class, null));
+  }
+
+}
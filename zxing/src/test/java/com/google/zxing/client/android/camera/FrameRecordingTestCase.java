@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests {@link FrameRecording}.
+ */
+public final class FrameRecordingTestCase extends Assert {
+
+  private static final int WIDTH = 8;
+  private static final int HEIGHT = 4;
+  private static final int FRAME_SIZE = WIDTH * HEIGHT * 3 / 2;
+  private static final int HEADER_SIZE = 64;
+  private static final int SLOT_SIZE = 32 + FRAME_SIZE;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    File file = folder.newFile();
+    try (FrameRecording.Writer writer = new FrameRecording.Writer(file, WIDTH, HEIGHT, sizeFor(4))) {
+      assertEquals(4, writer.getCapacity());
+      writer.append(frame(1), 1000L, 1, 2, 7, 3);
+      writer.append(frame(2), 2000L, 0, 0, 8, 4);
+      assertEquals(2L, writer.getFramesWritten());
+    }
+    List<FrameRecording.Frame> frames = FrameRecording.read(file);
+    assertEquals(2, frames.size());
+    FrameRecording.Frame first = frames.get(0);
+    assertEquals(1L, first.getSequence());
+    assertEquals(1000L, first.getCapturedNanos());
+    assertEquals(WIDTH, first.getWidth());
+    assertEquals(HEIGHT, first.getHeight());
+    assertEquals(1, first.getLeft());
+    assertEquals(2, first.getTop());
+    assertEquals(7, first.getRight());
+    assertEquals(3, first.getBottom());
+    assertArrayEquals(frame(1), first.getData());
+    assertEquals(2L, frames.get(1).getSequence());
+    assertArrayEquals(frame(2), frames.get(1).getData());
+  }
+
+  @Test
+  public void testLuminanceRecordedWithGreyChroma() throws IOException {
+    File file = folder.newFile();
+    int rowStride = WIDTH + 3;
+    byte[] plane = new byte[rowStride * HEIGHT];
+    for (int i = 0; i < plane.length; i++) {
+      plane[i] = (byte) i;
+    }
+    try (FrameRecording.Writer writer = new FrameRecording.Writer(file, WIDTH, HEIGHT, sizeFor(1))) {
+      writer.appendLuminance(ByteBuffer.wrap(plane), rowStride, 5L, 0, 0, WIDTH, HEIGHT);
+    }
+    byte[] data = FrameRecording.read(file).get(0).getData();
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        assertEquals(plane[y * rowStride + x], data[y * WIDTH + x]);
+      }
+    }
+    for (int i = WIDTH * HEIGHT; i < FRAME_SIZE; i++) {
+      assertEquals((byte) 128, data[i]);
+    }
+  }
+
+  @Test
+  public void testWraparoundKeepsNewest() throws IOException {
+    File file = folder.newFile();
+    try (FrameRecording.Writer writer = new FrameRecording.Writer(file, WIDTH, HEIGHT, sizeFor(3) + SLOT_SIZE - 1)) {
+      // Not quite room for a fourth slot
+      assertEquals(3, writer.getCapacity());
+      for (int i = 1; i <= 7; i++) {
+        writer.append(frame(i), i, 0, 0, WIDTH, HEIGHT);
+      }
+      assertEquals(7L, writer.getFramesWritten());
+    }
+    List<FrameRecording.Frame> frames = FrameRecording.read(file);
+    assertEquals(3, frames.size());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(5L + i, frames.get(i).getSequence());
+      assertArrayEquals(frame(5 + i), frames.get(i).getData());
+    }
+  }
+
+  @Test
+  public void testResumesExistingRecording() throws IOException {
+    File file = folder.newFile();
+    try (FrameRecording.Writer writer = new FrameRecording.Writer(file, WIDTH, HEIGHT, sizeFor(3))) {
+      writer.append(frame(1), 1L, 0, 0, WIDTH, HEIGHT);
+      writer.append(frame(2), 2L, 0, 0, WIDTH, HEIGHT);
+    }
+    try (FrameRecording.Writer writer = new FrameRecording.Writer(file, WIDTH, HEIGHT, sizeFor(3))) {
+      assertEquals(2L, writer.getFramesWritten());
+      writer.append(frame(3), 3L, 0, 0, WIDTH, HEIGHT);
+      writer.append(frame(4), 4L, 0, 0, WIDTH, HEIGHT);
+    }
+    List<FrameRecording.Frame> frames = FrameRecording.read(file);
+    assertEquals(3, frames.size());
+    assertEquals(2L, frames.get(0).getSequence());
+    assertArrayEquals(frame(4), frames.get(2).getData());
+  }
+
+  @Test
+  public void testOtherGeometryStartsOver() throws IOException {
+    File file = folder.newFile();
+    try (FrameRecording.Writer writer = new FrameRecording.Writer(file, WIDTH, HEIGHT, sizeFor(3))) {
+      writer.append(frame(1), 1L, 0, 0, WIDTH, HEIGHT);
+    }
+    try (FrameRecording.Writer writer = new FrameRecording.Writer(file, WIDTH, HEIGHT, sizeFor(2))) {
+      assertEquals(0L, writer.getFramesWritten());
+    }
+    assertTrue(FrameRecording.read(file).isEmpty());
+  }
+
+  @Test
+  public void testTornSlotSkipped() throws IOException {
+    File file = folder.newFile();
+    try (FrameRecording.Writer writer = new FrameRecording.Writer(file, WIDTH, HEIGHT, sizeFor(3))) {
+      for (int i = 1; i <= 3; i++) {
+        writer.append(frame(i), i, 0, 0, WIDTH, HEIGHT);
+      }
+    }
+    // What a crash part way through rewriting the second slot leaves behind
+    try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+      raw.seek(HEADER_SIZE + SLOT_SIZE);
+      raw.writeLong(0L);
+    }
+    List<FrameRecording.Frame> frames = FrameRecording.read(file);
+    assertEquals(2, frames.size());
+    assertEquals(1L, frames.get(0).getSequence());
+    assertEquals(3L, frames.get(1).getSequence());
+  }
+
+  @Test(expected = IOException.class)
+  public void testNoRoomForAFrame() throws IOException {
+    new FrameRecording.Writer(folder.newFile(), WIDTH, HEIGHT, sizeFor(1) - 1).close();
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotARecording() throws IOException {
+    File file = folder.newFile();
+    try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+      raw.write(new byte[HEADER_SIZE + SLOT_SIZE]);
+    }
+    FrameRecording.read(file);
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedRecording() throws IOException {
+    File file = folder.newFile();
+    try (FrameRecording.Writer writer = new FrameRecording.Writer(file, WIDTH, HEIGHT, sizeFor(3))) {
+      writer.append(frame(1), 1L, 0, 0, WIDTH, HEIGHT);
+    }
+    try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+      raw.setLength(HEADER_SIZE + SLOT_SIZE);
+    }
+    FrameRecording.read(file);
+  }
+
+  private static long sizeFor(int frames) {
+    return HEADER_SIZE + (long) frames * SLOT_SIZE;
+  }
+
+  private static byte[] frame(int fill) {
+    byte[] frame = new byte[FRAME_SIZE];
+    Arrays.fill(frame, (byte) fill);
+    frame[0] = (byte) (fill * 7);
+    return frame;
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests {@link FrameScheduler}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26, manifest = Config.NONE)
+public final class FrameSchedulerTestCase extends Assert {
+
+  private static final int DECODE = 1;
+
+  private final List<PreviewFrame> released = new ArrayList<>();
+  private final PreviewFrame.Owner owner = new PreviewFrame.Owner() {
+    @Override
+    public void release(PreviewFrame frame) {
+      released.add(frame);
+    }
+  };
+
+  @Test
+  public void testWaitingDecoderGetsNextFrame() {
+    FrameScheduler scheduler = new FrameScheduler();
+    Recorder decoder = new Recorder(Looper.getMainLooper());
+    scheduler.request(decoder, DECODE, 7);
+    PreviewFrame frame = new PreviewFrame(owner, new byte[6]);
+    scheduler.offer(frame);
+    Shadows.shadowOf(Looper.getMainLooper()).idle();
+    assertEquals(1, decoder.received.size());
+    assertSame(frame, decoder.received.get(0).obj);
+    assertEquals(7, decoder.received.get(0).arg1);
+    assertTrue(released.isEmpty());
+  }
+
+  @Test
+  public void testNewerFrameReplacesMailbox() {
+    FrameScheduler scheduler = new FrameScheduler();
+    PreviewFrame older = new PreviewFrame(owner, new byte[6]);
+    PreviewFrame newer = new PreviewFrame(owner, new byte[6]);
+    scheduler.offer(older);
+    scheduler.offer(newer);
+    assertEquals(1, released.size());
+    assertSame(older, released.get(0));
+    assertEquals(1L, scheduler.getFramesReplaced());
+
+    Recorder decoder = new Recorder(Looper.getMainLooper());
+    scheduler.request(decoder, DECODE, 0);
+    Shadows.shadowOf(Looper.getMainLooper()).idle();
+    assertSame(newer, decoder.received.get(0).obj);
+  }
+
+  @Test
+  public void testFrameForQuitDecoderReleased() {
+    FrameScheduler scheduler = new FrameScheduler();
+    HandlerThread thread = new HandlerThread("decode");
+    thread.start();
+    Recorder decoder = new Recorder(thread.getLooper());
+    scheduler.request(decoder, DECODE, 0);
+    // What Looper.quit() does on a device; the shadow looper leaves the queue accepting messages
+    ReflectionHelpers.callInstanceMethod(thread.getLooper().getQueue(), "quit",
+        ReflectionHelpers.ClassParameter.from(boolean.class, false));
+    PreviewFrame frame = new PreviewFrame(owner, new byte[6]);
+    scheduler.offer(frame);
+    // Not handed off, and back with its owner rather than lost until the pool is rebuilt
+    assertEquals(1, released.size());
+    assertSame(frame, released.get(0));
+    assertTrue(scheduler.toString(), scheduler.toString().contains("decoded=0"));
+  }
+
+  @Test
+  public void testClearReleasesMailbox() {
+    FrameScheduler scheduler = new FrameScheduler();
+    PreviewFrame frame = new PreviewFrame(owner, new byte[6]);
+    scheduler.offer(frame);
+    scheduler.clear();
+    assertEquals(1, released.size());
+    assertSame(frame, released.get(0));
+  }
+
+  private static final class Recorder extends Handler {
+
+    private final List<Message> received = new ArrayList<>();
+
+    Recorder(Looper looper) {
+      super(looper);
+    }
+
+    @Override
+    public void handleMessage(Message message) {
+      Message copy = Message.obtain();
+      copy.copyFrom(message);
+      received.add(copy);
+    }
+  }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2018 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+import android.os.SystemClock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests {@link ZoomController}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26, manifest = Config.NONE)
+public final class ZoomControllerTestCase extends Assert {
+
+  private final List<Double> ratios = new ArrayList<>();
+  private ZoomController controller;
+
+  @Before
+  public void setUp() {
+    controller = new ZoomController(new ZoomController.Listener() {
+      @Override
+      public void onZoomChanged(double ratio) {
+        ratios.add(ratio);
+      }
+    });
+    controller.setEnabled(true);
+  }
+
+  @Test
+  public void testSmallCodeWhichDecodesLeftAlone() {
+    noResult(3);
+    spread(0.1f);
+    controller.onFrameOutcome(CameraManager.FrameOutcome.RESULT);
+    noResult(3);
+    spread(0.1f);
+    assertTrue(ratios.isEmpty());
+  }
+
+  @Test
+  public void testZoomInAtMostTwofold() {
+    controller.setMaxRatio(10.0);
+    noResult(4);
+    spread(0.1f);
+    assertLastRatio(2.0);
+    noResult(4);
+    spread(0.15f);
+    assertLastRatio(4.0);
+    noResult(4);
+    spread(0.19f);
+    assertLastRatio(8.0);
+    noResult(4);
+    spread(0.1f);
+    assertLastRatio(10.0);
+  }
+
+  @Test
+  public void testDeadBand() {
+    noResult(40);
+    for (float spread : new float[] {0.2f, 0.4f, 0.75f}) {
+      spread(spread);
+    }
+    assertTrue(ratios.isEmpty());
+  }
+
+  @Test
+  public void testZoomOutWhenOverflowing() {
+    noResult(4);
+    spread(0.05f);
+    assertLastRatio(2.0);
+    spread(0.9f);
+    assertLastRatio(1.0);
+    // Never below none
+    spread(0.9f);
+    assertEquals(2, ratios.size());
+  }
+
+  @Test
+  public void testTooSoonAfterChange() {
+    noResult(4);
+    spread(0.1f);
+    noResult(4);
+    SystemClock.sleep(700L);
+    controller.onSymbolSpread(0.1f);
+    assertEquals(1, ratios.size());
+    SystemClock.sleep(50L);
+    controller.onSymbolSpread(0.1f);
+    assertLastRatio(4.0);
+  }
+
+  @Test
+  public void testMaxRatio() {
+    controller.setMaxRatio(1.5);
+    noResult(4);
+    spread(0.05f);
+    assertLastRatio(1.5);
+    noResult(4);
+    spread(0.05f);
+    assertEquals(1, ratios.size());
+  }
+
+  @Test
+  public void testResetWhenLost() {
+    noResult(4);
+    spread(0.1f);
+    noResult(29);
+    spread(0.0f);
+    assertEquals(1, ratios.size());
+    noResult(1);
+    spread(0.0f);
+    assertLastRatio(1.0);
+  }
+
+  @Test
+  public void testDisabled() {
+    controller.setEnabled(false);
+    noResult(40);
+    spread(0.05f);
+    spread(0.9f);
+    assertTrue(ratios.isEmpty());
+  }
+
+  private void noResult(int frames) {
+    for (int i = 0; i < frames; i++) {
+      controller.onFrameOutcome(CameraManager.FrameOutcome.NO_RESULT);
+    }
+  }
+
+  /**
+   * Reports the spread once enough time has passed for the controller to act on it.
+   */
+  private void spread(float spread) {
+    SystemClock.sleep(1000L);
+    controller.onSymbolSpread(spread);
+  }
+
+  private void assertLastRatio(double expected) {
+    assertFalse(ratios.isEmpty());
+    assertEquals(expected, ratios.get(ratios.size() - 1), 1.0e-6);
+  }
+
+}